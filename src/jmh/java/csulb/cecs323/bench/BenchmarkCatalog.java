@@ -0,0 +1,77 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.BulkImporter;
+import csulb.cecs323.app.DatasetGenerator;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Creates a Derby database for the benchmarks, embedded unless told otherwise, seeded by the
+ * {@link DatasetGenerator} with a given number of books. The keys of every row can be worked out from its index, so the
+ * benchmarks can look up existing rows.
+ */
+public final class BenchmarkCatalog {
+    /** The number of books written and committed at a time while seeding. */
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    /** The seed of the generated catalog, so every run measures the same data. */
+    private static final long SEED = 42L;
+
+    private BenchmarkCatalog() {
+    } // End of private constructor
+
+    /**
+     * Creates (or recreates) the database for the given scale and seeds it.
+     * @param books The number of books to seed.
+     * @return      A factory for the seeded database.
+     */
+    public static EntityManagerFactory create(int books) {
+        return create(books, new HashMap<>());
+    } // End of create method
+
+    /**
+     * Creates (or recreates) the database for the given scale and seeds it.
+     * @param books         The number of books to seed.
+     * @param connection    Persistence unit properties that reach the database some other way than
+     *                      the embedded driver, e.g. through a network server; they are given
+     *                      {@link #databaseName(int)} as the path of the database.
+     * @return              A factory for the seeded database.
+     */
+    public static EntityManagerFactory create(int books, Map<String, Object> connection) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(PersistenceUnitProperties.JDBC_URL, "jdbc:derby:" + databaseName(books) + ";create=true");
+        properties.putAll(connection);
+        properties.put(PersistenceUnitProperties.BATCH_WRITING_SIZE, Integer.toString(SEED_BATCH_SIZE));
+        properties.put(PersistenceUnitProperties.LOGGING_LEVEL, "SEVERE");
+
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("BookClub", properties);
+        EntityManager manager = factory.createEntityManager();
+        try {
+            new BulkImporter(manager, SEED_BATCH_SIZE).load(dataset(books).records());
+        } finally {
+            manager.close();
+        }
+        return factory;
+    } // End of create method
+
+    /** Returns the path of the database for the given number of books. */
+    public static String databaseName(int books) {
+        return "target/bench/BookClub-" + books;
+    } // End of databaseName method
+
+    /**
+     * Returns the generator of the catalog seeded for the given number of books, which also
+     * works out the keys of the seeded rows for the benchmarks.
+     */
+    public static DatasetGenerator dataset(int books) {
+        return new DatasetGenerator(books, SEED);
+    } // End of dataset method
+} // End of BenchmarkCatalog class
@@ -0,0 +1,172 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.BookClub;
+import csulb.cecs323.app.DatasetGenerator;
+import csulb.cecs323.app.FetchPlan;
+import csulb.cecs323.app.SearchIndex;
+import csulb.cecs323.model.AuthoringEntities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Measures the lookups and the persistence path of the BookClub against an embedded Derby
+ * database seeded with 1k, 100k and 1M books. Run through the "benchmark" Maven profile, which
+ * writes the results to target/jmh-result.json.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookClubBenchmark {
+    /** The number of books persisted by each call of createEntity. */
+    private static final int BOOKS_PER_CREATE = 10;
+
+    /**
+     * The seeded database, shared by every thread of a trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Catalog {
+        @Param({"1000", "100000", "1000000"})
+        public int books;
+
+        public EntityManagerFactory factory;
+        public DatasetGenerator dataset;
+        public SearchIndex searchIndex;
+
+        @Setup(Level.Trial)
+        public void seed() {
+            factory = BenchmarkCatalog.create(books);
+            dataset = BenchmarkCatalog.dataset(books);
+            searchIndex = SearchIndex.install(factory);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            factory.close();
+        }
+    } // End of Catalog class
+
+    /**
+     * An EntityManager of each benchmark thread; it is replaced every iteration so the
+     * persistence context does not grow for the whole run.
+     */
+    @State(Scope.Thread)
+    public static class Session {
+        public EntityManager manager;
+        public BookClub bookClub;
+        public SplittableRandom random = new SplittableRandom(42);
+        public AuthoringEntities author;
+        public Publishers publisher;
+        public int created;
+
+        @Setup(Level.Iteration)
+        public void open(Catalog catalog) {
+            manager = catalog.factory.createEntityManager();
+            bookClub = new BookClub(manager);
+            author = bookClub.getAuthor(catalog.dataset.authorEmail(0));
+            publisher = bookClub.getPublisher(catalog.dataset.publisherName(0));
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            manager.close();
+        }
+
+        /** Returns the index of a random seeded book. */
+        public int anyBook(Catalog catalog) {
+            return random.nextInt(catalog.books);
+        }
+    } // End of Session class
+
+    @Benchmark
+    public Books getBook(Catalog catalog, Session session) {
+        return session.bookClub.getBook(catalog.dataset.isbn(session.anyBook(catalog)));
+    }
+
+    @Benchmark
+    public Books getBookByAuthor(Catalog catalog, Session session) {
+        int book = session.anyBook(catalog);
+        return session.bookClub.getBookByAuthor(catalog.dataset.title(book),
+                catalog.dataset.authorEmail(catalog.dataset.authorOf(book)));
+    }
+
+    @Benchmark
+    public Books getBookByPublisher(Catalog catalog, Session session) {
+        int book = session.anyBook(catalog);
+        return session.bookClub.getBookByPublisher(catalog.dataset.title(book),
+                catalog.dataset.publisherName(catalog.dataset.publisherOf(book)));
+    }
+
+    @Benchmark
+    public AuthoringEntities getAuthor(Catalog catalog, Session session) {
+        int author = session.random.nextInt(catalog.dataset.getAuthorCount());
+        return session.bookClub.getAuthor(catalog.dataset.authorEmail(author));
+    }
+
+    /** Searches for a random title with its last word cut short, as if it were still being typed. */
+    @Benchmark
+    public List<SearchIndex.Hit> search(Catalog catalog, Session session) {
+        String title = catalog.dataset.title(session.anyBook(catalog));
+        return catalog.searchIndex.search(title.substring(0, title.length() - 2), SearchIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<AuthoringEntities> getAllAuthors(Session session) {
+        List<AuthoringEntities> authors = session.bookClub.getAllAuthors();
+        // keep the persistence context from holding every author between calls
+        session.manager.clear();
+        return authors;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<AuthoringEntities> getAllAuthorsBatched(Session session) {
+        List<AuthoringEntities> authors = session.bookClub.getAllAuthors(FetchPlan.BATCH);
+        // render them, as the menu does, so the lazy team lists are read too
+        authors.forEach(AuthoringEntities::toString);
+        session.manager.clear();
+        return authors;
+    }
+
+    /**
+     * Persists and flushes a handful of new books, then rolls them back so the size of the
+     * catalog stays the same for the whole run.
+     */
+    @Benchmark
+    public int createEntity(Catalog catalog, Session session) {
+        List<Books> books = new ArrayList<>(BOOKS_PER_CREATE);
+        for (int i = 0; i < BOOKS_PER_CREATE; ++i) {
+            int id = session.created++;
+            books.add(new Books(session.author, session.publisher, "N" + id, "New Title " + id, 2000));
+        }
+
+        EntityTransaction tx = session.manager.getTransaction();
+        tx.begin();
+        try {
+            session.bookClub.createEntity(books);
+            session.manager.flush();
+        } finally {
+            tx.rollback();
+            session.manager.clear();
+        }
+
+        // the author and publisher were detached by clear()
+        session.author = session.bookClub.getAuthor(catalog.dataset.authorEmail(0));
+        session.publisher = session.bookClub.getPublisher(catalog.dataset.publisherName(0));
+        return books.size();
+    }
+} // End of BookClubBenchmark class
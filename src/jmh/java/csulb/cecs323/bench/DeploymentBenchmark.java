@@ -0,0 +1,141 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.BookClub;
+import csulb.cecs323.app.BookClubServer;
+import csulb.cecs323.app.DatasetGenerator;
+import csulb.cecs323.app.DerbyNetworkServer;
+import csulb.cecs323.model.AuthoringEntities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Compares the two ways of reaching the database (see {@code Bootstrap.Database}) on the same
+ * workload: the embedded driver, and the client driver talking to a Derby Network Server on the
+ * loopback interface. Both get a connection pool of the same size, and several threads share it,
+ * as the clients of one process would. Every operation reads or writes the database itself; the
+ * shared cache would hide the difference.
+ * <p>
+ * Each operation is measured both as throughput and as sampled latency, whose percentiles JMH
+ * reports. The network server runs in the benchmark's own JVM, so the numbers include the cost of
+ * serving the connections as well as of using them.
+ * </p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class DeploymentBenchmark {
+    /** The connections pooled in either deployment. */
+    private static final int POOL_SIZE = 4;
+
+    /** The port the benchmark's own network server listens on, clear of one already running. */
+    private static final int PORT = 1528;
+
+    /**
+     * The seeded database, reached one way or the other, shared by every thread of a trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Catalog {
+        @Param({"embedded", "network"})
+        public String database;
+
+        @Param({"100000"})
+        public int books;
+
+        public EntityManagerFactory factory;
+        public DatasetGenerator dataset;
+
+        @Setup(Level.Trial)
+        public void seed() {
+            Map<String, Object> connection;
+            if (database.equals("network")) {
+                DerbyNetworkServer.start(DerbyNetworkServer.DEFAULT_HOST, PORT);
+                connection = DerbyNetworkServer.clientProperties(DerbyNetworkServer.DEFAULT_HOST, PORT,
+                        BenchmarkCatalog.databaseName(books), POOL_SIZE);
+            } else {
+                connection = BookClubServer.connectionPoolProperties(POOL_SIZE);
+            }
+            factory = BenchmarkCatalog.create(books, connection);
+            dataset = BenchmarkCatalog.dataset(books);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            factory.close();
+        }
+    } // End of Catalog class
+
+    /**
+     * An EntityManager of each benchmark thread, replaced every iteration.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        public EntityManager manager;
+        public BookClub bookClub;
+        public SplittableRandom random = new SplittableRandom();
+        public AuthoringEntities author;
+        public Publishers publisher;
+        public int created;
+
+        @Setup(Level.Iteration)
+        public void open(Catalog catalog) {
+            manager = catalog.factory.createEntityManager();
+            bookClub = new BookClub(manager);
+            author = bookClub.getAuthor(catalog.dataset.authorEmail(0));
+            publisher = bookClub.getPublisher(catalog.dataset.publisherName(0));
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            // after the last iteration the factory may have been closed, by another thread, first
+            if (manager.isOpen()) {
+                manager.close();
+            }
+        }
+    } // End of Client class
+
+    /** Looks up a random book by its title and author, through the (title, author) index. */
+    @Benchmark
+    public Books query(Catalog catalog, Client client) {
+        int book = client.random.nextInt(catalog.books);
+        Books found = client.bookClub.getBookByAuthor(catalog.dataset.title(book),
+                catalog.dataset.authorEmail(catalog.dataset.authorOf(book)));
+        // keep the persistence context from holding every book read
+        client.manager.clear();
+        return found;
+    }
+
+    /**
+     * Inserts and commits one book, then deletes it again, so the catalog stays the same size;
+     * two transactions, each with a round trip for the commit.
+     */
+    @Benchmark
+    public int write(Catalog catalog, Client client) {
+        String isbn = "D" + Thread.currentThread().getId() + "-" + client.created++;
+        EntityManager manager = client.manager;
+
+        EntityTransaction tx = manager.getTransaction();
+        tx.begin();
+        Books book = new Books(client.author, client.publisher, isbn, "Deployment " + isbn, 2000);
+        manager.persist(book);
+        tx.commit();
+
+        tx.begin();
+        manager.remove(book);
+        tx.commit();
+        return client.created;
+    }
+} // End of DeploymentBenchmark class
@@ -0,0 +1,659 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Queues inserts, author reassignments and book deletes, and writes them behind the caller as a
+ * few JDBC batches instead of one statement each. The queue is flushed in a single transaction
+ * when it holds {@code maxBatchSize} operations, when its oldest operation has waited
+ * {@code maxDelayMillis}, or when {@link #flush()} or {@link #close()} is called.
+ * <p>
+ * A flush writes the parents before their children, whatever order the operations were queued
+ * in: publishers, authoring entities, books, ad hoc team members, then the reassignments and the
+ * deletes. The only order that this could break, a book deleted and then inserted again, makes
+ * the queue flush before the insert.
+ * </p>
+ * <p>
+ * Nothing is checked against the database when an operation is queued, and the queued rows are
+ * not visible to queries until they are flushed; {@link #isQueued} tells the caller whether a
+ * unique key is already taken by a queued insert. A queued row that breaks a constraint anyway
+ * fails only its own operation: the flush is written again one operation at a time, and the
+ * operations that fail are left out and reported in the {@link Flush}. Reassignments and deletes
+ * are not checked against the version the caller read; the last write wins, and the version is
+ * still incremented so that editors holding the old one find out.
+ * </p>
+ * <p>
+ * A flush that no caller asked for, started by the timer or by a full queue, has no one to report
+ * to: the operations it leaves out are logged, each with the reason, and counted in
+ * {@link #getSummary()}. They are never thrown at whoever queues or flushes next, whose own
+ * operations did nothing wrong.
+ * </p>
+ * <p>
+ * The methods may be called from any thread; the session has an EntityManager of its own.
+ * </p>
+ */
+public class BatchSession implements AutoCloseable {
+    /** The number of queued operations that triggers a flush when none is given. */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    /** How long an operation may wait to be flushed when no time is given. */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(BatchSession.class.getName());
+
+    /**
+     * The kinds of queued operation, in the order that a flush writes them.
+     */
+    public enum Operation {
+        PUBLISHER_INSERT("INSERT INTO PUBLISHERS (NAME, PHONE, EMAIL, VERSION) VALUES (?, ?, ?, 1)"),
+        AUTHOR_INSERT("INSERT INTO AUTHORING_ENTITIES (EMAIL, AUTHORING_ENTITY_TYPE, NAME, HEAD_WRITER, " +
+                "YEAR_FORMED, VERSION) VALUES (?, ?, ?, ?, ?, 1)"),
+        BOOK_INSERT("INSERT INTO BOOKS (ISBN, TITLE, YEAR_PUBLISHED, AUTHORING_ENTITIES_EMAIL, PUBLISHER_NAME, " +
+                "VERSION) VALUES (?, ?, ?, ?, ?, 1)"),
+        TEAM_MEMBER_INSERT("INSERT INTO AD_HOC_TEAMS_MEMBER (INDIVIDUAL_AUTHORS_EMAIL, AD_HOC_TEAMS_EMAIL) " +
+                "VALUES (?, ?)"),
+        AUTHOR_REASSIGNMENT("UPDATE BOOKS SET AUTHORING_ENTITIES_EMAIL = ?, VERSION = VERSION + 1 WHERE ISBN = ?"),
+        BOOK_DELETE("DELETE FROM BOOKS WHERE ISBN = ?");
+
+        /** The statement that each operation of this kind binds its parameters to. */
+        private final String sql;
+
+        Operation(String sql) {
+            this.sql = sql;
+        }
+    } // End of Operation enum
+
+    /**
+     * The unique keys of the queued inserts; the keys of two columns are the title and the
+     * publisher's name or author's email, and the key of a team member is its two emails.
+     */
+    public enum UniqueKey {
+        PUBLISHER_NAME, PUBLISHER_PHONE, PUBLISHER_EMAIL, AUTHOR_EMAIL, ISBN, TITLE_AND_PUBLISHER, TITLE_AND_AUTHOR,
+        TEAM_MEMBER
+    } // End of UniqueKey enum
+
+    /**
+     * What one flush wrote, and how long it took.
+     */
+    public static class Flush {
+        private final Map<Operation, Integer> batchSizes;
+        /** The reassignments and deletes whose book did not exist. */
+        private final int missed;
+        /** The operations that were not written, each with the reason. */
+        private final List<String> failures;
+        private final long nanos;
+
+        private Flush(Map<Operation, Integer> batchSizes, int missed, List<String> failures, long nanos) {
+            this.batchSizes = batchSizes;
+            this.missed = missed;
+            this.failures = failures;
+            this.nanos = nanos;
+        }
+
+        /** Returns the number of operations of each kind that were written. */
+        public Map<Operation, Integer> getBatchSizes() {
+            return batchSizes;
+        }
+
+        /** Returns the total number of operations written. */
+        public int getOperationCount() {
+            return batchSizes.values().stream().mapToInt(Integer::intValue).sum();
+        }
+
+        /** Returns the number of reassignments and deletes whose book did not exist. */
+        public int getMissed() {
+            return missed;
+        }
+
+        /** Returns the operations that were not written, each with the reason; empty if none. */
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        /** Returns the time from the start of the transaction to its commit, in milliseconds. */
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Flushed %d operations %s in %.1f ms%s%s", getOperationCount(), batchSizes,
+                    getMillis(), missed == 0 ? "" : " (" + missed + " books not found)",
+                    failures.isEmpty() ? "" : "; " + failures.size() + " failed: " + String.join("; ", failures));
+        }
+    } // End of Flush class
+
+    /** The EntityManager whose connection the batches are written with. */
+    private final EntityManager entityManager;
+
+    /** The number of queued operations that triggers a flush. */
+    private final int maxBatchSize;
+
+    /** How long an operation may wait to be flushed. */
+    private final long maxDelayMillis;
+
+    /** The parameters of the queued operations, by kind, in the order they were queued. */
+    private final Map<Operation, List<Object[]>> queue = new EnumMap<>(Operation.class);
+
+    /** The ISBNs with a queued delete, which an insert of the same book must not overtake. */
+    private final Set<String> deletedIsbns = new HashSet<>();
+
+    /** The unique keys of the queued inserts, by kind. */
+    private final Map<UniqueKey, Set<List<String>>> queuedKeys = new EnumMap<>(UniqueKey.class);
+
+    /** The number of queued operations. */
+    private int pending;
+
+    /** When the oldest queued operation was queued, from System.nanoTime(). */
+    private long oldestNanos;
+
+    /** True once the session is closed. */
+    private boolean closed;
+
+    /** Flushes the operations that have waited too long. */
+    private final ScheduledExecutorService timer;
+
+    /** The totals of every flush so far. */
+    private int flushCount;
+    private long operationCount;
+    private long failedCount;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * @param factory   The factory whose database the operations are written to.
+     */
+    public BatchSession(EntityManagerFactory factory) {
+        this(factory, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * @param factory           The factory whose database the operations are written to.
+     * @param maxBatchSize      The number of queued operations that triggers a flush.
+     * @param maxDelayMillis    How long an operation may wait to be flushed; 0 for no limit.
+     */
+    public BatchSession(EntityManagerFactory factory, int maxBatchSize, long maxDelayMillis) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("The batch size must be at least 1");
+        this.entityManager = factory.createEntityManager();
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        for (Operation operation : Operation.values()) {
+            queue.put(operation, new ArrayList<>());
+        }
+        for (UniqueKey key : UniqueKey.values()) {
+            queuedKeys.put(key, new HashSet<>());
+        }
+
+        if (maxDelayMillis > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "bookclub-batch-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, maxDelayMillis / 4);
+            timer.scheduleWithFixedDelay(this::flushIfDue, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /** Queues the insert of a new publisher. */
+    public synchronized void insert(Publishers publisher) {
+        enqueue(Operation.PUBLISHER_INSERT, publisher.getName(), publisher.getPhone(), publisher.getEmail());
+    } // End of insert method
+
+    /** Queues the insert of a new individual author, ad hoc team or writing group. */
+    public synchronized void insert(AuthoringEntities author) {
+        String headWriter = null;
+        Integer yearFormed = null;
+        if (author instanceof WritingGroups) {
+            headWriter = ((WritingGroups) author).getHeadWriter();
+            yearFormed = ((WritingGroups) author).getYearFormed();
+        }
+        // the default discriminator value of each type is its entity name
+        String type = entityManager.getMetamodel().entity(author.getClass()).getName();
+
+        enqueue(Operation.AUTHOR_INSERT, author.getEmail(), type, author.getName(), headWriter, yearFormed);
+    } // End of insert method
+
+    /** Queues the insert of a new book; only the keys of its author and publisher are used. */
+    public synchronized void insert(Books book) {
+        if (deletedIsbns.contains(book.getISBN())) {
+            flushUnasked();
+        }
+        enqueue(Operation.BOOK_INSERT, book.getISBN(), book.getTitle(), book.getYearPublished(),
+                book.getAuthor().getEmail(), book.getPublisher().getName());
+    } // End of insert method
+
+    /** Queues adding an individual author to an ad hoc team. */
+    public synchronized void addTeamMember(String individualAuthorEmail, String adHocTeamEmail) {
+        enqueue(Operation.TEAM_MEMBER_INSERT, individualAuthorEmail, adHocTeamEmail);
+    } // End of addTeamMember method
+
+    /** Queues giving a book to another authoring entity. */
+    public synchronized void reassignAuthor(String isbn, String newAuthorEmail) {
+        enqueue(Operation.AUTHOR_REASSIGNMENT, newAuthorEmail, isbn);
+    } // End of reassignAuthor method
+
+    /** Queues the delete of a book. */
+    public synchronized void deleteBook(String isbn) {
+        deletedIsbns.add(isbn);
+        enqueue(Operation.BOOK_DELETE, isbn);
+    } // End of deleteBook method
+
+    /**
+     * Returns true if an insert with the given unique key is waiting to be flushed.
+     * @param key       The kind of key.
+     * @param values    Its columns, e.g. the title and then the publisher's name for
+     *                  TITLE_AND_PUBLISHER, or the member's and then the team's email for TEAM_MEMBER.
+     */
+    public synchronized boolean isQueued(UniqueKey key, String... values) {
+        return queuedKeys.get(key).contains(Arrays.asList(values));
+    } // End of isQueued method
+
+    /** Returns the number of operations waiting to be flushed. */
+    public synchronized int getPending() {
+        return pending;
+    } // End of getPending method
+
+    /** Adds an operation to the queue, and flushes the queue if it is full. */
+    private void enqueue(Operation operation, Object... parameters) {
+        if (closed)
+            throw new IllegalStateException("The batch session is closed");
+        if (pending == 0) {
+            oldestNanos = System.nanoTime();
+        }
+        queue.get(operation).add(parameters);
+        addUniqueKeys(operation, parameters);
+        if (++pending >= maxBatchSize) {
+            flushUnasked();
+        }
+    } // End of enqueue method
+
+    /** Notes the unique keys that a queued insert takes. */
+    private void addUniqueKeys(Operation operation, Object[] row) {
+        switch (operation) {
+            case PUBLISHER_INSERT:
+                addUniqueKey(UniqueKey.PUBLISHER_NAME, row[0]);
+                addUniqueKey(UniqueKey.PUBLISHER_PHONE, row[1]);
+                addUniqueKey(UniqueKey.PUBLISHER_EMAIL, row[2]);
+                break;
+            case AUTHOR_INSERT:
+                addUniqueKey(UniqueKey.AUTHOR_EMAIL, row[0]);
+                break;
+            case BOOK_INSERT:
+                addUniqueKey(UniqueKey.ISBN, row[0]);
+                addUniqueKey(UniqueKey.TITLE_AND_PUBLISHER, row[1], row[4]);
+                addUniqueKey(UniqueKey.TITLE_AND_AUTHOR, row[1], row[3]);
+                break;
+            case TEAM_MEMBER_INSERT:
+                addUniqueKey(UniqueKey.TEAM_MEMBER, row[0], row[1]);
+                break;
+            default:
+                break;
+        }
+    } // End of addUniqueKeys method
+
+    private void addUniqueKey(UniqueKey key, Object... values) {
+        queuedKeys.get(key).add(Arrays.asList(Arrays.copyOf(values, values.length, String[].class)));
+    } // End of addUniqueKey method
+
+    /**
+     * Writes every queued operation in one transaction, one JDBC batch per kind of operation. If
+     * a batch fails, the transaction is rolled back and the operations are written again one at
+     * a time, each behind a savepoint, so that only the ones that fail are left out; they are
+     * logged, and listed in the returned {@link Flush}.
+     * @return  What was written; null if nothing was queued.
+     * @throws PersistenceException if the transaction fails as a whole; none of the operations
+     *                              are written.
+     */
+    public synchronized Flush flush() {
+        if (pending == 0) {
+            return null;
+        }
+
+        Map<Operation, Integer> batchSizes = new EnumMap<>(Operation.class);
+        List<String> failures = new ArrayList<>();
+        List<Object[]> missed = new ArrayList<>();
+        long start = System.nanoTime();
+        // the new keys go into the filters first, so that none is taken for missing once written
+        updateKeyFilters(false);
+        EntityTransaction tx = entityManager.getTransaction();
+        boolean committed = false;
+        tx.begin();
+        try {
+            try {
+                writeBatches(entityManager.unwrap(Connection.class), batchSizes, missed);
+            } catch (SQLException e) {
+                LOGGER.fine("A batch failed, writing its operations one at a time: " + e);
+                tx.rollback();
+                batchSizes.clear();
+                missed.clear();
+                tx.begin();
+                writeEach(entityManager.unwrap(Connection.class), batchSizes, missed, failures);
+            }
+            tx.commit();
+            committed = true;
+            // the queue now only holds the operations that were written and changed a row
+            for (Object[] row : missed) {
+                queue.get(Operation.AUTHOR_REASSIGNMENT).remove(row);
+                queue.get(Operation.BOOK_DELETE).remove(row);
+            }
+            updateSearchIndex();
+            updateStatistics();
+            updateIsbnIndex();
+            updateKeyFilters(true);
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not flush " + pending + " queued operations", e);
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            if (!committed) {
+                failedCount += pending;
+            }
+            clearQueue();
+        }
+        long nanos = System.nanoTime() - start;
+
+        evictChanged(batchSizes);
+
+        Flush flush = new Flush(batchSizes, missed.size(), failures, nanos);
+        ++flushCount;
+        operationCount += flush.getOperationCount();
+        failedCount += failures.size();
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        for (String failed : failures) {
+            LOGGER.warning("Batched operation failed: " + failed);
+        }
+        LOGGER.fine(flush.toString());
+        return flush;
+    } // End of flush method
+
+    /**
+     * Writes the queued operations as one JDBC batch per kind.
+     * @param missed    Where the reassignments and deletes whose book did not exist are added.
+     */
+    private void writeBatches(Connection connection, Map<Operation, Integer> batchSizes, List<Object[]> missed)
+            throws SQLException {
+        for (Operation operation : Operation.values()) {
+            List<Object[]> rows = queue.get(operation);
+            if (rows.isEmpty()) {
+                continue;
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(operation.sql)) {
+                for (Object[] row : rows) {
+                    bind(statement, row);
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                for (int i = 0; i < counts.length; ++i) {
+                    if (counts[i] == 0) {
+                        missed.add(rows.get(i));
+                    }
+                }
+            }
+            batchSizes.put(operation, rows.size());
+        }
+    } // End of writeBatches method
+
+    /**
+     * Writes the queued operations one at a time, each behind a savepoint, and takes the ones
+     * that fail out of the queue.
+     * @param missed    Where the reassignments and deletes whose book did not exist are added.
+     * @param failures  Where each failed operation is described, with the reason.
+     * @throws SQLException if Derby rolled back the whole transaction, e.g. on a deadlock.
+     */
+    private void writeEach(Connection connection, Map<Operation, Integer> batchSizes, List<Object[]> missed,
+                           List<String> failures) throws SQLException {
+        for (Operation operation : Operation.values()) {
+            List<Object[]> rows = queue.get(operation);
+            if (rows.isEmpty()) {
+                continue;
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(operation.sql)) {
+                for (Iterator<Object[]> iterator = rows.iterator(); iterator.hasNext(); ) {
+                    Object[] row = iterator.next();
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        bind(statement, row);
+                        if (statement.executeUpdate() == 0) {
+                            missed.add(row);
+                        }
+                        connection.releaseSavepoint(savepoint);
+                    } catch (SQLException e) {
+                        // the states of class 40 mean that the transaction itself was rolled back
+                        if (e.getSQLState() != null && e.getSQLState().startsWith("40")) {
+                            throw e;
+                        }
+                        connection.rollback(savepoint);
+                        failures.add(operation + " " + Arrays.toString(row) + ": " + e.getMessage());
+                        iterator.remove();
+                    }
+                }
+            }
+            if (!rows.isEmpty()) {
+                batchSizes.put(operation, rows.size());
+            }
+        }
+    } // End of writeEach method
+
+    /** Binds the parameters of a queued operation to its statement. */
+    private static void bind(PreparedStatement statement, Object[] row) throws SQLException {
+        for (int i = 0; i < row.length; ++i) {
+            if (row[i] == null) {
+                // only the head writer and year formed of an author are ever null
+                statement.setNull(i + 1, i == row.length - 1 ? Types.INTEGER : Types.VARCHAR);
+            } else {
+                statement.setObject(i + 1, row[i]);
+            }
+        }
+    } // End of bind method
+
+    /** Flushes the queue from the timer once its oldest operation has waited long enough. */
+    private synchronized void flushIfDue() {
+        if (pending == 0 || System.nanoTime() - oldestNanos < TimeUnit.MILLISECONDS.toNanos(maxDelayMillis)) {
+            return;
+        }
+        flushUnasked();
+    } // End of flushIfDue method
+
+    /**
+     * Flushes the queue when no caller asked for it. There is no caller to tell of a failure, so
+     * it is only logged; the operations that flush() leaves out are logged by it.
+     */
+    private void flushUnasked() {
+        try {
+            flush();
+        } catch (PersistenceException e) {
+            LOGGER.log(Level.WARNING, "A flush of the batch failed; none of its operations were written", e);
+        }
+    } // End of flushUnasked method
+
+    /**
+     * Drops the cached entities that the flush made out of date. The lists of books of the
+     * publishers and authors change with the books, and a reassigned or deleted book's old
+     * author is not known, so every cached instance of those types goes.
+     */
+    private void evictChanged(Map<Operation, Integer> batchSizes) {
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        boolean books = batchSizes.containsKey(Operation.BOOK_INSERT) ||
+                batchSizes.containsKey(Operation.AUTHOR_REASSIGNMENT) || batchSizes.containsKey(Operation.BOOK_DELETE);
+
+        if (books) {
+            cache.evict(Books.class);
+            cache.evict(Publishers.class);
+        }
+        if (books || batchSizes.containsKey(Operation.TEAM_MEMBER_INSERT)) {
+            cache.evict(AuthoringEntities.class);
+        }
+    } // End of evictChanged method
+
+    /**
+     * Brings the search index, if the factory has one, up to date with the rows just written;
+     * they were written around the entities, so the index did not see them.
+     */
+    private void updateSearchIndex() {
+        SearchIndex index = SearchIndex.of(entityManager.getEntityManagerFactory());
+        if (index == null) {
+            return;
+        }
+
+        for (Object[] row : queue.get(Operation.PUBLISHER_INSERT)) {
+            index.put(SearchIndex.Kind.PUBLISHER, (String) row[0], (String) row[0]);
+        }
+        for (Object[] row : queue.get(Operation.AUTHOR_INSERT)) {
+            index.put(SearchIndex.Kind.AUTHOR, (String) row[0], (String) row[2]);
+        }
+        for (Object[] row : queue.get(Operation.BOOK_INSERT)) {
+            index.put(SearchIndex.Kind.BOOK, (String) row[0], (String) row[1]);
+        }
+        // a book is never inserted after its delete in the same flush (see insert(Books))
+        for (Object[] row : queue.get(Operation.BOOK_DELETE)) {
+            index.remove(SearchIndex.Kind.BOOK, (String) row[0]);
+        }
+    } // End of updateSearchIndex method
+
+    /**
+     * Brings the catalog statistics, if the factory has them, up to date with the rows just
+     * written, in the order that they were written.
+     */
+    private void updateStatistics() {
+        CatalogStatistics statistics = CatalogStatistics.of(entityManager.getEntityManagerFactory());
+        if (statistics == null) {
+            return;
+        }
+
+        for (Object[] row : queue.get(Operation.AUTHOR_INSERT)) {
+            statistics.putAuthor((String) row[0], (String) row[1]);
+        }
+        for (Object[] row : queue.get(Operation.BOOK_INSERT)) {
+            statistics.putBook((String) row[0], (String) row[4], (String) row[3], (Integer) row[2]);
+        }
+        for (Object[] row : queue.get(Operation.AUTHOR_REASSIGNMENT)) {
+            statistics.reassignBook((String) row[1], (String) row[0]);
+        }
+        for (Object[] row : queue.get(Operation.BOOK_DELETE)) {
+            statistics.removeBook((String) row[0]);
+        }
+    } // End of updateStatistics method
+
+    /** Brings the ISBN index, if the factory has one, up to date with the books just written. */
+    private void updateIsbnIndex() {
+        IsbnIndex index = IsbnIndex.of(entityManager.getEntityManagerFactory());
+        if (index == null) {
+            return;
+        }
+
+        for (Object[] row : queue.get(Operation.BOOK_INSERT)) {
+            index.putBook((String) row[0]);
+        }
+        for (Object[] row : queue.get(Operation.BOOK_DELETE)) {
+            index.removeBook((String) row[0]);
+        }
+    } // End of updateIsbnIndex method
+
+    /**
+     * Adds the keys of the rows queued for insert to the key filters, if the factory has them:
+     * once before the rows are written, and again once they are committed, when the books that
+     * were really deleted are also counted as stale.
+     */
+    private void updateKeyFilters(boolean committed) {
+        KeyFilters filters = KeyFilters.of(entityManager.getEntityManagerFactory());
+        if (filters == null) {
+            return;
+        }
+
+        for (Object[] row : queue.get(Operation.PUBLISHER_INSERT)) {
+            filters.add(KeyFilters.Key.PUBLISHER_NAME, (String) row[0]);
+            filters.add(KeyFilters.Key.PUBLISHER_PHONE, (String) row[1]);
+            filters.add(KeyFilters.Key.PUBLISHER_EMAIL, (String) row[2]);
+        }
+        for (Object[] row : queue.get(Operation.AUTHOR_INSERT)) {
+            filters.add(KeyFilters.Key.AUTHOR_EMAIL, (String) row[0]);
+        }
+        for (Object[] row : queue.get(Operation.BOOK_INSERT)) {
+            filters.add(KeyFilters.Key.ISBN, (String) row[0]);
+        }
+        if (committed) {
+            for (int i = queue.get(Operation.BOOK_DELETE).size(); i > 0; --i) {
+                filters.remove(KeyFilters.Key.ISBN);
+            }
+        }
+    } // End of updateKeyFilters method
+
+    private void clearQueue() {
+        queue.values().forEach(List::clear);
+        queuedKeys.values().forEach(Set::clear);
+        deletedIsbns.clear();
+        pending = 0;
+    } // End of clearQueue method
+
+    /**
+     * Returns the number of flushes, the operations they wrote and those that failed, and their
+     * mean and slowest time.
+     */
+    public synchronized String getSummary() {
+        return String.format("%d flushes of %d operations (%d failed); %.1f ms per flush, %.1f ms at most",
+                flushCount, operationCount, failedCount, flushCount == 0 ? 0.0 : totalNanos / 1e6 / flushCount,
+                maxNanos / 1e6);
+    } // End of getSummary method
+
+    /**
+     * Stops the timer, flushes what is still queued, and closes the EntityManager. A flush that
+     * fails is logged rather than thrown, so that the caller goes on to close the factory. Closing
+     * a closed session does nothing.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (timer != null) {
+            timer.shutdown();
+        }
+        try {
+            try {
+                flush();
+            } catch (PersistenceException e) {
+                LOGGER.log(Level.WARNING, "Could not flush the batch on close; its queued operations were not " +
+                        "written", e);
+            }
+            LOGGER.info("Batch session: " + getSummary());
+        } finally {
+            entityManager.close();
+        }
+    } // End of close method
+} // End of BatchSession class
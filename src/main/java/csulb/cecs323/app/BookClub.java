@@ -15,12 +15,31 @@ package csulb.cecs323.app;
 // Import all of the entity classes that we have written for this application.
 import csulb.cecs323.model.*;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.SQLDataException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.persistence.*;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
 
 /**
  * A simple application to demonstrate how to persist an object in JPA.
@@ -59,54 +78,64 @@ public class BookClub {
 
    public static void main(String[] args) {
 
+      // Commands that run without the interactive menu
+      if (args.length > 0 && args[0].equals("import")) {
+         importCatalog(args);
+         return;
+      }
+      if (args.length > 0 && args[0].equals("server")) {
+         runServer(args);
+         return;
+      }
+      if (args.length > 0 && args[0].equals("generate")) {
+         generateCatalog(args);
+         return;
+      }
+      if (args.length > 0 && args[0].equals("script")) {
+         runScript(args);
+         return;
+      }
+      if (args.length > 0 && args[0].equals("export")) {
+         exportCatalog(args);
+         return;
+      }
+      if (args.length > 0 && args[0].equals("database-server")) {
+         runDatabaseServer(args);
+         return;
+      }
+
       LOGGER.fine("Creating EntityManagerFactory and EntityManager");
-      EntityManagerFactory factory = Persistence.createEntityManagerFactory("BookClub");
+      EntityManagerFactory factory = Bootstrap.start();
+      SearchIndex searchIndex = SearchIndex.install(factory);
+      CatalogStatistics.install(factory);
+      IsbnIndex.install(factory);
+      KeyFilters.install(factory);
+      CommitListener.installAfterCommit(factory);
       EntityManager manager = factory.createEntityManager();
       // Create an instance of BookClub and store our new EntityManager as an instance variable.
       BookClub bookClub = new BookClub(manager);
+      BookValidator bookValidator = new BookValidator(manager);
 
 
       // Any changes to the database need to be done within a transaction.
       // See: https://en.wikibooks.org/wiki/Java_Persistence/Transactions
-
-      LOGGER.fine("Begin of Transaction");
-      EntityTransaction tx = manager.getTransaction();
-
-      // create and commit blank tables before user interaction
-      tx.begin();
-
-      // Create the parents before we try to initialize the children
-      List<Publishers> publishers = new ArrayList<>();
-      bookClub.createEntity(publishers);
-
-      List<WritingGroups> writingGroups = new ArrayList<>();
-      bookClub.createEntity(writingGroups);
-
-      List<IndividualAuthors> individualAuthors = new ArrayList<>();
-      bookClub.createEntity(individualAuthors);
-
-      List<AdHocTeams> adHocTeams = new ArrayList<>();
-      bookClub.createEntity(adHocTeams);
-
-      List<Books> books = new ArrayList<>();
-      bookClub.createEntity(books);
-
-      tx.commit();
+      // Each change gets a short transaction of its own once all of its input has been entered,
+      // so no locks are held while the user types; the reads need no transaction at all.
+      UnitOfWork unitOfWork = new UnitOfWork(manager);
 
 
       // Menu Handling
 
 
-      Scanner in = new Scanner(System.in);
+      Scanner in = Functions.input();
       int menuChoice;
       int secondMenuChoice;
 
       do {
-         // Restart the transaction every time we reiterate the main menu
-         tx.begin();
-
          // Print the main menu and validate the user's input
          menuChoice = Functions.checkMainMenuInput();
+         // the slow query log records which menu option each query ran for
+         SlowQueryLog.setOperation("menu " + menuChoice);
 
          String name;
          String email;
@@ -122,6 +151,7 @@ public class BookClub {
             case 1:
                // Print the menu to add objects and validate the user's input
                secondMenuChoice = Functions.checkAddObjectInput();
+               SlowQueryLog.setOperation("menu " + menuChoice + "." + secondMenuChoice);
 
                switch (secondMenuChoice) {
                   // Add a new publisher
@@ -185,8 +215,8 @@ public class BookClub {
                      } while (!valid);
 
                      // add the new publisher to the table
-                     publishers.add(new Publishers(name, phone, email));
-                     manager.persist(publishers.get(publishers.size() - 1));
+                     Publishers newPublisher = new Publishers(name, phone, email);
+                     unitOfWork.write(em -> em.persist(newPublisher));
                      break;
 
                   // Add a new book
@@ -197,23 +227,7 @@ public class BookClub {
                      int yearPublishedToInt = 0;
 
                      // validating the book's ISBN
-                     do {
-                        System.out.print("Enter the book's ISBN:\n >> ");
-                        isbn = in.nextLine();
-
-                        // check if the book already exists using its primary key
-                        Books book = bookClub.getBook(isbn);
-
-                        // enforcing primary key constraint
-                        if (book != null)
-                           System.out.println("That book already exists in the table; please try again.");
-                        else if (isbn.length() > 17)
-                           System.out.println("The input exceeds the maximum character length (17); please try again.");
-                        else
-                           valid = true;
-
-                     } while (!valid);
-                     valid = false;
+                     isbn = promptIsbn(in);
 
                      // validating the book's title
                      do {
@@ -240,49 +254,42 @@ public class BookClub {
                            System.out.println("The input is not an integer; please try again.");
                         }
                      } while (!valid);
-                     valid = false;
 
-                     // validating the author's existence within the table
-                     do {
-                        System.out.print("Enter the author's email:\n >> ");
-                        String authorEmail = in.nextLine();
-                        author1 = bookClub.getAuthor(authorEmail);
-
-                        Books bookByAuthor = bookClub.getBookByAuthor(title, authorEmail);
-
-                        if (author1 == null) {
-                           System.out.println("The author doesn't exist in the table; please try again.");
-                        } else if (bookByAuthor != null) {
-                           System.out.println("The author has already written a book with this title; " +
-                                             "please try again.");
-                         } else {
-                           valid = true;
+                     System.out.print("Enter the author's email:\n >> ");
+                     String authorEmail = in.nextLine();
+
+                     System.out.print("Enter the publisher's name:\n >> ");
+                     String publisher = in.nextLine();
+
+                     // check the key, the author, the publisher and both unique constraints at once,
+                     // asking again only for the fields that failed
+                     List<BookValidator.Violation> violations;
+                     while (!(violations = bookValidator.validate(
+                             new BookValidator.Candidate(isbn, title, authorEmail, publisher))).isEmpty()) {
+                        EnumSet<BookValidator.Field> retry = EnumSet.noneOf(BookValidator.Field.class);
+                        for (BookValidator.Violation violation : violations) {
+                           System.out.println(violation.getMessage() + "; please try again.");
+                           retry.add(violation.getField());
                         }
 
-                     } while (!valid);
-                     valid = false;
-
-                     // validating the publisher's existence within the table
-                     do {
-                        System.out.print("Enter the publisher's name:\n >> ");
-                        String publisher = in.nextLine();
-                        publisher1 = bookClub.getPublisher(publisher);
-
-                        Books bookByPublisher = bookClub.getBookByPublisher(title, publisher);
-
-                        if (publisher1 == null) {
-                           System.out.println("The publisher doesn't exist in the table; please try again.");
-                        } else if (bookByPublisher != null) {
-                           System.out.println("The publisher has already published a book with this title; " +
-                                             "please try again.");
-                        } else {
-                           valid = true;
+                        if (retry.contains(BookValidator.Field.ISBN)) {
+                           isbn = promptIsbn(in);
                         }
-                     } while (!valid);
+                        if (retry.contains(BookValidator.Field.AUTHOR)) {
+                           System.out.print("Enter the author's email:\n >> ");
+                           authorEmail = in.nextLine();
+                        }
+                        if (retry.contains(BookValidator.Field.PUBLISHER)) {
+                           System.out.print("Enter the publisher's name:\n >> ");
+                           publisher = in.nextLine();
+                        }
+                     }
 
                      // add the new book to the table
-                     books.add(new Books(author1, publisher1, isbn, title, yearPublishedToInt));
-                     manager.persist(books.get(books.size() - 1));
+                     String newIsbn = isbn, newTitle = title, newAuthorEmail = authorEmail, newPublisherName = publisher;
+                     int newYear = yearPublishedToInt;
+                     unitOfWork.write(em -> bookClub.addBook(new Books(em.find(AuthoringEntities.class, newAuthorEmail),
+                             em.find(Publishers.class, newPublisherName), newIsbn, newTitle, newYear)));
                      break;
 
                   // Add a new writing group
@@ -350,8 +357,8 @@ public class BookClub {
                      } while (!valid);
 
                      // add the new writing group to the table
-                     writingGroups.add(new WritingGroups(name, email, headWriter, yearFormedToInt));
-                     manager.persist(writingGroups.get(writingGroups.size() - 1));
+                     WritingGroups newGroup = new WritingGroups(name, email, headWriter, yearFormedToInt);
+                     unitOfWork.write(em -> em.persist(newGroup));
                      break;
 
                   // Add a new individual author
@@ -388,8 +395,8 @@ public class BookClub {
                      } while (!valid);
 
                      // add the new individual author to the table
-                     individualAuthors.add(new IndividualAuthors(name, email));
-                     manager.persist(individualAuthors.get(individualAuthors.size() - 1));
+                     IndividualAuthors newAuthor = new IndividualAuthors(name, email);
+                     unitOfWork.write(em -> em.persist(newAuthor));
                      break;
 
                   // Add a new ad hoc team
@@ -426,12 +433,22 @@ public class BookClub {
                      } while (!valid);
 
                      // add the new ad hoc team to the table
-                     adHocTeams.add(new AdHocTeams(name, email));
-                     manager.persist(adHocTeams.get(adHocTeams.size() - 1));
+                     AdHocTeams newTeam = new AdHocTeams(name, email);
+                     unitOfWork.write(em -> em.persist(newTeam));
                      break;
 
                   // Assign an individual author to an ad hoc team
                   case 6:
+                     // if there are no individual authors or no ad hoc teams, inform the user and exit the case
+                     if (!bookClub.existsByType(IndividualAuthors.class)) {
+                        System.out.println("Cannot assign a team; there are no individual authors.\n");
+                        break;
+                     }
+                     if (!bookClub.existsByType(AdHocTeams.class)) {
+                        System.out.println("Cannot assign a team; there are no ad hoc teams.\n");
+                        break;
+                     }
+
                      do {
                         // validate that the author is not already assigned to the ad hoc team
                         try {
@@ -473,8 +490,15 @@ public class BookClub {
                            }
 
                            // add the ad hoc team to the author's list of joined teams
-                           adHocTeamMember.addToAdHocTeamsList(adHocTeam);
-                           manager.persist(adHocTeamMember);
+                           String memberEmail = adHocTeamMember.getEmail(), teamEmail = adHocTeam.getEmail();
+                           unitOfWork.write(em -> {
+                              IndividualAuthors member = em.find(IndividualAuthors.class, memberEmail);
+                              AdHocTeams team = em.find(AdHocTeams.class, teamEmail);
+                              if (!member.getAdHocTeamsList().contains(team)) {
+                                 member.addToAdHocTeamsList(team);
+                                 team.addToIndividualAuthorList(member);
+                              }
+                           });
                         }
                         catch (SQLDataException e) {
                            System.out.println("The author is already part of that team; please try again.");
@@ -489,14 +513,13 @@ public class BookClub {
             case 2:
                // Print the menu to list information and validate the user's input
                secondMenuChoice = Functions.checkListInformationInput();
+               SlowQueryLog.setOperation("menu " + menuChoice + "." + secondMenuChoice);
 
                switch (secondMenuChoice) {
                   // list information about a publisher
                   case 1:
-                     // If the list of publishers is empty, inform the user and exit the case
-                     List<Publishers> publisherList = bookClub.getAllPublishers();
-
-                     if (publisherList.size() == 0) {
+                     // If there are no publishers, inform the user and exit the case
+                     if (!bookClub.publishersExist()) {
                         System.out.println("Cannot show info; there are no publishers.\n");
                         break;
                      }
@@ -519,10 +542,8 @@ public class BookClub {
 
                   // list information about a book
                   case 2:
-                     // If the list of books if empty, inform the user and exit the case
-                     List<Books> booksList = bookClub.getAllBooks();
-
-                     if (booksList.size() == 0) {
+                     // If there are no books, inform the user and exit the case
+                     if (!bookClub.booksExist()) {
                         System.out.println("Cannot show info; there are no books.\n");
                         break;
                      }
@@ -546,17 +567,7 @@ public class BookClub {
                   // list information about a writing group
                   case 3:
                      // if there are no WritingGroups among the authors, inform the user and exit the case
-                     List<AuthoringEntities> allAuthors= bookClub.getAllAuthors();
-                     boolean writingGroupExists = false;
-
-                     for (AuthoringEntities a : allAuthors) {
-                        if (a instanceof WritingGroups) {
-                           writingGroupExists = true;
-                           break;
-                        }
-                     }
-
-                     if (!writingGroupExists) {
+                     if (!bookClub.existsByType(WritingGroups.class)) {
                         System.out.println("Cannot show info; there are no writing groups.\n");
                         break;
                      }
@@ -583,10 +594,8 @@ public class BookClub {
 
             // User chose to delete a book
             case 3:
-               // If the list of books is empty, inform the user and exit the case
-               List<Books> booksList = bookClub.getAllBooks();
-
-               if (booksList.size() == 0) {
+               // If there are no books, inform the user and exit the case
+               if (!bookClub.booksExist()) {
                   System.out.println("Cannot delete a book; there are no books.\n");
                   break;
                }
@@ -602,9 +611,13 @@ public class BookClub {
                   if (book == null) {
                      System.out.println("That book doesn't exist in the table; please try again.");
                   } else {
-                     // locate and delete the book
-                     Books bookToDelete = manager.find(Books.class, book.getISBN());
-                     manager.remove(bookToDelete);
+                     // locate and delete the book, unless someone else already has
+                     String isbn = book.getISBN();
+                     unitOfWork.write(em -> {
+                        Books bookToDelete = em.find(Books.class, isbn);
+                        if (bookToDelete != null)
+                           bookClub.deleteBook(bookToDelete);
+                     });
 
                      valid = true;
                   }
@@ -613,10 +626,8 @@ public class BookClub {
 
             // User chose to update a book
             case 4:
-               // If the list of books if empty, inform the user and exit the case
-               booksList = bookClub.getAllBooks();
-
-               if (booksList.size() == 0) {
+               // If there are no books, inform the user and exit the case
+               if (!bookClub.booksExist()) {
                   System.out.println("Cannot update a book; there are no books.\n");
                   break;
                }
@@ -641,7 +652,9 @@ public class BookClub {
                         if (newAuthor == null) {
                            System.out.println("That author doesn't exist in the table; please try again.");
                         } else {
-                           book.setAuthor(newAuthor);
+                           String isbn = book.getISBN(), newAuthorEmail = newAuthor.getEmail();
+                           unitOfWork.write(em -> bookClub.reassignBook(em.find(Books.class, isbn),
+                                   em.find(AuthoringEntities.class, newAuthorEmail)));
                            valid = true;
                         }
                      } while (!valid);
@@ -652,74 +665,319 @@ public class BookClub {
 
             // User chose to list the primary keys of an object
             case 5:
+               // the keys are read and printed one page at a time, so any size of table can be listed
+               PrimaryKeyLister lister = new PrimaryKeyLister(bookClub, in);
+
                secondMenuChoice = Functions.checkPrimaryKeysInput();
+               SlowQueryLog.setOperation("menu " + menuChoice + "." + secondMenuChoice);
                switch(secondMenuChoice) {
                   // listing primary keys of publishers
                   case 1:
-                     List<Publishers> publishersList = bookClub.getAllPublishers();
-
-                     // if the list of publishers is empty, inform the user and exit the case
-                     if (publishersList.size() == 0) {
-                        System.out.println("Cannot show primary keys; there are no publishers.\n");
-                     } else {
-                        System.out.println("\nPrimary Keys of Publishers: ");
-                        for (Publishers publisher : publishersList) {
-                           System.out.println("  - Name: " + publisher.getName());
-                        }
-                     }
+                     lister.listPublishers();
                      break;
 
                   // listing primary keys of books
                   case 2:
-                     booksList = bookClub.getAllBooks();
-
-                     // if the list of books is empty, inform the user and exit the case
-                     if (booksList.size() == 0) {
-                        System.out.println("Cannot show primary keys; there are no books.\n");
-                     } else {
-                        System.out.println("\nPrimary Keys of Books: ");
-                        for (Books b: booksList) {
-                           System.out.println("  - Title: "  + b.getTitle() + "\n    ISBN: " + b.getISBN());
-                        }
-                     }
+                     lister.listBooks();
                      break;
 
                   // listing primary keys of authors
                   case 3:
-                     List<AuthoringEntities> authors = bookClub.getAllAuthors();
-
-                     // if the list of authors is empty, inform the user and exit the case
-                     if (authors.size() == 0) {
-                        System.out.println("Cannot show primary keys; there are no authors.\n");
-                     } else {
-                        String type;
-
-                        System.out.println("\nPrimary Keys of Authoring Entities: ");
-                        for (AuthoringEntities a : authors) {
-                           if (a instanceof IndividualAuthors) {
-                              type = "IndividualAuthors";
-                           } else if (a instanceof WritingGroups) {
-                              type = "WritingGroups";
-                           } else {
-                              type = "AdHocTeams";
-                           }
-                           System.out.println("  - Email: " + a.getEmail() + "\n    Type: " + type);
-                        }
-                     }
+                     lister.listAuthors();
                      break;
                }
                break;
-         }
 
-         // At the end of the loop, commit any changes made so the data is visible to others
-         tx.commit();
+            // User chose to search the books, authors and publishers
+            case 6:
+               System.out.print("Enter the words to search for:\n >> ");
+               String words = in.nextLine();
+
+               // the index answers from memory, so no query is run
+               List<SearchIndex.Hit> hits = searchIndex.search(words, SearchIndex.DEFAULT_LIMIT);
+               if (hits.isEmpty()) {
+                  System.out.println("Nothing matches that search.\n");
+               } else {
+                  System.out.println();
+                  hits.forEach(hit -> System.out.println("  - " + hit));
+               }
+               break;
+         }
 
       } while (menuChoice != 0);
 
-      LOGGER.fine("End of Transaction");
-
+      for (CacheStatistics statistics : CacheStatistics.all()) {
+         LOGGER.info(statistics.toString());
+      }
+      for (QueryMetrics metrics : QueryMetrics.all()) {
+         LOGGER.fine(metrics.toString());
+      }
+      // closing the factory also writes out the slow query log
+      manager.close();
+      factory.close();
    } // End of the main method
 
+   /**
+    * Prompts for an ISBN until one that fits in the column is entered.
+    * @param in   The scanner that the ISBN is read from.
+    * @return     The ISBN entered.
+    */
+   private static String promptIsbn(Scanner in) {
+      while (true) {
+         System.out.print("Enter the book's ISBN:\n >> ");
+         // ISBN-10s, and ISBN-13s with hyphens, are stored as the 13 digits of their ISBN-13
+         String isbn = IsbnCodec.normalize(in.nextLine());
+
+         if (isbn.length() <= 17)
+            return isbn;
+         System.out.println("The input exceeds the maximum character length (17); please try again.");
+      }
+   } // End of promptIsbn method
+
+   /**
+    * Loads a catalog feed in chunks instead of persisting it one entity at a time.
+    * Usage: {@code import <file> [batch size]}
+    * @param args    The command line arguments; args[0] is "import".
+    */
+   private static void importCatalog(String[] args) {
+      if (args.length < 2) {
+         System.out.println("Usage: import <file> [batch size]");
+         return;
+      }
+
+      int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : BulkImporter.DEFAULT_BATCH_SIZE;
+
+      // match the JDBC batches to the chunks that the importer commits
+      Map<String, Object> properties = new HashMap<>();
+      properties.put(PersistenceUnitProperties.BATCH_WRITING_SIZE, Integer.toString(batchSize));
+
+      EntityManagerFactory factory = Bootstrap.start(properties);
+      EntityManager manager = factory.createEntityManager();
+
+      try {
+         System.out.println(new BulkImporter(manager, batchSize).importFile(Paths.get(args[1])));
+      } catch (IOException e) {
+         System.out.println("Could not read " + args[1] + ": " + e.getMessage());
+      } finally {
+         manager.close();
+         factory.close();
+      }
+   } // End of importCatalog method
+
+   /**
+    * Generates a synthetic catalog of the given size, either into a file in the import format or
+    * straight into the database.
+    * Usage: {@code generate <books> <file | db> [seed]}
+    * @param args    The command line arguments; args[0] is "generate".
+    */
+   private static void generateCatalog(String[] args) {
+      if (args.length < 3) {
+         System.out.println("Usage: generate <books> <file | db> [seed]");
+         return;
+      }
+
+      long seed = args.length > 3 ? Long.parseLong(args[3]) : 0L;
+      DatasetGenerator generator = new DatasetGenerator(Integer.parseInt(args[1]), seed);
+      System.out.println("Generating " + generator.getBookCount() + " books, " + generator.getPublisherCount() +
+              " publishers and " + generator.getAuthorCount() + " authoring entities from seed " + seed);
+
+      if (!args[2].equals("db")) {
+         try (Writer out = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+            System.out.println("Wrote " + generator.write(out) + " records to " + args[2]);
+         } catch (IOException e) {
+            System.out.println("Could not write " + args[2] + ": " + e.getMessage());
+         }
+         return;
+      }
+
+      Map<String, Object> properties = new HashMap<>();
+      properties.put(PersistenceUnitProperties.BATCH_WRITING_SIZE, Integer.toString(BulkImporter.DEFAULT_BATCH_SIZE));
+
+      EntityManagerFactory factory = Bootstrap.start(properties);
+      EntityManager manager = factory.createEntityManager();
+
+      try {
+         long records = new BulkImporter(manager, BulkImporter.DEFAULT_BATCH_SIZE).load(generator.records());
+         System.out.println("Loaded " + records + " records into the database");
+      } finally {
+         manager.close();
+         factory.close();
+      }
+   } // End of generateCatalog method
+
+   /**
+    * Streams every book, with its publisher and author, to a file or to standard output.
+    * Usage: {@code export <file | -> [json | csv] [--gzip]}; the output is compressed with
+    * --gzip, or when the file name ends in ".gz". The database is started in production mode, so
+    * the tables are kept even when the startup mode is development.
+    * @param args    The command line arguments; args[0] is "export".
+    */
+   private static void exportCatalog(String[] args) {
+      List<String> arguments = new ArrayList<>(Arrays.asList(args));
+      boolean gzip = arguments.remove("--gzip");
+      if (arguments.size() < 2) {
+         System.out.println("Usage: export <file | -> [json | csv] [--gzip]");
+         return;
+      }
+
+      String file = arguments.get(1);
+      boolean toStandardOutput = file.equals("-");
+      CatalogExporter.Format format = arguments.size() > 2 ? CatalogExporter.Format.of(arguments.get(2))
+              : CatalogExporter.Format.JSON;
+      gzip |= file.endsWith(".gz");
+
+      EntityManagerFactory factory = Bootstrap.start(Bootstrap.Mode.PRODUCTION, new HashMap<>());
+      EntityManager manager = factory.createEntityManager();
+
+      try (OutputStream out = toStandardOutput ? new FileOutputStream(FileDescriptor.out)
+              : Files.newOutputStream(Paths.get(file))) {
+         CatalogExporter.Summary summary = new CatalogExporter(manager, format, gzip).export(out);
+         if (!toStandardOutput) {
+            System.out.println(summary + " to " + file);
+         }
+      } catch (IOException e) {
+         System.out.println("Could not write " + file + ": " + e.getMessage());
+      } finally {
+         manager.close();
+         factory.close();
+      }
+   } // End of exportCatalog method
+
+   /**
+    * Runs the BookClub commands of a script without any prompts, reading them from a file or,
+    * without one, from standard input.
+    * Usage: {@code script [file] [--batch] [--stop-on-error]}; with --batch, the changes are
+    * written in batches (see {@link BatchSession}). The exit status is 1 if any command failed.
+    * @param args    The command line arguments; args[0] is "script".
+    */
+   private static void runScript(String[] args) {
+      List<String> arguments = new ArrayList<>(Arrays.asList(args));
+      boolean batched = arguments.remove("--batch");
+      boolean stopOnError = arguments.remove("--stop-on-error");
+      String file = arguments.size() > 1 ? arguments.get(1) : null;
+
+      EntityManagerFactory factory = Bootstrap.start();
+      SearchIndex.install(factory);
+      CatalogStatistics.install(factory);
+      IsbnIndex.install(factory);
+      KeyFilters.install(factory);
+      CommitListener.installAfterCommit(factory);
+      BatchSession batch = batched ? new BatchSession(factory) : null;
+      int failures;
+
+      try (BufferedReader script = file == null
+              ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+              : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+         PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+         failures = new ScriptRunner(factory, batch, stopOnError).run(script, out);
+      } catch (IOException e) {
+         System.out.println("Could not read " + (file == null ? "standard input" : file) + ": " + e.getMessage());
+         failures = 1;
+      } finally {
+         try {
+            if (batch != null) {
+               batch.close();
+            }
+         } finally {
+            factory.close();
+         }
+      }
+
+      if (failures > 0) {
+         System.exit(1);
+      }
+   } // End of runScript method
+
+   /**
+    * Serves the BookClub commands to many clients at once over a local socket.
+    * Usage: {@code server [port] [workers] [queue capacity] [--batch]}; with --batch, the
+    * changes of all the clients are written behind them in batches (see {@link BatchSession}).
+    * @param args    The command line arguments; args[0] is "server".
+    */
+   private static void runServer(String[] args) {
+      // "--batch" may come anywhere after "server"; the other arguments are positional
+      List<String> arguments = new ArrayList<>(Arrays.asList(args));
+      boolean batched = arguments.remove("--batch");
+
+      int port = arguments.size() > 1 ? Integer.parseInt(arguments.get(1)) : BookClubServer.DEFAULT_PORT;
+      int workers = arguments.size() > 2 ? Integer.parseInt(arguments.get(2)) : BookClubServer.DEFAULT_WORKERS;
+      int queueCapacity = arguments.size() > 3 ? Integer.parseInt(arguments.get(3))
+              : BookClubServer.DEFAULT_QUEUE_CAPACITY;
+
+      // one factory, and so one shared cache and connection pool, for every client
+      EntityManagerFactory factory = Bootstrap.start(BookClubServer.connectionPoolProperties(workers));
+      SearchIndex.install(factory);
+      CatalogStatistics.install(factory);
+      IsbnIndex.install(factory);
+      KeyFilters.install(factory);
+      CommitListener.installAfterCommit(factory);
+      BatchSession batch = batched ? new BatchSession(factory) : null;
+      BookClubServer server = new BookClubServer(factory, port, workers, queueCapacity, batch);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+         server.stop();
+         // the queued changes must not be lost when the server is interrupted, nor the slow queries
+         try {
+            if (batch != null) {
+               batch.close();
+            }
+         } finally {
+            closeFactory(factory);
+         }
+      }));
+
+      try {
+         server.run();
+      } catch (IOException e) {
+         System.out.println("Could not start the server: " + e.getMessage());
+      } finally {
+         try {
+            if (batch != null) {
+               batch.close();
+            }
+         } finally {
+            closeFactory(factory);
+         }
+      }
+   } // End of runServer method
+
+   /**
+    * Closes a factory unless it is closed already; the server's shutdown hook and its main thread
+    * may both get to it.
+    * @param factory The factory to close.
+    */
+   private static synchronized void closeFactory(EntityManagerFactory factory) {
+      if (factory.isOpen()) {
+         factory.close();
+      }
+   } // End of closeFactory method
+
+   /**
+    * Runs a Derby Network Server for the BookClub processes started with
+    * -Dbookclub.database=network to share, until the process is interrupted. Unlike the server
+    * that the first such process would start inside itself, it outlives any one of them.
+    * Usage: {@code database-server [port]}; the host is the bookclub.database.host system property.
+    * @param args    The command line arguments; args[0] is "database-server".
+    */
+   private static void runDatabaseServer(String[] args) {
+      String host = System.getProperty(DerbyNetworkServer.HOST, DerbyNetworkServer.DEFAULT_HOST);
+      int port = args.length > 1 ? Integer.parseInt(args[1])
+              : Integer.getInteger(DerbyNetworkServer.PORT, DerbyNetworkServer.DEFAULT_PORT);
+
+      if (DerbyNetworkServer.isRunning(host, port)) {
+         System.out.println("A Derby Network Server is already listening on " + host + ":" + port);
+         return;
+      }
+      DerbyNetworkServer.start(host, port);
+      System.out.println("Derby Network Server listening on " + host + ":" + port + "; press Ctrl-C to stop it");
+
+      try {
+         // the server runs on threads of its own; its shutdown hook stops it
+         Thread.currentThread().join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   } // End of runDatabaseServer method
+
 
    /**
     * Create and persist a list of objects to the database.
@@ -728,8 +986,13 @@ public class BookClub {
     *                   used a Java generic so that I did not have to write this over and over.
     */
    public <E> void createEntity(List <E> entities) {
+      // toString() walks the relationships of each entity, so only build it when it will be logged
+      boolean logging = LOGGER.isLoggable(Level.FINE);
+
       for (E next : entities) {
-         LOGGER.info("Persisting: " + next);
+         if (logging) {
+            LOGGER.fine("Persisting: " + next);
+         }
          // Use the CarClub entityManager instance variable to get our EntityManager.
          this.entityManager.persist(next);
       }
@@ -737,26 +1000,128 @@ public class BookClub {
       // The auto generated ID (if present) is not passed in to the constructor since JPA will
       // generate a value.  So the previous for loop will not show a value for the ID.  But
       // now that the Entity has been persisted, JPA has generated the ID and filled that in.
-      for (E next : entities) {
-         LOGGER.info("Persisted object after flush (non-null id): " + next);
+      if (logging) {
+         for (E next : entities) {
+            LOGGER.fine("Persisted object after flush (non-null id): " + next);
+         }
       }
    } // End of createEntity member method
 
    /**
-    * Returns the Publisher object using the provided name.
-    * @param name    The name of the publisher you are searching for.
-    * @return        The Publisher instance corresponding to that name.
+    * Persists a new book and adds it to the lists of books of its author and publisher, so that
+    * the cached copies of either one never miss the book (see {@link #updateBooksList}).
+    * @param book    The new book.
     */
-   public Publishers getPublisher(String name) {
-      List<Publishers> publishersList = this.entityManager.createNamedQuery("ReturnPublisher", Publishers.class)
-              .setParameter(1, name)
+   public void addBook(Books book) {
+      this.entityManager.persist(book);
+      updateBooksList(book.getPublisher(), "books", () -> book.getPublisher().addToBookList(book));
+      updateBooksList(book.getAuthor(), "booksList", () -> book.getAuthor().addToBooksList(book));
+   } // End of addBook method
+
+   /**
+    * Removes a book and takes it out of the lists of books of its author and publisher, so that
+    * the cached copies of either one never list a deleted book.
+    * @param book    The managed book to delete.
+    */
+   public void deleteBook(Books book) {
+      updateBooksList(book.getPublisher(), "books", () -> book.getPublisher().removeFromBookList(book));
+      updateBooksList(book.getAuthor(), "booksList", () -> book.getAuthor().removeFromBooksList(book));
+      this.entityManager.remove(book);
+   } // End of deleteBook method
+
+   /**
+    * Gives a book a new author, and moves it from the old author's list of books to the new one's,
+    * so that the cached copies of either one never list the book under the wrong author (see
+    * {@link #updateBooksList}).
+    * @param book       The managed book.
+    * @param newAuthor  Its new, managed, author.
+    */
+   public void reassignBook(Books book, AuthoringEntities newAuthor) {
+      AuthoringEntities oldAuthor = book.getAuthor();
+      updateBooksList(oldAuthor, "booksList", () -> oldAuthor.removeFromBooksList(book));
+      book.setAuthor(newAuthor);
+      updateBooksList(newAuthor, "booksList", () -> newAuthor.addToBooksList(book));
+   } // End of reassignBook method
+
+   /**
+    * Changes the list of books of an author or publisher only if the list has already been read
+    * into this EntityManager. Otherwise the owner is dropped from the shared cache, so that its
+    * list is read again, with the change, the next time it is used. Loading the whole list just
+    * to add one book would cost more with every book the owner has.
+    * <p>
+    * Until the change commits, another EntityManager can still read the old list and cache it
+    * again, so the owner is dropped once more after the commit (see
+    * {@link CommitListener#afterCommit}).
+    * </p>
+    * @param owner      The author or publisher.
+    * @param attribute  The name of the owner's list of books.
+    * @param change     Adds the book to, or removes it from, the list.
+    */
+   private void updateBooksList(Object owner, String attribute, Runnable change) {
+      EntityManagerFactory factory = this.entityManager.getEntityManagerFactory();
+      if (factory.getPersistenceUnitUtil().isLoaded(owner, attribute)) {
+         change.run();
+      } else {
+         Cache cache = factory.getCache();
+         Object id = factory.getPersistenceUnitUtil().getIdentifier(owner);
+         cache.evict(owner.getClass(), id);
+         CommitListener.afterCommit(this.entityManager, () -> cache.evict(owner.getClass(), id));
+      }
+   } // End of updateBooksList method
+
+   /**
+    * Looks up an entity by its primary key. A key that its filter (see {@link KeyFilters}) has
+    * never seen does not exist, and is not looked for. Otherwise the shared cache is checked
+    * first, and the named query is only run (and its result cached) when the entity is not
+    * already there.
+    * @param type       The class of the entity.
+    * @param queryName  The named query that reads the entity by its primary key.
+    * @param filter     The filter of the key.
+    * @param key        The primary key of the entity.
+    * @return           The entity, or null if there is none with that key.
+    */
+   private <T> T lookup(Class<T> type, String queryName, KeyFilters.Key filter, String key) {
+      KeyFilters filters = filters();
+      if (filters != null && !filters.mightContain(filter, key)) {
+         return null;
+      }
+      CacheStatistics statistics = CacheStatistics.of(type);
+
+      if (this.entityManager.getEntityManagerFactory().getCache().contains(type, key)) {
+         statistics.recordHit();
+         return this.entityManager.find(type, key);
+      }
+
+      statistics.recordMiss();
+      List<T> results = this.entityManager.createNamedQuery(queryName, type)
+              .setParameter(1, key)
               .getResultList();
 
-      if (publishersList.size() == 0) {
+      if (results.isEmpty() && filters != null) {
+         filters.recordFalsePositive(filter);
+      }
+      return results.isEmpty() ? null : results.get(0);
+   } // End of lookup method
+
+   /**
+    * Returns the key filters of the factory, or null if they are not to be trusted: none were
+    * installed, or a transaction is open, whose persisted entities are not yet in the filters
+    * until they are flushed.
+    */
+   private KeyFilters filters() {
+      if (this.entityManager.getTransaction().isActive()) {
          return null;
-      } else {
-         return publishersList.get(0);
       }
+      return KeyFilters.of(this.entityManager.getEntityManagerFactory());
+   } // End of filters method
+
+   /**
+    * Returns the Publisher object using the provided name.
+    * @param name    The name of the publisher you are searching for.
+    * @return        The Publisher instance corresponding to that name.
+    */
+   public Publishers getPublisher(String name) {
+      return lookup(Publishers.class, "ReturnPublisher", KeyFilters.Key.PUBLISHER_NAME, name);
    } // End of getPublisher method
 
    /**
@@ -768,16 +1133,57 @@ public class BookClub {
               .getResultList();
    } // End of getAllPublishers method
 
+   /**
+    * Returns the next page of publisher names, in order, without building any Publishers instances.
+    * @param afterName  The last name of the previous page; "" for the first page.
+    * @param pageSize   The maximum number of names to return.
+    * @return           the names that follow afterName
+    */
+   @SuppressWarnings("unchecked")
+   public List<String> getPublisherNames(String afterName, int pageSize) {
+      return this.entityManager.createNamedQuery("ReturnPublisherKeyPage")
+              .setParameter(1, afterName)
+              .setMaxResults(pageSize)
+              .getResultList();
+   } // End of getPublisherNames method
+
+   /**
+    * Returns the number of rows in the Publishers table.
+    * @return  the number of publishers
+    */
+   public long countPublishers() {
+      return ((Number) this.entityManager.createNamedQuery("CountPublishers")
+              .getSingleResult()).longValue();
+   } // End of countPublishers method
+
+   /**
+    * Returns true if there is at least one publisher. Only a single row is ever read, so this
+    * costs the same no matter how large the table is.
+    * @return  True if the Publishers table is not empty; false otherwise.
+    */
+   public boolean publishersExist() {
+      return !this.entityManager.createNamedQuery("AnyPublisher")
+              .getResultList()
+              .isEmpty();
+   } // End of publishersExist method
+
    /**
     * Returns true if the publisher's phone already exists in the Publishers table.
     * @param phone    The phone of the publisher you are searching for.
     * @return         True if the phone number already exists; false otherwise.
     */
    public boolean publisherPhoneExists(String phone) {
+      KeyFilters filters = filters();
+      if (filters != null && !filters.mightContain(KeyFilters.Key.PUBLISHER_PHONE, phone)) {
+         return false;
+      }
       List<Publishers> publishersList = this.entityManager.createNamedQuery("ReturnPublisherPhone", Publishers.class)
               .setParameter(1, phone)
               .getResultList();
 
+      if (publishersList.isEmpty() && filters != null) {
+         filters.recordFalsePositive(KeyFilters.Key.PUBLISHER_PHONE);
+      }
       return publishersList.size() != 0;
    } // End of publisherPhoneExists method
 
@@ -787,10 +1193,17 @@ public class BookClub {
     * @return         True if the email already exists; false otherwise.
     */
    public boolean publisherEmailExists(String email) {
+      KeyFilters filters = filters();
+      if (filters != null && !filters.mightContain(KeyFilters.Key.PUBLISHER_EMAIL, email)) {
+         return false;
+      }
       List<Publishers> publishersList = this.entityManager.createNamedQuery("ReturnPublisherEmail", Publishers.class)
               .setParameter(1, email)
               .getResultList();
 
+      if (publishersList.isEmpty() && filters != null) {
+         filters.recordFalsePositive(KeyFilters.Key.PUBLISHER_EMAIL);
+      }
       return publishersList.size() != 0;
    } // End of publisherEmailExists method
 
@@ -800,15 +1213,27 @@ public class BookClub {
     * @return        The Book instance corresponding to that isbn.
     */
    public Books getBook(String isbn) {
-      List<Books> booksList = this.entityManager.createNamedQuery("ReturnBook", Books.class)
-              .setParameter(1, isbn)
-              .getResultList();
+      long code = IsbnCodec.encode(isbn);
+      if (code == IsbnCodec.INVALID) {
+         // not an ISBN, e.g. a key of the seed data; it can only be stored as it is
+         return lookup(Books.class, "ReturnBook", KeyFilters.Key.ISBN, isbn);
+      }
 
-      if (booksList.size() == 0) {
+      IsbnIndex index = IsbnIndex.of(this.entityManager.getEntityManagerFactory());
+      String key = index == null ? null : index.keyOf(code);
+      if (key != null) {
+         return lookup(Books.class, "ReturnBook", KeyFilters.Key.ISBN, key);
+      }
+      if (index != null && index.isExhaustive()) {
+         // the index holds every book whose key is an ISBN, in whatever form it is stored
          return null;
-      } else {
-         return booksList.get(0);
       }
+
+      // without the index, try the form new books are stored in, then the form that was typed
+      String canonical = IsbnCodec.format(code);
+      Books book = lookup(Books.class, "ReturnBook", KeyFilters.Key.ISBN, canonical);
+      return book != null || canonical.equals(isbn) ? book
+              : lookup(Books.class, "ReturnBook", KeyFilters.Key.ISBN, isbn);
    } // End of getBook method
 
    /**
@@ -858,21 +1283,47 @@ public class BookClub {
               .getResultList();
    } // End of getAllBooks method
 
+   /**
+    * Returns the next page of book keys, in ISBN order, without building any Books instances.
+    * @param afterIsbn  The last ISBN of the previous page; "" for the first page.
+    * @param pageSize   The maximum number of books to return.
+    * @return           one {ISBN, title} pair per book that follows afterIsbn
+    */
+   @SuppressWarnings("unchecked")
+   public List<Object[]> getBookKeys(String afterIsbn, int pageSize) {
+      return this.entityManager.createNamedQuery("ReturnBookKeyPage")
+              .setParameter(1, afterIsbn)
+              .setMaxResults(pageSize)
+              .getResultList();
+   } // End of getBookKeys method
+
+   /**
+    * Returns the number of rows in the Books table.
+    * @return  the number of books
+    */
+   public long countBooks() {
+      return ((Number) this.entityManager.createNamedQuery("CountBooks")
+              .getSingleResult()).longValue();
+   } // End of countBooks method
+
+   /**
+    * Returns true if there is at least one book. Only a single row is ever read, so this
+    * costs the same no matter how large the table is.
+    * @return  True if the Books table is not empty; false otherwise.
+    */
+   public boolean booksExist() {
+      return !this.entityManager.createNamedQuery("AnyBook")
+              .getResultList()
+              .isEmpty();
+   } // End of booksExist method
+
    /**
     * Returns the AuthoringEntities object using the provided email.
     * @param email   The email of the author you are searching for.
     * @return        The IndividualAuthor instance corresponding to that email.
     */
    public AuthoringEntities getAuthor(String email) {
-      List<AuthoringEntities> authorList = this.entityManager.createNamedQuery("ReturnAuthor", AuthoringEntities.class)
-              .setParameter(1, email)
-              .getResultList();
-
-      if (authorList.size() == 0) {
-         return null;
-      } else {
-         return authorList.get(0);
-      }
+      return lookup(AuthoringEntities.class, "ReturnAuthor", KeyFilters.Key.AUTHOR_EMAIL, email);
    } // End of getAuthor method
 
    /**
@@ -883,4 +1334,111 @@ public class BookClub {
       return this.entityManager.createNamedQuery("ReturnAllAuthors", AuthoringEntities.class)
               .getResultList();
    } // End of getAllAuthors method
+
+   /**
+    * Returns all the authors within the AuthoringEntities table, with the members of the ad hoc
+    * teams and the teams of the individual authors read as the given plan says.  Each kind of
+    * author is read by a query of its own, since only its own relationships can be fetched.
+    * @param plan  How the team memberships are read.
+    * @return      the list of all authors
+    */
+   public List<AuthoringEntities> getAllAuthors(FetchPlan plan) {
+      // The teams are read first and their members always batched: a join would build the
+      // individual authors before their own query could fetch their teams, leaving one lazy
+      // read per author.
+      List<AdHocTeams> teams = FetchPlan.BATCH.apply(this.entityManager.createQuery(
+              "SELECT a FROM AdHocTeams a", AdHocTeams.class), "a.individualAuthorsList")
+              .getResultList();
+
+      List<AuthoringEntities> authors = new ArrayList<>(plan.apply(this.entityManager.createQuery(
+              "SELECT a FROM IndividualAuthors a", IndividualAuthors.class), "a.adHocTeamsList")
+              .getResultList());
+      authors.addAll(teams);
+      authors.addAll(this.entityManager.createQuery("SELECT a FROM WritingGroups a", WritingGroups.class)
+              .getResultList());
+
+      return authors;
+   } // End of getAllAuthors method
+
+   /**
+    * Returns every authoring entity of one type. The database filters on the
+    * Authoring_Entity_Type column, so the rows of the other types are never read.
+    * @param type  The type of authoring entity, e.g. WritingGroups.class.
+    * @return      the list of the authoring entities of that type
+    */
+   public <T extends AuthoringEntities> List<T> findByType(Class<T> type) {
+      return this.entityManager.createQuery("SELECT a FROM " + entityName(type) + " a", type)
+              .getResultList();
+   } // End of findByType method
+
+   /**
+    * Returns all the writing groups within the AuthoringEntities table.
+    * @return  the list of all writing groups
+    */
+   public List<WritingGroups> findWritingGroups() {
+      return findByType(WritingGroups.class);
+   } // End of findWritingGroups method
+
+   /**
+    * Returns the number of authoring entities of one type, counted in the type's index.
+    * @param type  The type of authoring entity, e.g. WritingGroups.class.
+    * @return      the number of authoring entities of that type
+    */
+   public long countByType(Class<? extends AuthoringEntities> type) {
+      return this.entityManager.createQuery("SELECT COUNT(a) FROM " + entityName(type) + " a", Long.class)
+              .getSingleResult();
+   } // End of countByType method
+
+   /**
+    * Returns true if there is at least one authoring entity of one type. Only a single row is
+    * ever read, so this costs the same no matter how many authors there are.
+    * @param type  The type of authoring entity, e.g. WritingGroups.class.
+    * @return      True if there is an authoring entity of that type; false otherwise.
+    */
+   public boolean existsByType(Class<? extends AuthoringEntities> type) {
+      return !this.entityManager.createQuery("SELECT a.email FROM " + entityName(type) + " a", String.class)
+              .setMaxResults(1)
+              .getResultList()
+              .isEmpty();
+   } // End of existsByType method
+
+   /** Returns the name that JPQL knows an entity class by. */
+   private String entityName(Class<?> type) {
+      return this.entityManager.getMetamodel().entity(type).getName();
+   } // End of entityName method
+
+   /**
+    * Returns the next page of authoring entity keys, in email order, without building any
+    * AuthoringEntities instances.
+    * @param afterEmail The last email of the previous page; "" for the first page.
+    * @param pageSize   The maximum number of authoring entities to return.
+    * @return           one {email, Authoring_Entity_Type} pair per authoring entity that follows afterEmail
+    */
+   @SuppressWarnings("unchecked")
+   public List<Object[]> getAuthorKeys(String afterEmail, int pageSize) {
+      return this.entityManager.createNamedQuery("ReturnAuthorKeyPage")
+              .setParameter(1, afterEmail)
+              .setMaxResults(pageSize)
+              .getResultList();
+   } // End of getAuthorKeys method
+
+   /**
+    * Returns the number of rows in the AuthoringEntities table.
+    * @return  the number of authoring entities
+    */
+   public long countAuthors() {
+      return ((Number) this.entityManager.createNamedQuery("CountAuthors")
+              .getSingleResult()).longValue();
+   } // End of countAuthors method
+
+   /**
+    * Returns true if there is at least one authoring entity. Only a single row is ever read, so
+    * this costs the same no matter how large the table is.
+    * @return  True if the AuthoringEntities table is not empty; false otherwise.
+    */
+   public boolean authorsExist() {
+      return !this.entityManager.createNamedQuery("AnyAuthor")
+              .getResultList()
+              .isEmpty();
+   } // End of authorsExist method
 } // End of BookClub class
@@ -0,0 +1,286 @@
+package csulb.cecs323.app;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Serves the BookClub commands (see {@link CommandProcessor}) to many clients at once over a
+ * local socket. Each client sends one command per line and reads its output up to the closing
+ * "OK" or "ERROR" line; "quit" ends the connection.
+ * <p>
+ * Every connection is handled by a thread of a fixed size worker pool, and every command gets an
+ * EntityManager of its own from the one shared EntityManagerFactory. Connections that arrive while
+ * all workers are busy wait in a bounded queue; once that queue is full, new clients are told the
+ * server is busy and are disconnected straight away instead of piling up.
+ * </p>
+ * <p>
+ * Given a {@link BatchSession}, the server queues the changes of every client in it, so that
+ * many clients' inserts, reassignments and deletes are written together.
+ * </p>
+ * <p>
+ * {@link #stop()} stops reading from the clients and waits, for up to
+ * {@value #STOP_TIMEOUT_SECONDS} seconds, for the commands already running to finish, so the
+ * factory and batch session can then be closed without pulling them out from under a command.
+ * </p>
+ */
+public class BookClubServer {
+    /** The port listened on when none is given. */
+    public static final int DEFAULT_PORT = 7323;
+
+    /** The number of worker threads (and pooled connections) when none is given. */
+    public static final int DEFAULT_WORKERS = 8;
+
+    /** The number of connections that may wait for a worker when none is given. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /** The reply sent to a client that is turned away because the server is at capacity. */
+    public static final String BUSY = "BUSY the server is at capacity; please try again later";
+
+    /** How long a connection may sit idle before it is closed, freeing its worker. */
+    private static final int IDLE_TIMEOUT_MILLIS = 60_000;
+
+    /** How long {@link #stop()} waits for the running commands to finish. */
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+
+    private static final Logger LOGGER = Logger.getLogger(BookClubServer.class.getName());
+
+    /** The factory that every command's EntityManager comes from. */
+    private final EntityManagerFactory factory;
+
+    /** The port to listen on. */
+    private final int port;
+
+    /** The session that every client's changes are queued in; null to write them straight away. */
+    private final BatchSession batch;
+
+    /** Handles the accepted connections. */
+    private final ThreadPoolExecutor workers;
+
+    /** The socket that clients connect to; null until the server starts. */
+    private volatile ServerSocket serverSocket;
+
+    /** The connections being served, whose reading stop() cuts off. */
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+    /** Set once stop() is called; a connection served after that is ended at once. */
+    private volatile boolean stopping;
+
+    /**
+     * @param factory       The factory shared by every command.
+     * @param port          The port to listen on.
+     * @param workerCount   The number of connections served at the same time.
+     * @param queueCapacity The number of connections that may wait for a worker.
+     */
+    public BookClubServer(EntityManagerFactory factory, int port, int workerCount, int queueCapacity) {
+        this(factory, port, workerCount, queueCapacity, null);
+    }
+
+    /**
+     * @param factory       The factory shared by every command.
+     * @param port          The port to listen on.
+     * @param workerCount   The number of connections served at the same time.
+     * @param queueCapacity The number of connections that may wait for a worker.
+     * @param batch         The session that the changes of every client are queued in; null to
+     *                      write each change when its command runs.
+     */
+    public BookClubServer(EntityManagerFactory factory, int port, int workerCount, int queueCapacity,
+                          BatchSession batch) {
+        this.factory = factory;
+        this.port = port;
+        this.batch = batch;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "bookclub-worker-" + threadNumber.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Returns the properties that size the JDBC connection pools to match the worker pool, so
+     * that no worker ever waits for a connection.
+     * @param workerCount   The number of worker threads.
+     * @return              The properties to create the EntityManagerFactory with.
+     */
+    public static Map<String, Object> connectionPoolProperties(int workerCount) {
+        Map<String, Object> properties = new HashMap<>();
+        String max = Integer.toString(workerCount);
+        String min = Integer.toString(Math.max(1, workerCount / 2));
+
+        for (String pool : new String[] {"default", "read"}) {
+            properties.put("eclipselink.connection-pool." + pool + ".initial", min);
+            properties.put("eclipselink.connection-pool." + pool + ".min", min);
+            properties.put("eclipselink.connection-pool." + pool + ".max", max);
+        }
+        return properties;
+    } // End of connectionPoolProperties method
+
+    /**
+     * Accepts connections until {@link #stop()} is called.
+     * @throws IOException if the port cannot be listened on.
+     */
+    public void run() throws IOException {
+        serverSocket = new ServerSocket(port, workers.getQueue().remainingCapacity(),
+                InetAddress.getLoopbackAddress());
+        System.out.println("BookClub server listening on " + serverSocket.getLocalSocketAddress());
+
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket client;
+                try {
+                    client = serverSocket.accept();
+                } catch (SocketException e) {
+                    // the socket was closed by stop()
+                    break;
+                }
+
+                try {
+                    workers.execute(() -> serve(client));
+                } catch (RejectedExecutionException e) {
+                    reject(client);
+                }
+            }
+        } finally {
+            stop();
+        }
+    } // End of run method
+
+    /**
+     * Stops accepting connections, lets the busy workers finish their current command, and waits
+     * for them to. The clients get the output of that command; the idle ones and any still queued
+     * are disconnected without running another.
+     */
+    public void stop() {
+        stopping = true;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not close the server socket", e);
+        }
+        workers.shutdown();
+        // a worker waiting for the next command reads the end of the stream; one running a
+        // command can still write its output
+        clients.forEach(BookClubServer::stopReading);
+
+        try {
+            if (!workers.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warning("Commands were still running " + STOP_TIMEOUT_SECONDS +
+                        " s after the server was stopped; closing their connections");
+                clients.forEach(BookClubServer::close);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    } // End of stop method
+
+    /**
+     * Serves the commands of one client until it quits, goes idle, or disconnects.
+     * @param client    The connection to the client.
+     */
+    private void serve(Socket client) {
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                     StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                     StandardCharsets.UTF_8)))) {
+            socket.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+            clients.add(socket);
+            if (stopping) {
+                // queued before stop(), which did not see it
+                stopReading(socket);
+            }
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (line.trim().equalsIgnoreCase("quit")) {
+                    break;
+                }
+                execute(line, out);
+            }
+        } catch (SocketTimeoutException e) {
+            LOGGER.fine("Closing idle connection " + client.getRemoteSocketAddress());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Connection " + client.getRemoteSocketAddress() + " failed", e);
+        } finally {
+            clients.remove(client);
+        }
+    } // End of serve method
+
+    /**
+     * Runs one command with an EntityManager of its own, so nothing is cached between commands
+     * except what the shared cache holds.
+     */
+    private void execute(String line, PrintWriter out) {
+        EntityManager manager = factory.createEntityManager();
+        try {
+            new CommandProcessor(manager, batch).execute(line, out);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Command failed: " + line, e);
+            out.println(CommandProcessor.ERROR + " " + e);
+            out.flush();
+        } finally {
+            manager.close();
+        }
+    } // End of execute method
+
+    /** Ends the commands of a client after the current one, which may still write its output. */
+    private static void stopReading(Socket client) {
+        try {
+            client.shutdownInput();
+        } catch (IOException e) {
+            // the client has already gone
+        }
+    } // End of stopReading method
+
+    private static void close(Socket client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            // the client has already gone
+        }
+    } // End of close method
+
+    /** Tells a client that the server is at capacity, and disconnects it. */
+    private static void reject(Socket client) {
+        try (Socket socket = client;
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+                     StandardCharsets.UTF_8))) {
+            out.println(BUSY);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not turn away " + client.getRemoteSocketAddress(), e);
+        }
+    } // End of reject method
+} // End of BookClubServer class
@@ -0,0 +1,115 @@
+package csulb.cecs323.app;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Picks out books by publisher, by authoring entity, by a range of years published, by ISBN, or by
+ * any of these together, as a condition on the columns of BOOKS for the set based operations of
+ * {@link BulkDeleter} and {@link BulkReassigner}. A filter is a piece of SQL with a '?' for each
+ * value, never the values themselves, so it is safe to build from what a user typed.
+ */
+public final class BookFilter {
+    /** The condition on BOOKS, with a '?' for each parameter. */
+    private final String condition;
+
+    /** The values of the parameters, in order. */
+    private final Object[] parameters;
+
+    /** What the filter matches, for messages. */
+    private final String description;
+
+    private BookFilter(String condition, String description, Object... parameters) {
+        this.condition = condition;
+        this.description = description;
+        this.parameters = parameters;
+    }
+
+    /** Matches the books of a publisher. */
+    public static BookFilter byPublisher(String name) {
+        return new BookFilter("PUBLISHER_NAME = ?", "of publisher " + name, name);
+    } // End of byPublisher method
+
+    /** Matches the books of an individual author, ad hoc team or writing group. */
+    public static BookFilter byAuthor(String email) {
+        return new BookFilter("AUTHORING_ENTITIES_EMAIL = ?", "of author " + email, email);
+    } // End of byAuthor method
+
+    /**
+     * Matches the books published from one year to another, both included.
+     * @throws IllegalArgumentException if the range is empty.
+     */
+    public static BookFilter byYears(int from, int to) {
+        if (from > to)
+            throw new IllegalArgumentException("The first year (" + from + ") is after the last (" + to + ")");
+        return new BookFilter("YEAR_PUBLISHED BETWEEN ? AND ?", "published from " + from + " to " + to, from, to);
+    } // End of byYears method
+
+    /**
+     * Matches the books with any of the given ISBNs, e.g. a chunk of the books that another filter
+     * matched.
+     * @throws IllegalArgumentException if there are no ISBNs.
+     */
+    public static BookFilter byIsbns(Collection<String> isbns) {
+        if (isbns.isEmpty())
+            throw new IllegalArgumentException("There are no ISBNs to match");
+        StringJoiner keys = new StringJoiner(", ", "ISBN IN (", ")");
+        for (int i = 0; i < isbns.size(); ++i) {
+            keys.add("?");
+        }
+        return new BookFilter(keys.toString(), "with one of " + isbns.size() + " ISBNs", isbns.toArray());
+    } // End of byIsbns method
+
+    /** Returns the ISBNs of books read as their ISBN followed by other columns. */
+    static List<String> isbnsOf(List<String[]> books) {
+        List<String> isbns = new ArrayList<>(books.size());
+        for (String[] book : books) {
+            isbns.add(book[0]);
+        }
+        return isbns;
+    } // End of isbnsOf method
+
+    /**
+     * Returns a filter that matches the books that both this filter and another one match.
+     * @param other     The other filter; null to match what this one does.
+     */
+    public BookFilter and(BookFilter other) {
+        if (other == null) {
+            return this;
+        }
+        Object[] both = Arrays.copyOf(parameters, parameters.length + other.parameters.length);
+        System.arraycopy(other.parameters, 0, both, parameters.length, other.parameters.length);
+        return new BookFilter(condition + " AND " + other.condition, description + ", " + other.description, both);
+    } // End of and method
+
+    /** Returns the condition, with a '?' for each parameter, to follow a WHERE or an AND. */
+    String getCondition() {
+        return condition;
+    } // End of getCondition method
+
+    /**
+     * Binds the parameters of the filter to a statement.
+     * @param statement     The statement that the condition is part of.
+     * @param index         The index of the condition's first '?' in the statement.
+     * @return              The index of the next '?' after the condition's.
+     */
+    int bind(PreparedStatement statement, int index) throws SQLException {
+        for (Object parameter : parameters) {
+            statement.setObject(index++, parameter);
+        }
+        return index;
+    } // End of bind method
+
+    @Override
+    public String toString() {
+        return description;
+    }
+} // End of BookFilter class
@@ -0,0 +1,318 @@
+package csulb.cecs323.app;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks new books against the constraints of the BOOKS table before they are inserted: the ISBN
+ * primary key, in any form of the ISBN that the {@link IsbnIndex} knows, the existence of the
+ * author and the publisher, and the books_uk_01 (title, publisher) and books_uk_02 (title,
+ * author) unique constraints.
+ * <p>
+ * A whole batch of candidates is checked with a single query. The candidates are sent as a table
+ * of parameters and outer joined to each key they are checked against, so every candidate comes
+ * back as one row telling which of the keys were found. Conflicts between the candidates of the
+ * same batch are found in memory. A candidate whose ISBN the {@link KeyFilters} have never seen
+ * is not looked for in BOOKS; the query still runs for its author, publisher and titles.
+ * </p>
+ * <p>
+ * Derby compiles a new plan for every distinct statement, and a plan for hundreds of rows takes
+ * seconds to compile, so the table of parameters is padded with empty rows up to the next power
+ * of two. That leaves only a handful of statements, each compiled once and then reused.
+ * </p>
+ */
+public class BookValidator {
+    /** The most candidates checked by a single query; larger batches take one query per slice. */
+    public static final int MAX_ROWS_PER_QUERY = 512;
+
+    /** The longest values that fit in the checked columns. */
+    private static final int ISBN_LENGTH = 17, TITLE_LENGTH = 80, AUTHOR_EMAIL_LENGTH = 30, PUBLISHER_NAME_LENGTH = 80;
+
+    /** The parameters of one candidate, typed so that Derby can compare them with the columns. */
+    private static final String CANDIDATE_ROW = "(CAST(? AS INTEGER), CAST(? AS VARCHAR(" + ISBN_LENGTH + ")), " +
+            "CAST(? AS VARCHAR(" + TITLE_LENGTH + ")), CAST(? AS VARCHAR(" + AUTHOR_EMAIL_LENGTH + ")), " +
+            "CAST(? AS VARCHAR(" + PUBLISHER_NAME_LENGTH + ")))";
+
+    /** The Derby optimizer override that makes a join look up each candidate in an index. */
+    private static final String INDEX_PROBE = "--DERBY-PROPERTIES joinStrategy=NESTEDLOOP";
+
+    /**
+     * The field of a candidate that a violation is about; the field that has to change for the
+     * book to be accepted.
+     */
+    public enum Field {
+        ISBN, TITLE, AUTHOR, PUBLISHER
+    } // End of Field enum
+
+    /**
+     * A book that has not been inserted yet, identified by the keys it would be stored with.
+     */
+    public static class Candidate {
+        private final String isbn;
+        private final String title;
+        private final String authorEmail;
+        private final String publisherName;
+
+        public Candidate(String isbn, String title, String authorEmail, String publisherName) {
+            this.isbn = isbn;
+            this.title = title;
+            this.authorEmail = authorEmail;
+            this.publisherName = publisherName;
+        }
+
+        public String getIsbn() {
+            return isbn;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getAuthorEmail() {
+            return authorEmail;
+        }
+
+        public String getPublisherName() {
+            return publisherName;
+        }
+    } // End of Candidate class
+
+    /**
+     * A constraint that a candidate would break.
+     */
+    public static class Violation {
+        /** The position of the candidate in the batch that was checked. */
+        private final int index;
+        private final Field field;
+        private final String message;
+
+        public Violation(int index, Field field, String message) {
+            this.index = index;
+            this.field = field;
+            this.message = message;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Book " + index + " (" + field + "): " + message;
+        }
+    } // End of Violation class
+
+    /** The EntityManager that the checks are run with. */
+    private final EntityManager entityManager;
+
+    /**
+     * @param manager   The EntityManager that the checks are run with; in a transaction, the
+     *                  checks also see what it has flushed.
+     */
+    public BookValidator(EntityManager manager) {
+        this.entityManager = manager;
+    }
+
+    /**
+     * Checks a single candidate.
+     * @param candidate The book to check.
+     * @return          The constraints it would break; empty if it can be inserted.
+     */
+    public List<Violation> validate(Candidate candidate) {
+        return validate(List.of(candidate));
+    } // End of validate method
+
+    /**
+     * Checks a batch of candidates with one query per {@link #MAX_ROWS_PER_QUERY} of them.
+     * @param candidates    The books to check, as they would be inserted together.
+     * @return              The constraints they would break, in the order of the candidates;
+     *                      empty if they can all be inserted.
+     */
+    public List<Violation> validate(List<Candidate> candidates) {
+        List<Violation> violations = new ArrayList<>();
+        List<Integer> queried = new ArrayList<>(candidates.size());
+
+        // conflicts among the candidates themselves, which the database cannot see yet
+        Set<String> isbns = new HashSet<>();
+        Set<String> titlesByPublisher = new HashSet<>();
+        Set<String> titlesByAuthor = new HashSet<>();
+        IsbnIndex isbnIndex = IsbnIndex.of(entityManager.getEntityManagerFactory());
+
+        for (int i = 0; i < candidates.size(); ++i) {
+            Candidate candidate = candidates.get(i);
+            boolean fits = true;
+
+            if (candidate.isbn.length() > ISBN_LENGTH) {
+                violations.add(new Violation(i, Field.ISBN,
+                        "The ISBN exceeds the maximum character length (" + ISBN_LENGTH + ")"));
+                fits = false;
+            } else if (!isbns.add(candidate.isbn)) {
+                violations.add(new Violation(i, Field.ISBN, "That ISBN appears more than once in the batch"));
+            } else if (isbnIndex != null) {
+                // the database is only asked about the same form of the ISBN
+                String stored = isbnIndex.keyOf(IsbnCodec.encode(candidate.isbn));
+                if (stored != null && !stored.equals(candidate.isbn)) {
+                    violations.add(new Violation(i, Field.ISBN, "That book already exists in the table as " + stored));
+                }
+            }
+
+            if (candidate.title.length() > TITLE_LENGTH) {
+                violations.add(new Violation(i, Field.TITLE,
+                        "The title exceeds the maximum character length (" + TITLE_LENGTH + ")"));
+                fits = false;
+            }
+
+            // a value too long for its column cannot be the key of an existing row
+            if (candidate.authorEmail.length() > AUTHOR_EMAIL_LENGTH) {
+                violations.add(new Violation(i, Field.AUTHOR, "The author doesn't exist in the table"));
+                fits = false;
+            } else if (!titlesByAuthor.add(candidate.title + '\n' + candidate.authorEmail)) {
+                violations.add(new Violation(i, Field.AUTHOR,
+                        "The author has another book with this title in the batch"));
+            }
+
+            if (candidate.publisherName.length() > PUBLISHER_NAME_LENGTH) {
+                violations.add(new Violation(i, Field.PUBLISHER, "The publisher doesn't exist in the table"));
+                fits = false;
+            } else if (!titlesByPublisher.add(candidate.title + '\n' + candidate.publisherName)) {
+                violations.add(new Violation(i, Field.PUBLISHER,
+                        "The publisher has another book with this title in the batch"));
+            }
+
+            if (fits) {
+                queried.add(i);
+            }
+        }
+
+        for (int from = 0; from < queried.size(); from += MAX_ROWS_PER_QUERY) {
+            List<Integer> slice = queried.subList(from, Math.min(queried.size(), from + MAX_ROWS_PER_QUERY));
+            checkDatabase(candidates, slice, violations);
+        }
+
+        violations.sort(Comparator.comparingInt(Violation::getIndex).thenComparing(Violation::getField));
+        return violations;
+    } // End of validate method
+
+    /**
+     * Checks the given candidates against the rows already in the database with a single query.
+     * Every join is on a key, so each candidate matches at most one row of each table.
+     * <p>
+     * The query runs on the JDBC connection of the current transaction (one is started for it
+     * if there is none): binding thousands of positional parameters through a native JPA query
+     * costs more than running the query itself.
+     * </p>
+     * @param candidates    Every candidate of the batch.
+     * @param indexes       The positions of the candidates to check.
+     * @param violations    Where the violations found are added.
+     */
+    private void checkDatabase(List<Candidate> candidates, List<Integer> indexes, List<Violation> violations) {
+        int rows = Math.max(1, Integer.highestOneBit(indexes.size() * 2 - 1));
+        // The plan is compiled once and then reused however large the tables grow, so it is fixed
+        // to index probes; left to itself, Derby picks hash joins that read all of BOOKS when the
+        // plan is compiled while the table is still small.
+        StringBuilder sql = new StringBuilder(
+                "SELECT C.IDX, B.ISBN, A.EMAIL, P.NAME, BP.ISBN, BA.ISBN " +
+                "FROM --DERBY-PROPERTIES joinOrder=FIXED\n(VALUES ");
+        for (int i = 0; i < rows; ++i) {
+            sql.append(i == 0 ? "" : ", ").append(CANDIDATE_ROW);
+        }
+        sql.append(") AS C (IDX, ISBN, TITLE, AUTHOR_EMAIL, PUBLISHER_NAME) " +
+                "LEFT OUTER JOIN BOOKS B " + INDEX_PROBE + "\n" +
+                "ON B.ISBN = C.ISBN " +
+                "LEFT OUTER JOIN AUTHORING_ENTITIES A " + INDEX_PROBE + "\n" +
+                "ON A.EMAIL = C.AUTHOR_EMAIL " +
+                "LEFT OUTER JOIN PUBLISHERS P " + INDEX_PROBE + "\n" +
+                "ON P.NAME = C.PUBLISHER_NAME " +
+                "LEFT OUTER JOIN BOOKS BP " + INDEX_PROBE + ", constraint=BOOKS_UK_01\n" +
+                "ON BP.TITLE = C.TITLE AND BP.PUBLISHER_NAME = C.PUBLISHER_NAME " +
+                "LEFT OUTER JOIN BOOKS BA " + INDEX_PROBE + ", constraint=BOOKS_UK_02\n" +
+                "ON BA.TITLE = C.TITLE AND BA.AUTHORING_ENTITIES_EMAIL = C.AUTHOR_EMAIL");
+
+        EntityTransaction tx = entityManager.getTransaction();
+        boolean ownTransaction = !tx.isActive();
+        // the books persisted in an open transaction are not in the filters until it is flushed
+        KeyFilters filters = ownTransaction ? KeyFilters.of(entityManager.getEntityManagerFactory()) : null;
+        Set<Integer> probed = new HashSet<>();
+        if (ownTransaction) {
+            tx.begin();
+        }
+
+        try (PreparedStatement query = entityManager.unwrap(Connection.class).prepareStatement(sql.toString())) {
+            int parameter = 0;
+            for (int index : indexes) {
+                Candidate candidate = candidates.get(index);
+                query.setInt(++parameter, index);
+                if (filters == null || filters.mightContain(KeyFilters.Key.ISBN, candidate.isbn)) {
+                    query.setString(++parameter, candidate.isbn);
+                    probed.add(index);
+                } else {
+                    // a null ISBN joins no book
+                    query.setNull(++parameter, Types.VARCHAR);
+                }
+                query.setString(++parameter, candidate.title);
+                query.setString(++parameter, candidate.authorEmail);
+                query.setString(++parameter, candidate.publisherName);
+            }
+            // the padding rows are all nulls, which join nothing
+            for (int padding = indexes.size(); padding < rows; ++padding) {
+                query.setNull(++parameter, Types.INTEGER);
+                for (int column = 0; column < 4; ++column) {
+                    query.setNull(++parameter, Types.VARCHAR);
+                }
+            }
+
+            try (ResultSet row = query.executeQuery()) {
+                while (row.next()) {
+                    int index = row.getInt(1);
+                    if (row.wasNull()) {
+                        continue;
+                    }
+
+                    if (row.getString(2) != null)
+                        violations.add(new Violation(index, Field.ISBN, "That book already exists in the table"));
+                    else if (filters != null && probed.contains(index))
+                        filters.recordFalsePositive(KeyFilters.Key.ISBN);
+                    if (row.getString(3) == null)
+                        violations.add(new Violation(index, Field.AUTHOR, "The author doesn't exist in the table"));
+                    else if (row.getString(6) != null)
+                        violations.add(new Violation(index, Field.AUTHOR,
+                                "The author has already written a book with this title"));
+                    if (row.getString(4) == null)
+                        violations.add(new Violation(index, Field.PUBLISHER, "The publisher doesn't exist in the table"));
+                    else if (row.getString(5) != null)
+                        violations.add(new Violation(index, Field.PUBLISHER,
+                                "The publisher has already published a book with this title"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not check the new books", e);
+        } finally {
+            if (ownTransaction) {
+                // nothing was written; a rollback would also detach every managed entity
+                tx.commit();
+            }
+        }
+    } // End of checkDatabase method
+} // End of BookValidator class
@@ -0,0 +1,390 @@
+package csulb.cecs323.app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.helper.DatabaseField;
+import org.eclipse.persistence.internal.helper.DatabaseTable;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ManyToManyMapping;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.tools.schemaframework.IndexDefinition;
+import org.eclipse.persistence.tools.schemaframework.SchemaManager;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Creates the EntityManagerFactory of the BookClub and prepares the database it points to. The
+ * system property {@code bookclub.startup} picks one of two modes:
+ * <ul>
+ *     <li>development (the default): the tables are dropped and created again, as persistence.xml
+ *     says, so every run starts from the seed data.</li>
+ *     <li>production: the existing tables are kept and checked against the entity metadata. Only
+ *     when a table, column or index is missing is any DDL run, and then only to add what is
+ *     missing; nothing is ever dropped.</li>
+ * </ul>
+ * In both modes the seed script is loaded only when the tables hold no data, and the time taken
+ * by each phase of the startup is logged.
+ * <p>
+ * The system property {@code bookclub.database} picks how the database is reached: embedded (the
+ * default), as persistence.xml says, or through a Derby Network Server that several processes can
+ * share (see {@link DerbyNetworkServer}). A shared database starts in production mode unless told
+ * otherwise, so that a new client never drops the tables under the others.
+ * </p>
+ */
+public final class Bootstrap {
+    /** The system property that picks the startup mode. */
+    public static final String STARTUP_PROPERTY = "bookclub.startup";
+
+    /** The system property that picks how the database is reached. */
+    public static final String DATABASE_PROPERTY = "bookclub.database";
+
+    /** The SQL loaded into an empty database: one statement per line, no semicolons. */
+    private static final String SEED_SCRIPT = "sql/seed-data.sql";
+
+    private static final Logger LOGGER = Logger.getLogger(Bootstrap.class.getName());
+
+    /**
+     * How the database is prepared at startup.
+     */
+    public enum Mode {
+        DEVELOPMENT,
+        PRODUCTION;
+
+        /** Returns the mode named by the {@code bookclub.startup} system property. */
+        public static Mode current() {
+            Mode fallback = Database.current() == Database.NETWORK ? PRODUCTION : DEVELOPMENT;
+            String name = System.getProperty(STARTUP_PROPERTY, fallback.name());
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown " + STARTUP_PROPERTY + " mode: " + name +
+                        " (expected development or production)");
+            }
+        } // End of current method
+
+        /** Returns the persistence unit properties that this mode overrides. */
+        private Map<String, Object> properties() {
+            Map<String, Object> properties = new HashMap<>();
+
+            if (this == PRODUCTION) {
+                // the schema is extended by start() only when it has to be
+                properties.put(PersistenceUnitProperties.SCHEMA_GENERATION_DATABASE_ACTION,
+                        PersistenceUnitProperties.SCHEMA_GENERATION_NONE_ACTION);
+            }
+            return properties;
+        } // End of properties method
+    } // End of Mode enum
+
+    /**
+     * How the database is reached.
+     */
+    public enum Database {
+        /** The Derby engine runs in this process, which alone may open the database. */
+        EMBEDDED,
+        /** Through a Derby Network Server, which this process starts if none is running. */
+        NETWORK;
+
+        /** Returns the way named by the {@code bookclub.database} system property. */
+        public static Database current() {
+            String name = System.getProperty(DATABASE_PROPERTY, EMBEDDED.name());
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown " + DATABASE_PROPERTY + ": " + name +
+                        " (expected embedded or network)");
+            }
+        } // End of current method
+
+        /** Returns the persistence unit properties that reach the database this way. */
+        private Map<String, Object> properties() {
+            return this == NETWORK ? DerbyNetworkServer.clientProperties() : new HashMap<>();
+        } // End of properties method
+    } // End of Database enum
+
+    private Bootstrap() {
+    } // End of private constructor
+
+    /**
+     * Starts the BookClub persistence unit in the current mode.
+     * @return  A factory whose database is ready to use.
+     */
+    public static EntityManagerFactory start() {
+        return start(new HashMap<>());
+    } // End of start method
+
+    /**
+     * Starts the BookClub persistence unit in the current mode.
+     * @param overrides Persistence unit properties of the caller, e.g. the JDBC batch size.
+     * @return          A factory whose database is ready to use.
+     * @throws IllegalStateException if, in production mode, the tables cannot be made to match the
+     *                               entities.
+     */
+    public static EntityManagerFactory start(Map<String, Object> overrides) {
+        return start(Mode.current(), overrides);
+    } // End of start method
+
+    /**
+     * Starts the BookClub persistence unit in the given mode, whatever the system property says;
+     * e.g. a command that only reads the catalog starts in production mode so as never to drop it.
+     * @param mode      How the database is prepared.
+     * @param overrides Persistence unit properties of the caller, e.g. the JDBC batch size.
+     * @return          A factory whose database is ready to use.
+     * @throws IllegalStateException if, in production mode, the tables cannot be made to match the
+     *                               entities.
+     */
+    public static EntityManagerFactory start(Mode mode, Map<String, Object> overrides) {
+        Database database = Database.current();
+        Map<String, Object> properties = mode.properties();
+        properties.putAll(database.properties());
+        properties.putAll(overrides);
+
+        Map<String, Long> phases = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        long phaseStart = start;
+
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("BookClub", properties);
+        phaseStart = endPhase(phases, "metadata", phaseStart);
+
+        // the first EntityManager logs in (and, in development mode, has run the schema generation)
+        EntityManager manager = factory.createEntityManager();
+        phaseStart = endPhase(phases, "connect", phaseStart);
+
+        try {
+            if (mode == Mode.PRODUCTION) {
+                List<String> missing = findMissingSchema(manager);
+                phaseStart = endPhase(phases, "schema validation", phaseStart);
+
+                if (!missing.isEmpty()) {
+                    LOGGER.info("Adding to the schema: " + String.join(", ", missing));
+                    SchemaManager schemaManager = new SchemaManager(JpaHelper.getServerSession(factory));
+                    schemaManager.extendDefaultTables(true);
+                    // extending a table that already exists does not add its new indexes
+                    for (IndexDefinition index : findMissingIndexes(manager)) {
+                        schemaManager.createObject(index);
+                    }
+
+                    missing = findMissingSchema(manager);
+                    if (!missing.isEmpty()) {
+                        throw new IllegalStateException("The database schema does not match the entities; missing " +
+                                String.join(", ", missing));
+                    }
+                    phaseStart = endPhase(phases, "schema extension", phaseStart);
+                }
+            }
+
+            seedIfEmpty(manager);
+            endPhase(phases, "seed", phaseStart);
+        } catch (RuntimeException e) {
+            manager.close();
+            factory.close();
+            throw e;
+        }
+        manager.close();
+
+        StringBuilder breakdown = new StringBuilder("Started in " + mode.name().toLowerCase(Locale.ROOT) +
+                " mode (" + database.name().toLowerCase(Locale.ROOT) + " database) in " +
+                (System.nanoTime() - start) / 1_000_000 + " ms (");
+        phases.forEach((phase, millis) -> breakdown.append(phase).append(' ').append(millis).append(" ms, "));
+        breakdown.setLength(breakdown.length() - 2);
+        LOGGER.info(breakdown.append(')').toString());
+
+        return factory;
+    } // End of start method
+
+    /** Records the time since the start of a phase, and returns the start of the next one. */
+    private static long endPhase(Map<String, Long> phases, String phase, long phaseStart) {
+        long now = System.nanoTime();
+        phases.put(phase, (now - phaseStart) / 1_000_000);
+        return now;
+    } // End of endPhase method
+
+    /**
+     * Finds the tables, columns and indexes that the entities are mapped to but the database
+     * lacks. Extra ones are allowed; they may belong to a newer version of the program.
+     * @return  The missing tables, columns and indexes; empty if the schema matches the entities.
+     */
+    private static List<String> findMissingSchema(EntityManager manager) {
+        // the expected columns of each table, by upper case name as Derby stores them
+        Map<String, Set<String>> expected = new TreeMap<>();
+        for (ClassDescriptor descriptor : manager.unwrap(Session.class).getDescriptors().values()) {
+            if (descriptor.isAggregateDescriptor()) {
+                continue;
+            }
+            for (DatabaseTable table : descriptor.getTables()) {
+                expected.computeIfAbsent(upper(table.getName()), name -> new HashSet<>());
+            }
+            for (DatabaseField field : descriptor.getFields()) {
+                expected.computeIfAbsent(upper(field.getTableName()), name -> new HashSet<>()).add(upper(field.getName()));
+            }
+            for (DatabaseMapping mapping : descriptor.getMappings()) {
+                if (mapping instanceof ManyToManyMapping) {
+                    ManyToManyMapping manyToMany = (ManyToManyMapping) mapping;
+                    Set<String> columns = expected.computeIfAbsent(upper(manyToMany.getRelationTable().getName()),
+                            name -> new HashSet<>());
+                    manyToMany.getSourceRelationKeyFields().forEach(field -> columns.add(upper(field.getName())));
+                    manyToMany.getTargetRelationKeyFields().forEach(field -> columns.add(upper(field.getName())));
+                }
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        EntityTransaction tx = manager.getTransaction();
+        tx.begin();
+        try {
+            Connection connection = manager.unwrap(Connection.class);
+            DatabaseMetaData metaData = connection.getMetaData();
+
+            for (Map.Entry<String, Set<String>> table : expected.entrySet()) {
+                Set<String> actual = new HashSet<>();
+                try (ResultSet columns = metaData.getColumns(null, connection.getSchema(), table.getKey(), null)) {
+                    while (columns.next()) {
+                        actual.add(upper(columns.getString("COLUMN_NAME")));
+                    }
+                }
+
+                if (actual.isEmpty()) {
+                    missing.add("table " + table.getKey());
+                    continue;
+                }
+                for (String column : table.getValue()) {
+                    if (!actual.contains(column)) {
+                        missing.add("column " + table.getKey() + "." + column);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not read the database schema", e);
+        } finally {
+            tx.commit();
+        }
+
+        for (IndexDefinition index : findMissingIndexes(manager)) {
+            missing.add("index " + upper(index.getTargetTable()) + "." + upper(index.getName()));
+        }
+        return missing;
+    } // End of findMissingSchema method
+
+    /**
+     * Finds the indexes declared by the @Table annotations of the entities that the database
+     * lacks, including those of missing tables.
+     * @return  The definitions of the missing indexes.
+     */
+    private static List<IndexDefinition> findMissingIndexes(EntityManager manager) {
+        List<IndexDefinition> missing = new ArrayList<>();
+        EntityTransaction tx = manager.getTransaction();
+        tx.begin();
+        try {
+            Connection connection = manager.unwrap(Connection.class);
+            DatabaseMetaData metaData = connection.getMetaData();
+
+            for (ClassDescriptor descriptor : manager.unwrap(Session.class).getDescriptors().values()) {
+                // a subclass shares the tables, and so the indexes, of its parent
+                if (descriptor.isAggregateDescriptor() || descriptor.isChildDescriptor()) {
+                    continue;
+                }
+                for (DatabaseTable table : descriptor.getTables()) {
+                    if (!table.hasIndexes()) {
+                        continue;
+                    }
+
+                    Set<String> actual = new HashSet<>();
+                    try (ResultSet indexes = metaData.getIndexInfo(null, connection.getSchema(), upper(table.getName()),
+                            false, true)) {
+                        while (indexes.next()) {
+                            if (indexes.getString("INDEX_NAME") != null) {
+                                actual.add(upper(indexes.getString("INDEX_NAME")));
+                            }
+                        }
+                    }
+
+                    for (IndexDefinition index : table.getIndexes()) {
+                        if (!actual.contains(upper(index.getName()))) {
+                            missing.add(index);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not read the database indexes", e);
+        } finally {
+            tx.commit();
+        }
+
+        return missing;
+    } // End of findMissingIndexes method
+
+    /**
+     * Loads the seed script if there are no publishers, authors or books yet, so a restart never
+     * replays it over existing data.
+     */
+    private static void seedIfEmpty(EntityManager manager) {
+        BookClub bookClub = new BookClub(manager);
+        if (bookClub.publishersExist() || bookClub.authorsExist() || bookClub.booksExist()) {
+            LOGGER.fine("The database already has data; skipping " + SEED_SCRIPT);
+            return;
+        }
+
+        EntityTransaction tx = manager.getTransaction();
+        tx.begin();
+        try (InputStream script = Bootstrap.class.getClassLoader().getResourceAsStream(SEED_SCRIPT)) {
+            if (script == null) {
+                LOGGER.warning("Could not find " + SEED_SCRIPT + "; the database was left empty");
+                tx.rollback();
+                return;
+            }
+
+            int statements = 0;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(script, StandardCharsets.UTF_8));
+                 Statement statement = manager.unwrap(Connection.class).createStatement()) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        statement.addBatch(line);
+                        ++statements;
+                    }
+                }
+                statement.executeBatch();
+            }
+            tx.commit();
+            LOGGER.fine("Loaded " + statements + " statements from " + SEED_SCRIPT);
+        } catch (IOException | SQLException e) {
+            throw new PersistenceException("Could not load " + SEED_SCRIPT, e);
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        }
+    } // End of seedIfEmpty method
+
+    /** Returns a database identifier in upper case, as Derby stores unquoted identifiers. */
+    private static String upper(String identifier) {
+        return identifier.toUpperCase(Locale.ROOT);
+    } // End of upper method
+} // End of Bootstrap class
@@ -0,0 +1,226 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Deletes every book that a {@link BookFilter} matches, e.g. every book of a publisher, of an
+ * authoring entity, or published in a range of years, with set based DELETE statements rather
+ * than one entity at a time. The ISBNs of the matching books are read first, in a single query;
+ * then they are deleted a chunk at a time, each chunk in one statement and a transaction of its
+ * own, so that no transaction holds its locks for long however many books match. Each chunk's
+ * transaction first reads and locks the books of the chunk that still match the filter, and
+ * deletes exactly those, so a book that stopped matching after it was read is left alone, and
+ * only the books really deleted are forgotten below.
+ * <p>
+ * The rows are deleted around the entities, so after each chunk the deleted books, and the
+ * publishers and authors whose lists of books held them, are dropped from the shared cache, and
+ * the books are taken out of the search index, the catalog statistics and the ISBN index. The
+ * EntityManager is cleared at the end, as its copies of them are out of date too. A failed chunk
+ * is rolled back; the chunks before it stay deleted.
+ * </p>
+ */
+public class BulkDeleter {
+    /** The number of books deleted per statement when none is given. */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final Logger LOGGER = Logger.getLogger(BulkDeleter.class.getName());
+
+    /**
+     * What one bulk delete removed, and how long it took.
+     */
+    public static class Result {
+        private final long deleted;
+        private final int chunks;
+        private final long nanos;
+
+        private Result(long deleted, int chunks, long nanos) {
+            this.deleted = deleted;
+            this.chunks = chunks;
+            this.nanos = nanos;
+        }
+
+        /** Returns the number of rows deleted. */
+        public long getDeleted() {
+            return deleted;
+        }
+
+        /** Returns the number of DELETE statements run. */
+        public int getChunks() {
+            return chunks;
+        }
+
+        /** Returns the time taken, in seconds. */
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Deleted %d books in %d chunks in %.2f s", deleted, chunks, getSeconds());
+        }
+    } // End of Result class
+
+    /** The EntityManager whose connection the books are deleted through. */
+    private final EntityManager entityManager;
+
+    /** The most books deleted by one statement. */
+    private final int chunkSize;
+
+    /**
+     * @param manager   The EntityManager whose connection the books are deleted through.
+     */
+    public BulkDeleter(EntityManager manager) {
+        this(manager, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param manager       The EntityManager whose connection the books are deleted through.
+     * @param chunkSize     The most books deleted by one statement; at least 1.
+     */
+    public BulkDeleter(EntityManager manager, int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("A chunk must hold at least one book");
+        this.entityManager = manager;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Deletes every book that matches a filter.
+     * @param filter    Which books to delete.
+     * @return          The number of books deleted, and how long it took.
+     * @throws PersistenceException if a chunk cannot be deleted; the chunks before it stay deleted.
+     */
+    public Result delete(BookFilter filter) {
+        long start = System.nanoTime();
+        List<String> isbns = readMatches(filter);
+
+        long deleted = 0;
+        int chunks = 0;
+        try {
+            for (int from = 0; from < isbns.size(); from += chunkSize) {
+                List<String[]> books = deleteChunk(filter, isbns.subList(from, Math.min(from + chunkSize, isbns.size())));
+                deleted += books.size();
+                ++chunks;
+                forget(books);
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not delete the books " + filter + " after " + deleted +
+                    " were deleted", e);
+        } finally {
+            entityManager.clear();
+        }
+
+        Result result = new Result(deleted, chunks, System.nanoTime() - start);
+        LOGGER.info(result + " (" + filter + ")");
+        return result;
+    } // End of delete method
+
+    /** Reads the ISBN of every matching book. */
+    private List<String> readMatches(BookFilter filter) {
+        List<String> isbns = new ArrayList<>();
+        // the connection is only handed out within a transaction; nothing is written through it
+        EntityTransaction tx = entityManager.getTransaction();
+        tx.begin();
+        try (PreparedStatement statement = entityManager.unwrap(Connection.class).prepareStatement(
+                "SELECT ISBN FROM BOOKS WHERE " + filter.getCondition())) {
+            filter.bind(statement, 1);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    isbns.add(rows.getString(1));
+                }
+            }
+            return isbns;
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not read the books " + filter, e);
+        } finally {
+            tx.rollback();
+        }
+    } // End of readMatches method
+
+    /**
+     * Deletes the books of one chunk that still match the filter, in a transaction of its own.
+     * They are read and locked first, so that the rows deleted are exactly the rows read.
+     * @return  The ISBN, publisher name and author email of each book deleted.
+     */
+    private List<String[]> deleteChunk(BookFilter filter, List<String> chunk) throws SQLException {
+        List<String[]> books = new ArrayList<>();
+        EntityTransaction tx = entityManager.getTransaction();
+        tx.begin();
+        try {
+            Connection connection = entityManager.unwrap(Connection.class);
+            // the locks of WITH RS are held until the commit, so no book read can change before it
+            BookFilter matching = BookFilter.byIsbns(chunk).and(filter);
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT ISBN, PUBLISHER_NAME, AUTHORING_ENTITIES_EMAIL FROM BOOKS WHERE " +
+                            matching.getCondition() + " FOR UPDATE WITH RS")) {
+                matching.bind(select, 1);
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        books.add(new String[] {rows.getString(1), rows.getString(2), rows.getString(3)});
+                    }
+                }
+            }
+
+            if (!books.isEmpty()) {
+                BookFilter read = BookFilter.byIsbns(BookFilter.isbnsOf(books));
+                try (PreparedStatement delete = connection.prepareStatement(
+                        "DELETE FROM BOOKS WHERE " + read.getCondition())) {
+                    read.bind(delete, 1);
+                    delete.executeUpdate();
+                }
+            }
+            tx.commit();
+            return books;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        }
+    } // End of deleteChunk method
+
+    /**
+     * Drops the deleted books of a chunk from the shared cache, the search index, the catalog
+     * statistics and the ISBN index, along with their publishers and authors, whose cached lists
+     * of books still hold them, and counts their ISBNs as stale in the key filters.
+     */
+    private void forget(List<String[]> chunk) {
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        SearchIndex index = SearchIndex.of(entityManager.getEntityManagerFactory());
+        CatalogStatistics statistics = CatalogStatistics.of(entityManager.getEntityManagerFactory());
+        IsbnIndex isbns = IsbnIndex.of(entityManager.getEntityManagerFactory());
+        KeyFilters filters = KeyFilters.of(entityManager.getEntityManagerFactory());
+
+        for (String[] book : chunk) {
+            cache.evict(Books.class, book[0]);
+            cache.evict(Publishers.class, book[1]);
+            cache.evict(AuthoringEntities.class, book[2]);
+            if (index != null) {
+                index.remove(SearchIndex.Kind.BOOK, book[0]);
+            }
+            if (statistics != null) {
+                statistics.removeBook(book[0]);
+            }
+            if (isbns != null) {
+                isbns.removeBook(book[0]);
+            }
+            if (filters != null) {
+                filters.remove(KeyFilters.Key.ISBN);
+            }
+        }
+    } // End of forget method
+} // End of BulkDeleter class
@@ -0,0 +1,452 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.StringJoiner;
+import java.util.logging.Logger;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Loads a catalog feed into the database in chunks. Every chunk is written with JDBC batch
+ * statements, committed, and then cleared from the persistence context so that the memory used
+ * stays the same no matter how large the feed is.
+ * <p>
+ * The feed is a CSV file with one record per line; the first field names the kind of record:
+ * </p>
+ * <pre>
+ *   publisher,name,phone,email
+ *   individual_author,name,email
+ *   writing_group,name,email,head writer,year formed
+ *   ad_hoc_team,name,email
+ *   book,isbn,title,year published,author email,publisher name
+ *   team_member,individual author email,ad hoc team email
+ * </pre>
+ * <p>
+ * The books of every chunk are checked with a {@link BookValidator} before they are written, and a
+ * chunk with a book that would break a constraint of the BOOKS table is rolled back as a whole.
+ * Blank lines and lines starting with '#' are skipped. The records may appear in any order in a
+ * file; {@link #importFile(Path)} reads the file once per {@link Phase} so that the parents are
+ * always written before the children.
+ * </p>
+ */
+public class BulkImporter {
+    /** The number of rows written per chunk when none is given. */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** Adds one individual author to an ad hoc team. */
+    private static final String INSERT_TEAM_MEMBER =
+            "INSERT INTO AD_HOC_TEAMS_MEMBER (INDIVIDUAL_AUTHORS_EMAIL, AD_HOC_TEAMS_EMAIL) VALUES (?, ?)";
+
+    /** The most violations listed in the message of a rejected chunk. */
+    private static final int MAX_REPORTED_VIOLATIONS = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(BulkImporter.class.getName());
+
+    /**
+     * The order in which the tables have to be written to satisfy their foreign keys.
+     */
+    public enum Phase {
+        PUBLISHERS("publisher"),
+        AUTHORING_ENTITIES("individual_author", "writing_group", "ad_hoc_team"),
+        BOOKS("book"),
+        TEAM_MEMBERS("team_member");
+
+        private final String[] recordTypes;
+
+        Phase(String... recordTypes) {
+            this.recordTypes = recordTypes;
+        }
+
+        /** Returns true if records of the given type are written during this phase. */
+        public boolean accepts(String recordType) {
+            for (String type : recordTypes) {
+                if (type.equals(recordType)) {
+                    return true;
+                }
+            }
+            return false;
+        } // End of accepts method
+
+        /** Returns the phase that writes records of the given type. */
+        public static Phase of(String recordType) {
+            for (Phase phase : values()) {
+                if (phase.accepts(recordType)) {
+                    return phase;
+                }
+            }
+            throw new IllegalArgumentException("Unknown record type: " + recordType);
+        } // End of of method
+    } // End of Phase enum
+
+    /**
+     * What one import wrote, phase by phase, and how long it took.
+     */
+    public static class Summary {
+        /** The rows written by each phase, and the nanoseconds it took, in phase order. */
+        private final Map<Phase, long[]> phases = new EnumMap<>(Phase.class);
+
+        private long nanos;
+
+        private Summary() {
+        }
+
+        /** Returns the number of rows written by a phase. */
+        public long getRows(Phase phase) {
+            long[] written = phases.get(phase);
+            return written == null ? 0 : written[0];
+        }
+
+        /** Returns the number of rows written by every phase. */
+        public long getRows() {
+            return phases.values().stream().mapToLong(written -> written[0]).sum();
+        }
+
+        /** Returns the time taken, in seconds. */
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        /** Returns one line per phase and one for the total: the rows written and the rate. */
+        @Override
+        public String toString() {
+            StringJoiner lines = new StringJoiner(System.lineSeparator());
+            phases.forEach((phase, written) -> lines.add(line(phase.toString(), written[0], written[1])));
+            return lines.add(line("Total", getRows(), nanos)).toString();
+        }
+
+        /** Returns the number of rows written and the rate at which they were written. */
+        private static String line(String label, long rows, long elapsedNanos) {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            double rate = seconds > 0 ? rows / seconds : 0;
+            return String.format("%s: %d rows in %.2f s (%.0f rows/sec)", label, rows, seconds, rate);
+        }
+    } // End of Summary class
+
+    /** The EntityManager used to write each chunk. */
+    private final EntityManager entityManager;
+
+    /** The number of rows written per chunk (and per JDBC batch). */
+    private final int batchSize;
+
+    /** The book records of the current chunk, checked and written when the chunk ends. */
+    private final List<String[]> pendingBooks = new ArrayList<>();
+
+    /** Checks the books of each chunk before they are written. */
+    private final BookValidator bookValidator;
+
+    /** The team memberships of the current chunk, written with plain JDBC. */
+    private PreparedStatement teamMemberStatement;
+
+    /** The number of team memberships added to the current JDBC batch. */
+    private int pendingTeamMembers;
+
+    /**
+     * @param manager   The EntityManager to write with; it must not be in a transaction.
+     * @param batchSize The number of rows written and committed at a time.
+     */
+    public BulkImporter(EntityManager manager, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+        }
+        this.entityManager = manager;
+        this.batchSize = batchSize;
+        this.bookValidator = new BookValidator(manager);
+    }
+
+    /**
+     * Imports every record of the file, one phase at a time.
+     * @param file  The CSV file to import.
+     * @return      The rows written by each phase, and how long each took.
+     * @throws IOException if the file cannot be read.
+     */
+    public Summary importFile(Path file) throws IOException {
+        long start = System.nanoTime();
+        Summary summary = new Summary();
+
+        for (Phase phase : Phase.values()) {
+            long phaseStart = System.nanoTime();
+            long rows;
+
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                rows = load(new RecordIterator(reader, phase));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            summary.phases.put(phase, new long[] {rows, System.nanoTime() - phaseStart});
+            LOGGER.fine("Imported " + rows + " rows in the " + phase + " phase");
+        }
+
+        summary.nanos = System.nanoTime() - start;
+        return summary;
+    } // End of importFile method
+
+    /**
+     * Writes the records in the order they are given, committing every {@link #batchSize} rows.
+     * The caller is responsible for giving parents before their children.
+     * @param records   The records to write; each one is the fields of a single CSV line.
+     * @return          The number of rows written.
+     */
+    public long load(Iterator<String[]> records) {
+        EntityTransaction tx = entityManager.getTransaction();
+        long rows = 0;
+        int inChunk = 0;
+
+        try {
+            while (records.hasNext()) {
+                if (inChunk == 0) {
+                    tx.begin();
+                }
+
+                write(records.next());
+                ++rows;
+
+                if (++inChunk == batchSize) {
+                    endChunk(tx);
+                    inChunk = 0;
+                }
+            }
+
+            if (inChunk > 0) {
+                endChunk(tx);
+            }
+
+            // the books and team members were written without touching the cached parents' lists
+            Cache cache = entityManager.getEntityManagerFactory().getCache();
+            cache.evict(Publishers.class);
+            cache.evict(AuthoringEntities.class);
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            closeTeamMemberStatement();
+            pendingBooks.clear();
+            entityManager.clear();
+            throw e;
+        }
+        return rows;
+    } // End of load method
+
+    /**
+     * Converts a single record into its entity (or join table row) and queues it for writing.
+     * @param record    The fields of the record; the first one names its type.
+     */
+    private void write(String[] record) {
+        switch (record[0]) {
+            case "publisher":
+                expectFields(record, 4);
+                entityManager.persist(new Publishers(record[1], record[2], record[3]));
+                break;
+
+            case "individual_author":
+                expectFields(record, 3);
+                entityManager.persist(new IndividualAuthors(record[1], record[2]));
+                break;
+
+            case "writing_group":
+                expectFields(record, 5);
+                entityManager.persist(new WritingGroups(record[1], record[2], record[3],
+                        Integer.parseInt(record[4])));
+                break;
+
+            case "ad_hoc_team":
+                expectFields(record, 3);
+                entityManager.persist(new AdHocTeams(record[1], record[2]));
+                break;
+
+            case "book":
+                expectFields(record, 6);
+                Integer.parseInt(record[3]); // reject a bad year here, where the record is known
+                record[1] = IsbnCodec.normalize(record[1]);
+                // checked and written together at the end of the chunk
+                pendingBooks.add(record);
+                break;
+
+            case "team_member":
+                expectFields(record, 3);
+                addTeamMember(record[1], record[2]);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown record type: " + record[0]);
+        }
+    } // End of write method
+
+    /**
+     * Adds a row of the Ad_Hoc_Teams_Member join table to the current JDBC batch. Going through
+     * the entities would load both membership lists just to add a single row.
+     */
+    private void addTeamMember(String individualAuthorEmail, String adHocTeamEmail) {
+        try {
+            if (teamMemberStatement == null) {
+                // the authors of this chunk must reach the database before their memberships do
+                entityManager.flush();
+                Connection connection = entityManager.unwrap(Connection.class);
+                teamMemberStatement = connection.prepareStatement(INSERT_TEAM_MEMBER);
+            }
+
+            teamMemberStatement.setString(1, individualAuthorEmail);
+            teamMemberStatement.setString(2, adHocTeamEmail);
+            teamMemberStatement.addBatch();
+            ++pendingTeamMembers;
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not add " + individualAuthorEmail +
+                    " to team " + adHocTeamEmail, e);
+        }
+    } // End of addTeamMember method
+
+    /**
+     * Checks the books of the current chunk against the constraints of the BOOKS table with a
+     * single query, and queues them for writing if none of them breaks one.
+     * @throws IllegalArgumentException if any of the books breaks a constraint.
+     */
+    private void writeBooks() {
+        if (pendingBooks.isEmpty()) {
+            return;
+        }
+
+        // the authors and publishers of this chunk must be visible to the check
+        entityManager.flush();
+
+        List<BookValidator.Candidate> candidates = new ArrayList<>(pendingBooks.size());
+        for (String[] record : pendingBooks) {
+            candidates.add(new BookValidator.Candidate(record[1], record[2], record[4], record[5]));
+        }
+
+        List<BookValidator.Violation> violations = bookValidator.validate(candidates);
+        if (!violations.isEmpty()) {
+            StringJoiner messages = new StringJoiner("; ", violations.size() + " book constraint violation(s): ", "");
+            violations.stream().limit(MAX_REPORTED_VIOLATIONS).forEach(violation ->
+                    messages.add(pendingBooks.get(violation.getIndex())[1] + " " + violation.getMessage()));
+            throw new IllegalArgumentException(messages.toString());
+        }
+
+        for (String[] record : pendingBooks) {
+            // references avoid reading the whole parent just to fill in the foreign key
+            AuthoringEntities author = entityManager.getReference(AuthoringEntities.class, record[4]);
+            Publishers publisher = entityManager.getReference(Publishers.class, record[5]);
+            entityManager.persist(new Books(author, publisher, record[1], record[2], Integer.parseInt(record[3])));
+        }
+        pendingBooks.clear();
+    } // End of writeBooks method
+
+    /**
+     * Writes everything queued in the current chunk, commits it, and detaches the written
+     * entities so the persistence context does not grow with the size of the feed.
+     */
+    private void endChunk(EntityTransaction tx) {
+        writeBooks();
+        entityManager.flush();
+
+        if (teamMemberStatement != null) {
+            try {
+                if (pendingTeamMembers > 0) {
+                    teamMemberStatement.executeBatch();
+                }
+            } catch (SQLException e) {
+                throw new PersistenceException("Could not add the ad hoc team members", e);
+            } finally {
+                closeTeamMemberStatement();
+            }
+        }
+
+        tx.commit();
+        entityManager.clear();
+    } // End of endChunk method
+
+    /** Closes the team member statement of the current chunk, if there is one. */
+    private void closeTeamMemberStatement() {
+        if (teamMemberStatement == null) {
+            return;
+        }
+
+        try {
+            teamMemberStatement.close();
+        } catch (SQLException e) {
+            LOGGER.warning("Could not close the team member statement: " + e.getMessage());
+        }
+        teamMemberStatement = null;
+        pendingTeamMembers = 0;
+    } // End of closeTeamMemberStatement method
+
+    /** Throws if the record does not have the number of fields its type requires. */
+    private static void expectFields(String[] record, int count) {
+        if (record.length != count) {
+            throw new IllegalArgumentException("A " + record[0] + " record needs " + count +
+                    " fields but has " + record.length + ": " + String.join(",", record));
+        }
+    } // End of expectFields method
+
+    /**
+     * Reads the records of a single phase from a CSV file, skipping blank lines, comments and the
+     * records of every other phase.
+     */
+    private static class RecordIterator implements Iterator<String[]> {
+        private final BufferedReader reader;
+        private final Phase phase;
+        private String[] next;
+
+        RecordIterator(BufferedReader reader, Phase phase) {
+            this.reader = reader;
+            this.phase = phase;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public String[] next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String[] record = next;
+            advance();
+            return record;
+        }
+
+        /** Moves to the next record of this phase, or to the end of the file. */
+        private void advance() {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank() || line.startsWith("#")) {
+                        continue;
+                    }
+
+                    String[] record = CsvFormat.parseLine(line);
+                    // fail on a misspelled record type rather than silently skipping it
+                    if (Phase.of(record[0]) == phase) {
+                        next = record;
+                        return;
+                    }
+                }
+                next = null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } // End of advance method
+    } // End of RecordIterator class
+} // End of BulkImporter class
@@ -0,0 +1,252 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.logging.Logger;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Gives every book of one authoring entity, or only those of a publisher or range of years, to
+ * another, e.g. when a writing group takes over the catalog of one of its authors. The books are
+ * moved by set based UPDATE statements, a chunk at a time, each in a transaction of its own.
+ * <p>
+ * The same query that reads the books to move also looks, through the (title, author) index of
+ * books_uk_02, for a book of the new author with the same title as each one. If there is any,
+ * nothing is moved and the clashing titles are reported, rather than the move failing part way
+ * through. Each chunk first locks those of its books that the filter, including the old author,
+ * still matches, so a book that was changed after it was read is left alone, and then moves
+ * exactly the locked rows, bumping their versions so that an EntityManager holding the book's old
+ * author fails to write it (see {@link UnitOfWork}).
+ * </p>
+ * <p>
+ * After each chunk the books it really moved, their publishers, and both authors are dropped from
+ * the shared cache, so their lists of books are read again, and those books are counted under the
+ * new author in the catalog statistics. The EntityManager is cleared at the end.
+ * </p>
+ */
+public class BulkReassigner {
+    /** The number of books moved per statement when none is given. */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /** The most clashing titles listed in the message of a rejected move. */
+    private static final int MAX_REPORTED_COLLISIONS = 10;
+
+    private static final Logger LOGGER = Logger.getLogger(BulkReassigner.class.getName());
+
+    /**
+     * What one move changed, and how long it took.
+     */
+    public static class Result {
+        private final long moved;
+        private final int chunks;
+        private final long nanos;
+
+        private Result(long moved, int chunks, long nanos) {
+            this.moved = moved;
+            this.chunks = chunks;
+            this.nanos = nanos;
+        }
+
+        /** Returns the number of books given to the new author. */
+        public long getMoved() {
+            return moved;
+        }
+
+        /** Returns the number of chunks run, each in a transaction of its own. */
+        public int getChunks() {
+            return chunks;
+        }
+
+        /** Returns the time taken, in seconds. */
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Moved %d books in %d chunks in %.2f s", moved, chunks, getSeconds());
+        }
+    } // End of Result class
+
+    /** The EntityManager whose connection the books are moved through. */
+    private final EntityManager entityManager;
+
+    /** The most books moved by one statement. */
+    private final int chunkSize;
+
+    /**
+     * @param manager   The EntityManager whose connection the books are moved through.
+     */
+    public BulkReassigner(EntityManager manager) {
+        this(manager, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param manager       The EntityManager whose connection the books are moved through.
+     * @param chunkSize     The most books moved by one statement; at least 1.
+     */
+    public BulkReassigner(EntityManager manager, int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("A chunk must hold at least one book");
+        this.entityManager = manager;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Gives the books of one authoring entity to another.
+     * @param fromEmail     The email of the author whose books are moved.
+     * @param toEmail       The email of the author who is given them; it must exist.
+     * @param only          Which of the author's books to move, e.g. {@link BookFilter#byPublisher};
+     *                      null to move them all.
+     * @return              The number of books moved, and how long it took.
+     * @throws IllegalArgumentException if the authors are the same, or the new author already has
+     *                                  a book with the title of one that would be moved.
+     * @throws PersistenceException if a chunk cannot be moved; the chunks before it stay moved.
+     */
+    public Result reassign(String fromEmail, String toEmail, BookFilter only) {
+        if (fromEmail.equals(toEmail))
+            throw new IllegalArgumentException("The books already belong to " + toEmail);
+
+        long start = System.nanoTime();
+        BookFilter filter = BookFilter.byAuthor(fromEmail).and(only);
+        List<String[]> books = readMatches(filter, toEmail);
+
+        long moved = 0;
+        int chunks = 0;
+        try {
+            for (int from = 0; from < books.size(); from += chunkSize) {
+                List<String[]> chunk = books.subList(from, Math.min(from + chunkSize, books.size()));
+                List<String[]> movedBooks = updateChunk(filter, toEmail, chunk);
+                moved += movedBooks.size();
+                ++chunks;
+                forget(movedBooks, fromEmail, toEmail);
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not move the books " + filter + " to " + toEmail + " after " +
+                    moved + " were moved", e);
+        } finally {
+            entityManager.clear();
+        }
+
+        Result result = new Result(moved, chunks, System.nanoTime() - start);
+        LOGGER.info(result + " (" + filter + ", to " + toEmail + ")");
+        return result;
+    } // End of reassign method
+
+    /**
+     * Reads the ISBN and publisher name of every book to move, and checks in the same pass that
+     * the new author has no book with any of their titles.
+     * @throws IllegalArgumentException if the new author has a book with one of the titles.
+     */
+    private List<String[]> readMatches(BookFilter filter, String toEmail) {
+        List<String[]> books = new ArrayList<>();
+        List<String> collisions = new ArrayList<>();
+
+        // the connection is only handed out within a transaction; nothing is written through it
+        EntityTransaction tx = entityManager.getTransaction();
+        tx.begin();
+        try (PreparedStatement statement = entityManager.unwrap(Connection.class).prepareStatement(
+                "SELECT m.ISBN, m.PUBLISHER_NAME, m.TITLE, t.ISBN " +
+                "FROM (SELECT ISBN, PUBLISHER_NAME, TITLE FROM BOOKS WHERE " + filter.getCondition() + ") m " +
+                "LEFT JOIN BOOKS t ON t.TITLE = m.TITLE AND t.AUTHORING_ENTITIES_EMAIL = ?")) {
+            statement.setString(filter.bind(statement, 1), toEmail);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    String clash = rows.getString(4);
+                    if (clash != null) {
+                        collisions.add(rows.getString(3) + " (" + clash + ")");
+                    } else {
+                        books.add(new String[] {rows.getString(1), rows.getString(2)});
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not read the books " + filter, e);
+        } finally {
+            tx.rollback();
+        }
+
+        if (!collisions.isEmpty()) {
+            StringJoiner message = new StringJoiner(", ", collisions.size() + " book(s) not moved; " + toEmail +
+                    " already has a book with the title ", "");
+            collisions.stream().limit(MAX_REPORTED_COLLISIONS).forEach(message::add);
+            throw new IllegalArgumentException(message.toString());
+        }
+        return books;
+    } // End of readMatches method
+
+    /**
+     * Moves one chunk of books in a transaction of its own, leaving out those the filter no longer
+     * matches.
+     * @return  The ISBN and publisher name of each book moved.
+     */
+    private List<String[]> updateChunk(BookFilter filter, String toEmail, List<String[]> chunk)
+            throws SQLException {
+        List<String[]> books = new ArrayList<>();
+        EntityTransaction tx = entityManager.getTransaction();
+        tx.begin();
+        try {
+            Connection connection = entityManager.unwrap(Connection.class);
+            // the locks of WITH RS are held until the commit, so no book read can change before it
+            BookFilter matching = BookFilter.byIsbns(BookFilter.isbnsOf(chunk)).and(filter);
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT ISBN, PUBLISHER_NAME FROM BOOKS WHERE " + matching.getCondition() +
+                            " FOR UPDATE WITH RS")) {
+                matching.bind(select, 1);
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        books.add(new String[] {rows.getString(1), rows.getString(2)});
+                    }
+                }
+            }
+
+            if (!books.isEmpty()) {
+                BookFilter read = BookFilter.byIsbns(BookFilter.isbnsOf(books));
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE BOOKS SET AUTHORING_ENTITIES_EMAIL = ?, VERSION = VERSION + 1 WHERE " +
+                                read.getCondition())) {
+                    update.setString(1, toEmail);
+                    read.bind(update, 2);
+                    update.executeUpdate();
+                }
+            }
+            tx.commit();
+            return books;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        }
+    } // End of updateChunk method
+
+    /**
+     * Drops the books a chunk moved, their publishers and both authors from the shared cache, and
+     * counts the books under their new author in the catalog statistics.
+     */
+    private void forget(List<String[]> books, String fromEmail, String toEmail) {
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        CatalogStatistics statistics = CatalogStatistics.of(entityManager.getEntityManagerFactory());
+        for (String[] book : books) {
+            cache.evict(Books.class, book[0]);
+            cache.evict(Publishers.class, book[1]);
+            if (statistics != null) {
+                statistics.reassignBook(book[0], toEmail);
+            }
+        }
+        cache.evict(AuthoringEntities.class, fromEmail);
+        cache.evict(AuthoringEntities.class, toEmail);
+    } // End of forget method
+} // End of BulkReassigner class
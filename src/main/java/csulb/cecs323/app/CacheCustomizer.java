@@ -0,0 +1,74 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.internal.identitymaps.CacheIdentityMap;
+import org.eclipse.persistence.sessions.Session;
+
+import java.util.logging.Logger;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Sizes the shared (second level) cache of every cacheable entity and gives its entries a time to
+ * live. Both values are read from the persistence unit properties, and a system property of the
+ * same name overrides them:
+ * <ul>
+ *     <li>{@value #CACHE_SIZE} - the most instances of each entity kept; the least recently
+ *     used are evicted first</li>
+ *     <li>{@value #CACHE_TTL_SECONDS} - how long an instance may be served from the cache
+ *     before it is read again</li>
+ * </ul>
+ * Registered in persistence.xml through the "eclipselink.session.customizer" property.
+ */
+public class CacheCustomizer implements SessionCustomizer {
+    /** The property holding the number of instances of each entity kept in the cache. */
+    public static final String CACHE_SIZE = "bookclub.cache.size";
+
+    /** The property holding the number of seconds an instance may stay in the cache. */
+    public static final String CACHE_TTL_SECONDS = "bookclub.cache.ttl-seconds";
+
+    /** The cache size used when none is configured. */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /** The time to live used when none is configured. */
+    public static final int DEFAULT_CACHE_TTL_SECONDS = 600;
+
+    private static final Logger LOGGER = Logger.getLogger(CacheCustomizer.class.getName());
+
+    @Override
+    public void customize(Session session) {
+        int size = intProperty(session, CACHE_SIZE, DEFAULT_CACHE_SIZE);
+        int ttlSeconds = intProperty(session, CACHE_TTL_SECONDS, DEFAULT_CACHE_TTL_SECONDS);
+
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            // entities that are not @Cacheable are isolated and have no shared cache to size
+            if (descriptor.isIsolated()) {
+                continue;
+            }
+
+            descriptor.setIdentityMapClass(CacheIdentityMap.class);
+            descriptor.setIdentityMapSize(size);
+            descriptor.setCacheInvalidationPolicy(new TimeToLiveCacheInvalidationPolicy(ttlSeconds * 1000L));
+        }
+
+        LOGGER.fine("Shared cache: " + size + " instances per entity, " + ttlSeconds + " s time to live");
+    } // End of customize method
+
+    /**
+     * Returns an integer property, preferring a system property over the persistence unit.
+     * @param session       The session holding the persistence unit properties.
+     * @param name          The name of the property.
+     * @param defaultValue  The value used when the property is not set anywhere.
+     * @return              The value of the property.
+     */
+    private static int intProperty(Session session, String name, int defaultValue) {
+        Object value = System.getProperty(name);
+        if (value == null) {
+            value = session.getProperty(name);
+        }
+        return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+    } // End of intProperty method
+} // End of CacheCustomizer class
@@ -0,0 +1,86 @@
+package csulb.cecs323.app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Counts how often a point lookup of an entity was answered by the shared (second level) cache
+ * and how often it had to go to the database. The ratio of the two is what tells us whether the
+ * cache is large enough. One instance is kept per entity class and shared by every thread.
+ */
+public final class CacheStatistics {
+    /** The statistics of every entity class that has been looked up, by class. */
+    private static final Map<Class<?>, CacheStatistics> STATISTICS = new ConcurrentHashMap<>();
+
+    /** The name of the entity class. */
+    private final String name;
+
+    /** The number of lookups answered from the cache. */
+    private final LongAdder hits = new LongAdder();
+
+    /** The number of lookups that had to query the database. */
+    private final LongAdder misses = new LongAdder();
+
+    private CacheStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the statistics of the given entity class, creating them on first use.
+     * @param type  The entity class.
+     * @return      The statistics shared by every lookup of that class.
+     */
+    public static CacheStatistics of(Class<?> type) {
+        return STATISTICS.computeIfAbsent(type, key -> new CacheStatistics(key.getSimpleName()));
+    } // End of of method
+
+    /** Returns the statistics of every entity class looked up so far. */
+    public static Collection<CacheStatistics> all() {
+        return new ArrayList<>(STATISTICS.values());
+    } // End of all method
+
+    /** Records a lookup answered from the cache. */
+    public void recordHit() {
+        hits.increment();
+    } // End of recordHit method
+
+    /** Records a lookup that had to query the database. */
+    public void recordMiss() {
+        misses.increment();
+    } // End of recordMiss method
+
+    /** Returns the name of the entity class. */
+    public String getName() {
+        return name;
+    } // End of getName method
+
+    /** Returns the number of lookups answered from the cache. */
+    public long getHits() {
+        return hits.sum();
+    } // End of getHits method
+
+    /** Returns the number of lookups that had to query the database. */
+    public long getMisses() {
+        return misses.sum();
+    } // End of getMisses method
+
+    /** Returns the fraction of lookups answered from the cache, or 0 if there were none. */
+    public double getHitRatio() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    } // End of getHitRatio method
+
+    /** Returns a one line summary of the statistics. */
+    @Override
+    public String toString() {
+        return String.format("%s cache: %d hits, %d misses (%.1f%% hit ratio)",
+                name, getHits(), getMisses(), getHitRatio() * 100);
+    } // End of toString method
+} // End of CacheStatistics class
@@ -0,0 +1,300 @@
+package csulb.cecs323.app;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Writes every book, together with its publisher and authoring entity, as JSON lines or CSV for
+ * systems downstream of the BookClub. The rows are read by a single joined query through a
+ * forward only cursor, a page at a time, and each one is written as soon as it is read, so the
+ * memory used is the same however many books there are; no entity is built and nothing is added
+ * to the persistence context.
+ * <p>
+ * The books are written in the order that Derby stores them. Asking for them in ISBN order makes
+ * Derby sort the whole join on disk before the first row comes back, which halves the rate.
+ * A CSV export starts with a header line of {@link #CSV_COLUMNS}. A JSON line nests the publisher
+ * and the author. It leaves out the head writer and year formed of authors that are not writing
+ * groups.
+ * </p>
+ */
+public class CatalogExporter {
+    /** The number of rows that the cursor reads at a time. */
+    public static final int FETCH_SIZE = 1000;
+
+    /** The size of the buffer in front of the output, and of the gzip buffer. */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /** The columns of a CSV export, in order. */
+    public static final String[] CSV_COLUMNS = {"isbn", "title", "year_published", "publisher_name",
+            "publisher_phone", "publisher_email", "author_email", "author_type", "author_name", "head_writer",
+            "year_formed"};
+
+    /** Every book joined to its publisher and authoring entity, in the order of CSV_COLUMNS. */
+    private static final String QUERY =
+            "SELECT b.ISBN, b.TITLE, b.YEAR_PUBLISHED, p.NAME, p.PHONE, p.EMAIL, " +
+            "a.EMAIL, a.AUTHORING_ENTITY_TYPE, a.NAME, a.HEAD_WRITER, a.YEAR_FORMED " +
+            "FROM BOOKS b " +
+            "JOIN PUBLISHERS p ON p.NAME = b.PUBLISHER_NAME " +
+            "JOIN AUTHORING_ENTITIES a ON a.EMAIL = b.AUTHORING_ENTITIES_EMAIL";
+
+    private static final Logger LOGGER = Logger.getLogger(CatalogExporter.class.getName());
+
+    /**
+     * The formats that the catalog can be written in.
+     */
+    public enum Format {
+        /** One JSON object per line. */
+        JSON,
+        /** Comma separated values, see {@link CsvFormat}. */
+        CSV;
+
+        /** Returns the format with the given name, in any case. */
+        public static Format of(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown export format: " + name + " (expected json or csv)");
+            }
+        } // End of of method
+    } // End of Format enum
+
+    /**
+     * What one export wrote, and how long it took.
+     */
+    public static class Summary {
+        private final long rows;
+        private final long bytes;
+        private final long nanos;
+
+        private Summary(long rows, long bytes, long nanos) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /** Returns the number of books written. */
+        public long getRows() {
+            return rows;
+        }
+
+        /** Returns the number of bytes written, after compression if the output was compressed. */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /** Returns the time taken, in seconds. */
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(getSeconds(), 1e-9);
+            return String.format("Exported %d books (%.1f MB) in %.1f s, %.0f books per second, %.1f MB per second",
+                    rows, bytes / 1e6, getSeconds(), rows / seconds, bytes / 1e6 / seconds);
+        }
+    } // End of Summary class
+
+    /**
+     * Counts the bytes that pass through it on their way to the output.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    } // End of CountingOutputStream class
+
+    /** The EntityManager whose connection the catalog is read through. */
+    private final EntityManager entityManager;
+
+    /** The format that the books are written in. */
+    private final Format format;
+
+    /** True to compress the output with gzip. */
+    private final boolean gzip;
+
+    /**
+     * @param manager   The EntityManager whose connection the catalog is read through.
+     * @param format    The format that the books are written in.
+     * @param gzip      True to compress the output with gzip.
+     */
+    public CatalogExporter(EntityManager manager, Format format, boolean gzip) {
+        this.entityManager = manager;
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Writes every book to a stream. The stream is flushed, and finished if it is compressed,
+     * but not closed.
+     * @param output    Where the books are written.
+     * @return          What was written, and how long it took.
+     * @throws IOException if the output cannot be written.
+     * @throws PersistenceException if the catalog cannot be read.
+     */
+    public Summary export(OutputStream output) throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(output);
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(counted, BUFFER_SIZE) : null;
+        Writer out = new BufferedWriter(new OutputStreamWriter(gzip ? compressed : counted, StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+        long rows = 0;
+
+        // the connection is only handed out within a transaction; nothing is written through it
+        EntityTransaction tx = entityManager.getTransaction();
+        tx.begin();
+        try (Statement statement = entityManager.unwrap(Connection.class).createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(FETCH_SIZE);
+
+            try (ResultSet books = statement.executeQuery(QUERY)) {
+                // one line is built at a time, in the same buffer
+                StringBuilder line = new StringBuilder(256);
+                if (format == Format.CSV) {
+                    line.append(CsvFormat.formatLine((Object[]) CSV_COLUMNS)).append('\n');
+                    out.append(line);
+                }
+
+                while (books.next()) {
+                    line.setLength(0);
+                    if (format == Format.CSV) {
+                        appendCsv(line, books);
+                    } else {
+                        appendJson(line, books);
+                    }
+                    out.append(line);
+                    ++rows;
+                }
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not read the catalog after " + rows + " books", e);
+        } finally {
+            tx.rollback();
+        }
+
+        out.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        output.flush();
+
+        Summary summary = new Summary(rows, counted.count, System.nanoTime() - start);
+        LOGGER.info(summary.toString());
+        return summary;
+    } // End of export method
+
+    /** Appends a row as a line of CSV, with its fields in the order of CSV_COLUMNS. */
+    private static void appendCsv(StringBuilder line, ResultSet row) throws SQLException {
+        for (int column = 1; column <= CSV_COLUMNS.length; ++column) {
+            if (column > 1) {
+                line.append(CsvFormat.SEPARATOR);
+            }
+            CsvFormat.appendField(line, row.getObject(column));
+        }
+        line.append('\n');
+    } // End of appendCsv method
+
+    /** Appends a row as a line of JSON. */
+    private static void appendJson(StringBuilder line, ResultSet row) throws SQLException {
+        line.append("{\"isbn\":");
+        appendJsonString(line, row.getString(1));
+        line.append(",\"title\":");
+        appendJsonString(line, row.getString(2));
+        line.append(",\"yearPublished\":").append(row.getInt(3));
+
+        line.append(",\"publisher\":{\"name\":");
+        appendJsonString(line, row.getString(4));
+        line.append(",\"phone\":");
+        appendJsonString(line, row.getString(5));
+        line.append(",\"email\":");
+        appendJsonString(line, row.getString(6));
+
+        line.append("},\"author\":{\"email\":");
+        appendJsonString(line, row.getString(7));
+        line.append(",\"type\":");
+        appendJsonString(line, row.getString(8));
+        line.append(",\"name\":");
+        appendJsonString(line, row.getString(9));
+
+        // only writing groups have a head writer and a year formed
+        String headWriter = row.getString(10);
+        if (headWriter != null) {
+            line.append(",\"headWriter\":");
+            appendJsonString(line, headWriter);
+        }
+        int yearFormed = row.getInt(11);
+        if (!row.wasNull()) {
+            line.append(",\"yearFormed\":").append(yearFormed);
+        }
+        line.append("}}\n");
+    } // End of appendJson method
+
+    /** Appends a JSON string, quoted and escaped; null is written as null. */
+    static void appendJsonString(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+
+        line.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    } // End of appendJsonString method
+} // End of CatalogExporter class
@@ -0,0 +1,411 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.AuthoringEntities;
+import csulb.cecs323.model.Books;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Counts the books of each publisher, of each type of authoring entity (the
+ * Authoring_Entity_Type column) and of each year published, in memory, so that a count is a map
+ * lookup rather than a scan of BOOKS. Alongside the counts, the publisher, author type and year
+ * of every book are kept by ISBN. A change then only needs the ISBN: the book's old place in the
+ * counts is taken back before its new one is added, so applying the same change twice is
+ * harmless.
+ * <p>
+ * The counts are built by {@link #install}, and can be built again by {@link #rebuild}, from a
+ * scan of BOOKS split by ISBN range across several connections. They are kept up to date like the
+ * {@link SearchIndex}: by the insert, update and delete events of the books, applied once their
+ * transaction commits, and by the writers that go around the entities, through
+ * {@link #putBook}, {@link #reassignBook} and {@link #removeBook}. The changes committed while a
+ * rebuild scans are applied again to what it built.
+ * </p>
+ */
+public final class CatalogStatistics {
+    /** The session property that the statistics of a factory are kept in. */
+    private static final String PROPERTY = "bookclub.catalog-statistics";
+
+    /** The author type of a book whose author's type is not known. */
+    public static final String UNKNOWN_TYPE = "Unknown";
+
+    /** The most connections that a rebuild scans with. */
+    public static final int MAX_PARALLELISM = 4;
+
+    /** The fewest books that a rebuild gives each connection to scan. */
+    private static final int MIN_PARTITION_SIZE = 20_000;
+
+    /** The number of rows that a scan reads at a time. */
+    private static final int FETCH_SIZE = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(CatalogStatistics.class.getName());
+
+    /**
+     * Where one book is counted.
+     */
+    private static final class Book {
+        private final String publisher;
+        private final String authorType;
+        private final int year;
+
+        private Book(String publisher, String authorType, int year) {
+            this.publisher = publisher;
+            this.authorType = authorType;
+            this.year = year;
+        }
+    } // End of Book class
+
+    /**
+     * The books and the counts made from them.
+     */
+    private static final class Counts {
+        private final Map<String, Book> books = new HashMap<>();
+        private final Map<String, String> authorTypes = new HashMap<>();
+        private final Map<String, Integer> perPublisher = new HashMap<>();
+        private final Map<String, Integer> perAuthorType = new HashMap<>();
+        private final Map<Integer, Integer> perYear = new HashMap<>();
+
+        /** Counts a book, in place of what it was counted as before, if anything. */
+        private void put(String isbn, Book book) {
+            Book old = books.put(isbn, book);
+            if (old != null) {
+                count(old, -1);
+            }
+            count(book, 1);
+        }
+
+        /** Takes a book out of the counts, if it was in them. */
+        private void remove(String isbn) {
+            Book old = books.remove(isbn);
+            if (old != null) {
+                count(old, -1);
+            }
+        }
+
+        /** Moves a book to another author, if it is counted. */
+        private void reassign(String isbn, String authorEmail) {
+            Book old = books.get(isbn);
+            if (old != null) {
+                put(isbn, new Book(old.publisher, authorType(authorEmail), old.year));
+            }
+        }
+
+        /** Returns the type of an authoring entity; the same instance for every author of a type. */
+        private String authorType(String email) {
+            return authorTypes.getOrDefault(email, UNKNOWN_TYPE);
+        }
+
+        /** Adds the counts of another part of the books, which has none of the same books. */
+        private void addAll(Counts part) {
+            books.putAll(part.books);
+            part.perPublisher.forEach((key, count) -> add(perPublisher, key, count));
+            part.perAuthorType.forEach((key, count) -> add(perAuthorType, key, count));
+            part.perYear.forEach((key, count) -> add(perYear, key, count));
+        }
+
+        private void count(Book book, int delta) {
+            add(perPublisher, book.publisher, delta);
+            add(perAuthorType, book.authorType, delta);
+            add(perYear, book.year, delta);
+        }
+
+        /** Adds to a count, and drops it once it reaches zero. */
+        private static <K> void add(Map<K, Integer> counts, K key, int delta) {
+            counts.merge(key, delta, (count, change) -> count + change == 0 ? null : count + change);
+        }
+    } // End of Counts class
+
+    /** The counts; replaced as a whole by a rebuild. */
+    private final CommitListener.Rebuildable<Counts> counts =
+            new CommitListener.Rebuildable<>("statistics", new Counts());
+
+    private CatalogStatistics() {
+    }
+
+    /**
+     * Counts the books of a factory's database and keeps the counts up to date with the changes
+     * made through the factory from then on. A factory has one set of statistics; installing
+     * them again returns them.
+     * @param factory   The factory whose books are counted.
+     * @return          The statistics.
+     * @throws PersistenceException if the tables cannot be read.
+     */
+    public static CatalogStatistics install(EntityManagerFactory factory) {
+        return CommitListener.install(factory, PROPERTY, CatalogStatistics.class, session -> {
+            CatalogStatistics statistics = new CatalogStatistics();
+            // listen first, so that nothing written during the scan is missed
+            CommitListener.listen(session, statistics::record, Books.class, AuthoringEntities.class);
+            statistics.rebuild(factory);
+            return statistics;
+        });
+    } // End of install method
+
+    /**
+     * Returns the statistics of a factory.
+     * @param factory   The factory.
+     * @return          Its statistics, or null if none have been installed.
+     */
+    public static CatalogStatistics of(EntityManagerFactory factory) {
+        return CommitListener.of(factory, PROPERTY, CatalogStatistics.class);
+    } // End of of method
+
+    /** Returns the number of books. */
+    public int getBookCount() {
+        return counts.read(counts -> counts.books.size());
+    } // End of getBookCount method
+
+    /** Returns the number of books of a publisher. */
+    public int getBookCountOfPublisher(String name) {
+        return counts.read(counts -> counts.perPublisher.getOrDefault(name, 0));
+    } // End of getBookCountOfPublisher method
+
+    /** Returns the number of books by authoring entities of a type, e.g. "WritingGroups". */
+    public int getBookCountOfAuthorType(String type) {
+        return counts.read(counts -> counts.perAuthorType.getOrDefault(type, 0));
+    } // End of getBookCountOfAuthorType method
+
+    /** Returns the number of books published in a year. */
+    public int getBookCountOfYear(int year) {
+        return counts.read(counts -> counts.perYear.getOrDefault(year, 0));
+    } // End of getBookCountOfYear method
+
+    /** Returns the number of books of each type of authoring entity, by type. */
+    public Map<String, Integer> getBookCountsPerAuthorType() {
+        return counts.read(counts -> new TreeMap<>(counts.perAuthorType));
+    } // End of getBookCountsPerAuthorType method
+
+    /** Returns the number of books published in each year, by year. */
+    public Map<Integer, Integer> getBookCountsPerYear() {
+        return counts.read(counts -> new TreeMap<>(counts.perYear));
+    } // End of getBookCountsPerYear method
+
+    /** Returns the number of books of each publisher with at least one, by name. */
+    public Map<String, Integer> getBookCountsPerPublisher() {
+        return counts.read(counts -> new TreeMap<>(counts.perPublisher));
+    } // End of getBookCountsPerPublisher method
+
+    /**
+     * Counts a book that was written around the entities, in place of what it was counted as
+     * before, if anything.
+     */
+    public void putBook(String isbn, String publisherName, String authorEmail, int yearPublished) {
+        counts.apply(counts -> counts.put(isbn, new Book(publisherName, counts.authorType(authorEmail), yearPublished)));
+    } // End of putBook method
+
+    /** Counts a book that was given to another authoring entity around the entities. */
+    public void reassignBook(String isbn, String authorEmail) {
+        counts.apply(counts -> counts.reassign(isbn, authorEmail));
+    } // End of reassignBook method
+
+    /** Takes a book that was deleted around the entities out of the counts. */
+    public void removeBook(String isbn) {
+        counts.apply(counts -> counts.remove(isbn));
+    } // End of removeBook method
+
+    /**
+     * Records the type of an authoring entity written around the entities, e.g. "AdHocTeams",
+     * so that its books are counted under it.
+     */
+    public void putAuthor(String email, String type) {
+        counts.apply(counts -> counts.authorTypes.put(email, type.intern()));
+    } // End of putAuthor method
+
+    /**
+     * Counts the books again from the database. The table is split into ranges of ISBNs, each
+     * scanned over a connection of its own, and the counts of the ranges are added together.
+     * The old counts answer until the new ones are ready.
+     * @param factory   The factory whose books are counted.
+     * @throws PersistenceException if the tables cannot be read; the old counts are kept.
+     */
+    public void rebuild(EntityManagerFactory factory) {
+        counts.rebuild(() -> count(factory));
+    } // End of rebuild method
+
+    /** Counts the books of the database, in ranges of ISBNs scanned in parallel. */
+    private static Counts count(EntityManagerFactory factory) {
+        long start = System.nanoTime();
+        Counts built = new Counts();
+        List<String> bounds = readAuthorsAndBounds(factory, built.authorTypes);
+        built.addAll(scanInParallel(factory, bounds, built.authorTypes));
+        LOGGER.info(String.format("Counted %d books (%d publishers, %d years) in %d ms over %d connections",
+                built.books.size(), built.perPublisher.size(), built.perYear.size(),
+                (System.nanoTime() - start) / 1_000_000, bounds.size() + 1));
+        return built;
+    } // End of count method
+
+    /**
+     * Reads the type of every authoring entity, and the ISBNs that split BOOKS into ranges of
+     * about the same size, one range per connection.
+     * @return  The first ISBN of each range after the first, in order.
+     */
+    private static List<String> readAuthorsAndBounds(EntityManagerFactory factory, Map<String, String> authorTypes) {
+        List<String> bounds = new ArrayList<>();
+        EntityManager manager = factory.createEntityManager();
+        // the connection is only handed out within a transaction; nothing is written through it
+        EntityTransaction tx = manager.getTransaction();
+        tx.begin();
+        try {
+            Connection connection = manager.unwrap(Connection.class);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT EMAIL, AUTHORING_ENTITY_TYPE FROM AUTHORING_ENTITIES")) {
+                statement.setFetchSize(FETCH_SIZE);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        authorTypes.put(rows.getString(1), rows.getString(2).intern());
+                    }
+                }
+            }
+
+            long books;
+            try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM BOOKS");
+                 ResultSet rows = statement.executeQuery()) {
+                rows.next();
+                books = rows.getLong(1);
+            }
+            int partitions = (int) Math.max(1, Math.min(Math.min(MAX_PARALLELISM,
+                    Runtime.getRuntime().availableProcessors()), books / MIN_PARTITION_SIZE));
+
+            // the primary key index gives the n-th ISBN without reading the rows
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT ISBN FROM BOOKS ORDER BY ISBN OFFSET ? ROWS FETCH NEXT 1 ROWS ONLY")) {
+                for (int i = 1; i < partitions; ++i) {
+                    statement.setLong(1, books * i / partitions);
+                    try (ResultSet rows = statement.executeQuery()) {
+                        if (rows.next()) {
+                            bounds.add(rows.getString(1));
+                        }
+                    }
+                }
+            }
+            return bounds;
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not read the authoring entities", e);
+        } finally {
+            tx.rollback();
+            manager.close();
+        }
+    } // End of readAuthorsAndBounds method
+
+    /** Counts each range of ISBNs on a thread and connection of its own, and adds the counts up. */
+    private static Counts scanInParallel(EntityManagerFactory factory, List<String> bounds,
+                                         Map<String, String> authorTypes) {
+        ExecutorService workers = Executors.newFixedThreadPool(bounds.size() + 1);
+        try {
+            List<Future<Counts>> parts = new ArrayList<>();
+            for (int i = 0; i <= bounds.size(); ++i) {
+                String from = i == 0 ? null : bounds.get(i - 1);
+                String to = i == bounds.size() ? null : bounds.get(i);
+                parts.add(workers.submit(() -> scan(factory, from, to, authorTypes)));
+            }
+
+            Counts total = new Counts();
+            for (Future<Counts> part : parts) {
+                total.addAll(part.get());
+            }
+            return total;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof PersistenceException ? (PersistenceException) e.getCause()
+                    : new PersistenceException("Could not count the books", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException("Interrupted while counting the books", e);
+        } finally {
+            workers.shutdownNow();
+        }
+    } // End of scanInParallel method
+
+    /**
+     * Counts the books from one ISBN, included, to another, excluded.
+     * @param from  The first ISBN of the range; null to start from the first book.
+     * @param to    The first ISBN after the range; null to run to the last book.
+     */
+    private static Counts scan(EntityManagerFactory factory, String from, String to, Map<String, String> authorTypes) {
+        Counts part = new Counts();
+        // the same publisher is read once per book; keep one copy of each name
+        Map<String, String> publishers = new HashMap<>();
+
+        EntityManager manager = factory.createEntityManager();
+        EntityTransaction tx = manager.getTransaction();
+        tx.begin();
+        try (PreparedStatement statement = manager.unwrap(Connection.class).prepareStatement(
+                "SELECT ISBN, PUBLISHER_NAME, AUTHORING_ENTITIES_EMAIL, YEAR_PUBLISHED FROM BOOKS" +
+                (from == null ? (to == null ? "" : " WHERE ISBN < ?") : (to == null ? " WHERE ISBN >= ?" :
+                        " WHERE ISBN >= ? AND ISBN < ?")))) {
+            int index = 1;
+            if (from != null) {
+                statement.setString(index++, from);
+            }
+            if (to != null) {
+                statement.setString(index, to);
+            }
+            statement.setFetchSize(FETCH_SIZE);
+
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    String publisher = publishers.computeIfAbsent(rows.getString(2), name -> name);
+                    part.put(rows.getString(1), new Book(publisher,
+                            authorTypes.getOrDefault(rows.getString(3), UNKNOWN_TYPE), rows.getInt(4)));
+                }
+            }
+            return part;
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not count the books", e);
+        } finally {
+            tx.rollback();
+            manager.close();
+        }
+    } // End of scan method
+
+    /**
+     * Returns the change to the counts that a write of a book or authoring entity makes, for when
+     * its unit of work commits. The fields are read now, as they were written.
+     */
+    private Runnable record(Session unitOfWork, Object entity, CommitListener.Write write) {
+        Consumer<Counts> change;
+        if (entity instanceof Books) {
+            Books book = (Books) entity;
+            String isbn = book.getISBN();
+            if (write == CommitListener.Write.DELETE) {
+                change = counts -> counts.remove(isbn);
+            } else {
+                String publisher = book.getPublisher().getName();
+                String type = typeOf(unitOfWork, book.getAuthor());
+                int year = book.getYearPublished();
+                change = counts -> counts.put(isbn, new Book(publisher, type, year));
+            }
+        } else if (entity instanceof AuthoringEntities && write != CommitListener.Write.DELETE) {
+            String email = ((AuthoringEntities) entity).getEmail();
+            String type = typeOf(unitOfWork, (AuthoringEntities) entity);
+            change = counts -> counts.authorTypes.put(email, type);
+        } else {
+            return null;
+        }
+        return () -> counts.apply(change);
+    } // End of record method
+
+    /** Returns the Authoring_Entity_Type of an author, which is the name of its entity. */
+    private static String typeOf(Session session, AuthoringEntities author) {
+        return session.getDescriptor(author.getClass()).getAlias().intern();
+    } // End of typeOf method
+} // End of CatalogStatistics class
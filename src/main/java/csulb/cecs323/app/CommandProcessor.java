@@ -0,0 +1,549 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.*;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.function.Supplier;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Runs the menu operations of the BookClub from single line commands rather than prompts, so
+ * they can be sent over a connection or read from a script. A command is a name, a space, and
+ * its fields separated by '|':
+ * <pre>
+ *   add-publisher name|phone|email
+ *   add-book isbn|title|year published|author email|publisher name
+ *   add-writing-group name|email|head writer|year formed
+ *   add-individual-author name|email
+ *   add-ad-hoc-team name|email
+ *   add-team-member individual author email|ad hoc team email
+ *   list-publisher name
+ *   list-book isbn
+ *   list-writing-group email
+ *   list-authors
+ *   delete-book title|publisher name
+ *   delete-books publisher|name, delete-books author|email or delete-books years|first|last
+ *   reassign-author title|publisher name|new author email
+ *   reassign-books author email|new author email, followed by |publisher|name and/or |years|first|last
+ *   list-keys publishers|books|authors
+ *   search words
+ *   statistics, statistics publisher|name, statistics type|author type, statistics year|year
+ *   or statistics rebuild
+ *   flush
+ * </pre>
+ * Every command ends its output with a line of "OK", or "ERROR" followed by the reason.
+ * Each command that changes the database runs in its own short transaction (see
+ * {@link UnitOfWork}), and the checks before it run outside of any.
+ * <p>
+ * Given a {@link BatchSession}, the commands that change the database queue their change in it
+ * instead, and "flush" writes the queue. A command that looks up a row the queue may still hold,
+ * e.g. the author of a new book, flushes the queue first if the row is not found. A change whose
+ * unique key a queued insert already takes is refused, and "flush" fails if any of the queued
+ * operations could not be written.
+ * </p>
+ */
+public class CommandProcessor {
+    /** Separates the fields of a command. */
+    public static final String FIELD_SEPARATOR = "|";
+
+    /** The line that ends the output of a successful command. */
+    public static final String OK = "OK";
+
+    /** The start of the line that ends the output of a failed command. */
+    public static final String ERROR = "ERROR";
+
+    /** The EntityManager that the commands run in. */
+    private final EntityManager entityManager;
+
+    /** Runs the queries of the commands. */
+    private final BookClub bookClub;
+
+    /** Checks new books against the constraints of the BOOKS table. */
+    private final BookValidator bookValidator;
+
+    /** Runs the changes of the commands. */
+    private final UnitOfWork unitOfWork;
+
+    /** Queues the changes of the commands instead; null to write each one straight away. */
+    private final BatchSession batch;
+
+    /**
+     * @param manager   The EntityManager that the commands run in.
+     */
+    public CommandProcessor(EntityManager manager) {
+        this(manager, null);
+    }
+
+    /**
+     * @param manager   The EntityManager that the commands run in.
+     * @param batch     The session that the changes are queued in; null to write each change
+     *                  when its command runs.
+     */
+    public CommandProcessor(EntityManager manager, BatchSession batch) {
+        this.entityManager = manager;
+        this.bookClub = new BookClub(manager);
+        this.bookValidator = new BookValidator(manager);
+        this.unitOfWork = new UnitOfWork(manager);
+        this.batch = batch;
+    }
+
+    /**
+     * Runs a single command and writes its output.
+     * @param line  The command, e.g. "list-book 874213982".
+     * @param out   Where the output of the command is written.
+     * @return      True if the command succeeded; false otherwise.
+     */
+    public boolean execute(String line, PrintWriter out) {
+        String trimmed = line.trim();
+        int space = trimmed.indexOf(' ');
+        String command = (space < 0 ? trimmed : trimmed.substring(0, space)).toLowerCase(Locale.ROOT);
+        String arguments = space < 0 ? "" : trimmed.substring(space + 1);
+
+        try {
+            if (batch != null) {
+                // a flush, perhaps by another thread, may have changed what was read before
+                entityManager.clear();
+            }
+            SlowQueryLog.setOperation(command);
+            run(command, arguments, out);
+            out.println(OK);
+            return true;
+        } catch (IllegalArgumentException | PersistenceException e) {
+            EntityTransaction tx = entityManager.getTransaction();
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            out.println(ERROR + " " + e.getMessage());
+            return false;
+        } finally {
+            SlowQueryLog.setOperation(null);
+            out.flush();
+        }
+    } // End of execute method
+
+    /**
+     * Dispatches a command to the method that runs it.
+     * @throws IllegalArgumentException if the command is unknown or its fields are not valid.
+     */
+    private void run(String command, String arguments, PrintWriter out) {
+        switch (command) {
+            case "add-publisher":
+                addPublisher(fields(arguments, 3));
+                break;
+            case "add-book":
+                addBook(fields(arguments, 5));
+                break;
+            case "add-writing-group":
+                addWritingGroup(fields(arguments, 4));
+                break;
+            case "add-individual-author":
+                addAuthor(fields(arguments, 2), false);
+                break;
+            case "add-ad-hoc-team":
+                addAuthor(fields(arguments, 2), true);
+                break;
+            case "add-team-member":
+                addTeamMember(fields(arguments, 2));
+                break;
+            case "list-publisher":
+                out.println(require(bookClub.getPublisher(arguments.trim()), "That publisher does not exist"));
+                break;
+            case "list-book":
+                out.println(require(bookClub.getBook(arguments.trim()), "That book does not exist"));
+                break;
+            case "list-writing-group":
+                out.println(requireType(bookClub.getAuthor(arguments.trim()), WritingGroups.class,
+                        "That writing group does not exist"));
+                break;
+            case "list-authors":
+                listAuthors(out);
+                break;
+            case "delete-book":
+                deleteBook(fields(arguments, 2));
+                break;
+            case "delete-books":
+                deleteBooks(arguments, out);
+                break;
+            case "reassign-author":
+                reassignAuthor(fields(arguments, 3));
+                break;
+            case "reassign-books":
+                reassignBooks(arguments, out);
+                break;
+            case "list-keys":
+                listKeys(arguments.trim(), out);
+                break;
+            case "search":
+                search(arguments.trim(), out);
+                break;
+            case "statistics":
+                statistics(arguments.trim(), out);
+                break;
+            case "flush":
+                flush(out);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    } // End of run method
+
+    /** add-publisher name|phone|email */
+    private void addPublisher(String[] fields) {
+        String name = checkLength(fields[0], 80, "name");
+        String phone = checkLength(fields[1], 24, "phone");
+        String email = checkLength(fields[2], 80, "email");
+
+        if (bookClub.getPublisher(name) != null || isQueued(BatchSession.UniqueKey.PUBLISHER_NAME, name))
+            throw new IllegalArgumentException("That publisher already exists");
+        if (bookClub.publisherPhoneExists(phone) || isQueued(BatchSession.UniqueKey.PUBLISHER_PHONE, phone))
+            throw new IllegalArgumentException("That phone number already exists");
+        if (bookClub.publisherEmailExists(email) || isQueued(BatchSession.UniqueKey.PUBLISHER_EMAIL, email))
+            throw new IllegalArgumentException("That email already exists");
+
+        Publishers publisher = new Publishers(name, phone, email);
+        if (batch != null)
+            batch.insert(publisher);
+        else
+            unitOfWork.write(manager -> manager.persist(publisher));
+    } // End of addPublisher method
+
+    /** add-book isbn|title|year published|author email|publisher name */
+    private void addBook(String[] fields) {
+        int year = parseInt(fields[2], "year published");
+        fields[0] = IsbnCodec.normalize(fields[0]);
+
+        if (isQueued(BatchSession.UniqueKey.ISBN, fields[0]))
+            throw new IllegalArgumentException("That book already exists in the table");
+        if (isQueued(BatchSession.UniqueKey.TITLE_AND_AUTHOR, fields[1], fields[3]))
+            throw new IllegalArgumentException("The author has another book with this title in the batch");
+        if (isQueued(BatchSession.UniqueKey.TITLE_AND_PUBLISHER, fields[1], fields[4]))
+            throw new IllegalArgumentException("The publisher has another book with this title in the batch");
+
+        BookValidator.Candidate candidate = new BookValidator.Candidate(fields[0], fields[1], fields[3], fields[4]);
+        List<BookValidator.Violation> violations = bookValidator.validate(candidate);
+        if (!violations.isEmpty() && flushPending()) {
+            // the author or the publisher may have been waiting in the batch
+            violations = bookValidator.validate(candidate);
+        }
+        if (!violations.isEmpty()) {
+            StringJoiner messages = new StringJoiner("; ");
+            violations.forEach(violation -> messages.add(violation.getMessage()));
+            throw new IllegalArgumentException(messages.toString());
+        }
+
+        if (batch != null) {
+            batch.insert(new Books(bookClub.getAuthor(fields[3]), bookClub.getPublisher(fields[4]), fields[0],
+                    fields[1], year));
+            return;
+        }
+        unitOfWork.write(manager -> bookClub.addBook(new Books(manager.find(AuthoringEntities.class, fields[3]),
+                manager.find(Publishers.class, fields[4]), fields[0], fields[1], year)));
+    } // End of addBook method
+
+    /** add-writing-group name|email|head writer|year formed */
+    private void addWritingGroup(String[] fields) {
+        String name = checkLength(fields[0], 80, "name");
+        String email = checkLength(fields[1], 80, "email");
+        String headWriter = checkLength(fields[2], 80, "head writer");
+        int yearFormed = parseInt(fields[3], "year formed");
+
+        if (bookClub.getAuthor(email) != null || isQueued(BatchSession.UniqueKey.AUTHOR_EMAIL, email))
+            throw new IllegalArgumentException("That group already exists");
+
+        insert(new WritingGroups(name, email, headWriter, yearFormed));
+    } // End of addWritingGroup method
+
+    /** add-individual-author name|email, or add-ad-hoc-team name|email */
+    private void addAuthor(String[] fields, boolean adHocTeam) {
+        String name = checkLength(fields[0], 30, "name");
+        String email = checkLength(fields[1], 30, "email");
+
+        if (bookClub.getAuthor(email) != null || isQueued(BatchSession.UniqueKey.AUTHOR_EMAIL, email))
+            throw new IllegalArgumentException("That author already exists");
+
+        insert(adHocTeam ? new AdHocTeams(name, email) : new IndividualAuthors(name, email));
+    } // End of addAuthor method
+
+    /** add-team-member individual author email|ad hoc team email */
+    private void addTeamMember(String[] fields) {
+        IndividualAuthors member = requireType(find(() -> bookClub.getAuthor(fields[0])), IndividualAuthors.class,
+                "That author doesn't exist");
+        AdHocTeams team = requireType(find(() -> bookClub.getAuthor(fields[1])), AdHocTeams.class,
+                "That team does not exist");
+
+        if (member.getAdHocTeamsList().contains(team) ||
+                isQueued(BatchSession.UniqueKey.TEAM_MEMBER, member.getEmail(), team.getEmail()))
+            throw new IllegalArgumentException("The author is already part of that team");
+
+        if (batch != null) {
+            batch.addTeamMember(member.getEmail(), team.getEmail());
+            return;
+        }
+
+        unitOfWork.write(manager -> {
+            IndividualAuthors currentMember = require(manager.find(IndividualAuthors.class, member.getEmail()),
+                    "That author doesn't exist");
+            AdHocTeams currentTeam = require(manager.find(AdHocTeams.class, team.getEmail()),
+                    "That team does not exist");
+            if (!currentMember.getAdHocTeamsList().contains(currentTeam)) {
+                currentMember.addToAdHocTeamsList(currentTeam);
+                currentTeam.addToIndividualAuthorList(currentMember);
+            }
+        });
+    } // End of addTeamMember method
+
+    /** delete-book title|publisher name */
+    private void deleteBook(String[] fields) {
+        Books book = require(find(() -> bookClub.getBookByPublisher(fields[0], fields[1])), "That book doesn't exist");
+        if (batch != null) {
+            batch.deleteBook(book.getISBN());
+            return;
+        }
+        unitOfWork.write(manager -> {
+            Books current = manager.find(Books.class, book.getISBN());
+            // another client may have deleted it already
+            if (current != null) {
+                bookClub.deleteBook(current);
+            }
+        });
+    } // End of deleteBook method
+
+    /** delete-books publisher|name, delete-books author|email or delete-books years|first|last */
+    private void deleteBooks(String arguments, PrintWriter out) {
+        String by = arguments.split("\\" + FIELD_SEPARATOR, 2)[0].trim().toLowerCase(Locale.ROOT);
+        BookFilter filter;
+        switch (by) {
+            case "publisher":
+                filter = BookFilter.byPublisher(fields(arguments, 2)[1]);
+                break;
+            case "author":
+                filter = BookFilter.byAuthor(fields(arguments, 2)[1]);
+                break;
+            case "years":
+                String[] years = fields(arguments, 3);
+                filter = BookFilter.byYears(parseInt(years[1], "first year"), parseInt(years[2], "last year"));
+                break;
+            default:
+                throw new IllegalArgumentException("Expected publisher, author or years but got: " + by);
+        }
+
+        // the queued inserts may hold books that match
+        flushPending();
+        out.println(new BulkDeleter(entityManager).delete(filter));
+    } // End of deleteBooks method
+
+    /** reassign-author title|publisher name|new author email */
+    private void reassignAuthor(String[] fields) {
+        Books book = require(find(() -> bookClub.getBookByPublisher(fields[0], fields[1])), "That book doesn't exist");
+        AuthoringEntities newAuthor = require(find(() -> bookClub.getAuthor(fields[2])), "That author doesn't exist");
+        if (batch != null) {
+            batch.reassignAuthor(book.getISBN(), newAuthor.getEmail());
+            return;
+        }
+        unitOfWork.write(manager -> bookClub.reassignBook(
+                require(manager.find(Books.class, book.getISBN()), "That book doesn't exist"),
+                require(manager.find(AuthoringEntities.class, newAuthor.getEmail()), "That author doesn't exist")));
+    } // End of reassignAuthor method
+
+    /** reassign-books author email|new author email[|publisher|name][|years|first|last] */
+    private void reassignBooks(String arguments, PrintWriter out) {
+        String[] fields = arguments.split("\\" + FIELD_SEPARATOR, -1);
+        if (fields.length < 2)
+            throw new IllegalArgumentException("Expected the email of the author and of the new author");
+        for (int i = 0; i < fields.length; ++i) {
+            fields[i] = fields[i].trim();
+        }
+
+        BookFilter only = null;
+        for (int i = 2; i < fields.length; ) {
+            String by = fields[i].toLowerCase(Locale.ROOT);
+            if (by.equals("publisher") && i + 1 < fields.length) {
+                only = BookFilter.byPublisher(fields[i + 1]).and(only);
+                i += 2;
+            } else if (by.equals("years") && i + 2 < fields.length) {
+                only = BookFilter.byYears(parseInt(fields[i + 1], "first year"), parseInt(fields[i + 2], "last year"))
+                        .and(only);
+                i += 3;
+            } else {
+                throw new IllegalArgumentException("Expected publisher|name or years|first|last but got: " +
+                        String.join(FIELD_SEPARATOR, Arrays.copyOfRange(fields, i, fields.length)));
+            }
+        }
+
+        // the queued inserts may hold either author, or books to move
+        flushPending();
+        require(bookClub.getAuthor(fields[0]), "That author doesn't exist");
+        require(bookClub.getAuthor(fields[1]), "The new author doesn't exist");
+        out.println(new BulkReassigner(entityManager).reassign(fields[0], fields[1], only));
+    } // End of reassignBooks method
+
+    /** list-authors */
+    private void listAuthors(PrintWriter out) {
+        // the teams of the individual authors and the members of the teams are read in batches,
+        // rather than with one query per author as each one is printed
+        List<AuthoringEntities> authors = bookClub.getAllAuthors(FetchPlan.BATCH);
+        if (authors.isEmpty()) {
+            out.println("There are no authors.");
+        }
+        for (AuthoringEntities author : authors) {
+            out.println(author);
+        }
+    } // End of listAuthors method
+
+    /** list-keys publishers|books|authors */
+    private void listKeys(String table, PrintWriter out) {
+        PrimaryKeyLister lister = new PrimaryKeyLister(bookClub, out, PrimaryKeyLister.DEFAULT_PAGE_SIZE, null);
+
+        switch (table.toLowerCase(Locale.ROOT)) {
+            case "publishers":
+                lister.listPublishers();
+                break;
+            case "books":
+                lister.listBooks();
+                break;
+            case "authors":
+                lister.listAuthors();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown table: " + table);
+        }
+    } // End of listKeys method
+
+    /** search words */
+    private void search(String words, PrintWriter out) {
+        SearchIndex index = SearchIndex.of(entityManager.getEntityManagerFactory());
+        if (index == null)
+            throw new IllegalArgumentException("There is no search index");
+
+        List<SearchIndex.Hit> hits = index.search(words, SearchIndex.DEFAULT_LIMIT);
+        if (hits.isEmpty())
+            out.println("Nothing matches " + words);
+        hits.forEach(out::println);
+    } // End of search method
+
+    /** statistics[ publisher|name][ type|author type][ year|year][ rebuild] */
+    private void statistics(String arguments, PrintWriter out) {
+        CatalogStatistics statistics = CatalogStatistics.of(entityManager.getEntityManagerFactory());
+        if (statistics == null)
+            throw new IllegalArgumentException("There are no catalog statistics");
+
+        String by = arguments.split("\\" + FIELD_SEPARATOR, 2)[0].trim().toLowerCase(Locale.ROOT);
+        switch (by) {
+            case "":
+                out.println("Books: " + statistics.getBookCount());
+                statistics.getBookCountsPerAuthorType().forEach((type, count) -> out.println(type + ": " + count));
+                break;
+            case "publisher":
+                out.println(statistics.getBookCountOfPublisher(fields(arguments, 2)[1]));
+                break;
+            case "type":
+                out.println(statistics.getBookCountOfAuthorType(fields(arguments, 2)[1]));
+                break;
+            case "year":
+                out.println(statistics.getBookCountOfYear(parseInt(fields(arguments, 2)[1], "year")));
+                break;
+            case "rebuild":
+                statistics.rebuild(entityManager.getEntityManagerFactory());
+                out.println("Books: " + statistics.getBookCount());
+                break;
+            default:
+                throw new IllegalArgumentException("Expected publisher, type, year or rebuild but got: " + by);
+        }
+    } // End of statistics method
+
+    /** flush */
+    private void flush(PrintWriter out) {
+        if (batch == null)
+            throw new IllegalArgumentException("There is no batch to flush");
+
+        BatchSession.Flush flush = batch.flush();
+        out.println(flush == null ? "Nothing to flush" : flush.toString());
+        if (flush != null && !flush.getFailures().isEmpty())
+            throw new PersistenceException(flush.getFailures().size() + " of the queued operations failed");
+    } // End of flush method
+
+    /** Queues a new author in the batch, or persists it straight away if there is none. */
+    private void insert(AuthoringEntities author) {
+        if (batch != null)
+            batch.insert(author);
+        else
+            unitOfWork.write(manager -> manager.persist(author));
+    } // End of insert method
+
+    /** Returns true if an insert with the given unique key is waiting in the batch. */
+    private boolean isQueued(BatchSession.UniqueKey key, String... values) {
+        return batch != null && batch.isQueued(key, values);
+    } // End of isQueued method
+
+    /** Flushes the batch if anything is waiting in it; returns true if it was flushed. */
+    private boolean flushPending() {
+        if (batch == null || batch.getPending() == 0)
+            return false;
+        batch.flush();
+        return true;
+    } // End of flushPending method
+
+    /** Runs a lookup, and runs it again after flushing the batch if it finds nothing. */
+    private <T> T find(Supplier<T> lookup) {
+        T found = lookup.get();
+        return found == null && flushPending() ? lookup.get() : found;
+    } // End of find method
+
+    /**
+     * Splits the arguments of a command into exactly the expected number of fields.
+     * @throws IllegalArgumentException if there are more or fewer fields.
+     */
+    static String[] fields(String arguments, int count) {
+        String[] fields = arguments.split("\\" + FIELD_SEPARATOR, -1);
+
+        if (fields.length != count) {
+            throw new IllegalArgumentException("Expected " + count + " fields separated by '" +
+                    FIELD_SEPARATOR + "' but got " + fields.length + ": " + Arrays.toString(fields));
+        }
+        for (int i = 0; i < fields.length; ++i) {
+            fields[i] = fields[i].trim();
+        }
+        return fields;
+    } // End of fields method
+
+    /** Returns the value if it fits in the column; throws otherwise. */
+    private static String checkLength(String value, int maximum, String field) {
+        if (value.length() > maximum)
+            throw new IllegalArgumentException("The " + field + " exceeds the maximum character length (" +
+                    maximum + ")");
+        return value;
+    } // End of checkLength method
+
+    /** Returns the value as an integer; throws if it is not one. */
+    private static int parseInt(String value, String field) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The " + field + " is not an integer");
+        }
+    } // End of parseInt method
+
+    /** Returns the value if it is not null; throws with the message otherwise. */
+    private static <T> T require(T value, String message) {
+        if (value == null)
+            throw new IllegalArgumentException(message);
+        return value;
+    } // End of require method
+
+    /** Returns the author as the given type if it is one; throws with the message otherwise. */
+    private static <T extends AuthoringEntities> T requireType(AuthoringEntities author, Class<T> type,
+                                                               String message) {
+        if (!type.isInstance(author))
+            throw new IllegalArgumentException(message);
+        return type.cast(author);
+    } // End of requireType method
+} // End of CommandProcessor class
@@ -0,0 +1,285 @@
+package csulb.cecs323.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.DescriptorEvent;
+import org.eclipse.persistence.descriptors.DescriptorEventAdapter;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.UnitOfWork;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Keeps an in-memory structure of a factory, like the {@link SearchIndex} or the
+ * {@link CatalogStatistics}, in step with the entities written through the factory. Each insert,
+ * update and delete of an entity of the listened types is handed to a {@link Recorder}, which
+ * turns it into a change; the changes are kept against the unit of work that wrote them, run in
+ * order once it commits, and dropped if it rolls back or is released without committing.
+ * <p>
+ * The structures also share how they are kept: one per factory, in a property of its session
+ * ({@link #install} and {@link #of}), and, for those that can be built again from the database
+ * while changes keep coming, behind a {@link Rebuildable}.
+ * </p>
+ * <p>
+ * A change that is not the record of a write, like dropping an entity from the shared cache
+ * once the new version of it is there to be read, can be run after a commit too
+ * ({@link #afterCommit}).
+ * </p>
+ */
+final class CommitListener {
+    /**
+     * The ways an entity is written.
+     */
+    enum Write {
+        INSERT,
+        UPDATE,
+        DELETE
+    } // End of Write enum
+
+    /**
+     * Turns the write of an entity into a change to a structure.
+     */
+    @FunctionalInterface
+    interface Recorder {
+        /**
+         * Returns the change that a write makes, to run once its unit of work commits. The fields
+         * of the entity are to be read now, as they were written.
+         * @param unitOfWork    The unit of work that wrote the entity.
+         * @param entity        The entity.
+         * @param write         How it was written.
+         * @return              The change; null if the write changes nothing.
+         */
+        Runnable record(Session unitOfWork, Object entity, Write write);
+    } // End of Recorder interface
+
+    /**
+     * A structure that can be built again while changes keep being applied to it. The changes
+     * applied while a new one is built are applied to it again before it takes the old one's
+     * place, so applying a change twice must be harmless.
+     */
+    static final class Rebuildable<T> {
+        /** What the structure is, for the message of a rebuild that is already running. */
+        private final String name;
+
+        /** The current structure; replaced as a whole by a rebuild. */
+        private T current;
+
+        /** The changes applied while a rebuild builds, to apply again to what it built; null otherwise. */
+        private List<Consumer<T>> replay;
+
+        /**
+         * @param name      What the structure is, e.g. "ISBN index".
+         * @param initial   The structure to use until the first rebuild.
+         */
+        Rebuildable(String name, T initial) {
+            this.name = name;
+            this.current = initial;
+        }
+
+        /** Reads the current structure, with no change applied to it meanwhile. */
+        synchronized <R> R read(Function<T, R> reader) {
+            return reader.apply(current);
+        } // End of read method
+
+        /** Applies a change to the structure, and keeps it to apply again if a rebuild is running. */
+        synchronized void apply(Consumer<T> change) {
+            change.accept(current);
+            if (replay != null) {
+                replay.add(change);
+            }
+        } // End of apply method
+
+        /**
+         * Builds the structure again and puts it in place of the current one, which is used until
+         * then.
+         * @param build     Builds the new structure, from the database.
+         * @return          The new structure.
+         * @throws IllegalStateException if a rebuild is already running.
+         * @throws RuntimeException whatever the build throws; the current structure is kept.
+         */
+        T rebuild(Supplier<T> build) {
+            synchronized (this) {
+                if (replay != null)
+                    throw new IllegalStateException("The " + name + " is already being rebuilt");
+                replay = new ArrayList<>();
+            }
+
+            T built;
+            try {
+                built = build.get();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    replay = null;
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                replay.forEach(change -> change.accept(built));
+                replay = null;
+                current = built;
+            }
+            return built;
+        } // End of rebuild method
+    } // End of Rebuildable class
+
+    /** The session property that the changes run by {@link #afterCommit} are kept in. */
+    private static final String AFTER_COMMIT_PROPERTY = "bookclub.after-commit";
+
+    /** Turns the writes into changes; null for the changes run by {@link #afterCommit}. */
+    private final Recorder recorder;
+
+    /** The changes written by each unit of work that has not yet committed. */
+    private final Map<Session, List<Runnable>> uncommitted = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private CommitListener(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Registers the listeners that hand the writes of some entities to a recorder, and run the
+     * changes it returns when their unit of work commits.
+     * @param session   The session of the factory.
+     * @param recorder  Turns each write into a change.
+     * @param types     The entities listened to, with their subclasses.
+     */
+    static void listen(Session session, Recorder recorder, Class<?>... types) {
+        CommitListener listener = new CommitListener(recorder);
+        DescriptorEventAdapter writes = new DescriptorEventAdapter() {
+            @Override
+            public void postInsert(DescriptorEvent event) {
+                listener.record(event, Write.INSERT);
+            }
+
+            @Override
+            public void postUpdate(DescriptorEvent event) {
+                listener.record(event, Write.UPDATE);
+            }
+
+            @Override
+            public void postDelete(DescriptorEvent event) {
+                listener.record(event, Write.DELETE);
+            }
+        };
+        // the events of a subclass, e.g. WritingGroups, are only raised on its own descriptor
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            for (Class<?> type : types) {
+                if (type.isAssignableFrom(descriptor.getJavaClass())) {
+                    descriptor.getEventManager().addListener(writes);
+                    break;
+                }
+            }
+        }
+
+        listener.listenToCommits(session);
+    } // End of listen method
+
+    /** Registers the listener that runs the changes of each unit of work once it commits. */
+    private void listenToCommits(Session session) {
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                List<Runnable> changes = uncommitted.remove(event.getSession());
+                if (changes != null) {
+                    changes.forEach(Runnable::run);
+                }
+            }
+
+            @Override
+            public void postRollbackTransaction(SessionEvent event) {
+                uncommitted.remove(event.getSession());
+            }
+
+            @Override
+            public void postReleaseUnitOfWork(SessionEvent event) {
+                uncommitted.remove(event.getSession());
+            }
+        });
+    } // End of listenToCommits method
+
+    /** Records the change that a write makes, against the unit of work that wrote it. */
+    private void record(DescriptorEvent event, Write write) {
+        Runnable change = recorder.record(event.getSession(), event.getObject(), write);
+        if (change != null) {
+            keep(event.getSession(), change);
+        }
+    } // End of record method
+
+    /** Keeps a change to run once a unit of work commits. */
+    private void keep(Session unitOfWork, Runnable change) {
+        uncommitted.computeIfAbsent(unitOfWork, session -> Collections.synchronizedList(new ArrayList<>())).add(change);
+    } // End of keep method
+
+    /**
+     * Registers the listener that runs the changes of {@link #afterCommit}, unless the factory
+     * has it already. A unit of work only hears from the listeners that its factory had when the
+     * unit of work was begun, so this is done before the factory's EntityManagers are created.
+     * @param factory   The factory.
+     */
+    static void installAfterCommit(EntityManagerFactory factory) {
+        install(factory, AFTER_COMMIT_PROPERTY, CommitListener.class, session -> {
+            CommitListener listener = new CommitListener(null);
+            listener.listenToCommits(session);
+            return listener;
+        });
+    } // End of installAfterCommit method
+
+    /**
+     * Runs a change once the transaction of an EntityManager commits, and drops it if the
+     * transaction rolls back.
+     * @param manager   The EntityManager, in a transaction.
+     * @param change    The change.
+     * @return          false if the change will not be run, because the factory of the
+     *                  EntityManager has no {@link #installAfterCommit} listener.
+     */
+    static boolean afterCommit(EntityManager manager, Runnable change) {
+        CommitListener listener = of(manager.getEntityManagerFactory(), AFTER_COMMIT_PROPERTY, CommitListener.class);
+        if (listener == null) {
+            return false;
+        }
+        listener.keep(manager.unwrap(UnitOfWork.class), change);
+        return true;
+    } // End of afterCommit method
+
+    /**
+     * Creates the structure of a factory, unless it has one already, and keeps it in a property
+     * of the factory's session.
+     * @param factory   The factory.
+     * @param property  The session property that the structure is kept in.
+     * @param type      The type of the structure.
+     * @param create    Creates the structure; it should {@link #listen} before it reads the
+     *                  database, so that nothing written meanwhile is missed.
+     * @return          The structure the factory has.
+     */
+    static synchronized <T> T install(EntityManagerFactory factory, String property, Class<T> type,
+                                      Function<Session, T> create) {
+        T installed = of(factory, property, type);
+        if (installed == null) {
+            Session session = JpaHelper.getServerSession(factory);
+            installed = create.apply(session);
+            session.setProperty(property, installed);
+        }
+        return installed;
+    } // End of install method
+
+    /**
+     * Returns the structure of a factory.
+     * @return  The structure kept in the session property, or null if none has been installed.
+     */
+    static <T> T of(EntityManagerFactory factory, String property, Class<T> type) {
+        return type.cast(JpaHelper.getServerSession(factory).getProperty(property));
+    } // End of of method
+} // End of CommitListener class
@@ -0,0 +1,120 @@
+package csulb.cecs323.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Reads and writes single lines of comma separated values. Fields containing a comma, a quote or
+ * a line break are wrapped in double quotes, and embedded quotes are doubled ("").
+ * Quoted fields may not span more than one line.
+ */
+public final class CsvFormat {
+
+    /** The separator between two fields. */
+    public static final char SEPARATOR = ',';
+
+    /** The character used to quote a field. */
+    public static final char QUOTE = '"';
+
+    /** Utility class; never instantiated. */
+    private CsvFormat() {
+    } // End of private constructor
+
+    /**
+     * Splits one line of CSV into its fields.
+     * @param line  The line to split, without its line terminator.
+     * @return      The unquoted fields of the line.
+     * @throws IllegalArgumentException if a quoted field is not closed.
+     */
+    public static String[] parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); ++i) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == QUOTE) {
+                    // a doubled quote is an escaped quote; a single one closes the field
+                    if (i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+                        field.append(QUOTE);
+                        ++i;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == QUOTE) {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field: " + line);
+        }
+        fields.add(field.toString());
+
+        return fields.toArray(new String[0]);
+    } // End of parseLine method
+
+    /**
+     * Joins the fields into one line of CSV, quoting them where needed.
+     * @param fields    The fields to join; null values are written as empty fields.
+     * @return          The line, without a line terminator.
+     */
+    public static String formatLine(Object... fields) {
+        StringBuilder line = new StringBuilder();
+
+        for (int i = 0; i < fields.length; ++i) {
+            if (i > 0) {
+                line.append(SEPARATOR);
+            }
+            appendField(line, fields[i]);
+        }
+        return line.toString();
+    } // End of formatLine method
+
+    /**
+     * Appends a single field to the line being built, quoting it if needed.
+     * @param line  The line being built.
+     * @param value The value of the field; null is written as an empty field.
+     */
+    public static void appendField(StringBuilder line, Object value) {
+        if (value == null) {
+            return;
+        }
+
+        String text = value.toString();
+        boolean needsQuotes = false;
+
+        for (int i = 0; i < text.length() && !needsQuotes; ++i) {
+            char c = text.charAt(i);
+            needsQuotes = c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r';
+        }
+
+        if (!needsQuotes) {
+            line.append(text);
+            return;
+        }
+
+        line.append(QUOTE);
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == QUOTE) {
+                line.append(QUOTE);
+            }
+            line.append(c);
+        }
+        line.append(QUOTE);
+    } // End of appendField method
+} // End of CsvFormat class
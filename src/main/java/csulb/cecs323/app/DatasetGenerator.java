@@ -0,0 +1,355 @@
+package csulb.cecs323.app;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Generates a synthetic catalog of any size for capacity planning, as records in the bulk import
+ * format (see {@link BulkImporter}), parents first. The same seed always produces the same
+ * catalog, and nothing is remembered between records: every field of a row is worked out from
+ * the row's index and the seed, so the memory used does not depend on the size of the catalog.
+ * <p>
+ * The rows honor every unique constraint of the schema:
+ * </p>
+ * <ul>
+ *     <li>Book i is published by publisher (i mod P) under title slot (i div P), so no publisher
+ *     has two books with the same title (books_uk_01).</li>
+ *     <li>The books sharing a title slot are written by (slot * c + publisher) mod A, which is a
+ *     different author for every publisher as long as there are at least as many authors as
+ *     publishers (books_uk_02).</li>
+ *     <li>Phones, emails and ISBNs are one-to-one functions of the row index
+ *     (publishers_uk_01, publishers_uk_02 and the primary keys).</li>
+ * </ul>
+ */
+public class DatasetGenerator {
+    /** The fraction of authoring entities that are individual authors. */
+    private static final double INDIVIDUAL_AUTHOR_SHARE = 0.7;
+
+    /** The fraction of authoring entities that are writing groups; the rest are ad hoc teams. */
+    private static final double WRITING_GROUP_SHARE = 0.15;
+
+    /** The fewest and most members of an ad hoc team. */
+    private static final int MIN_TEAM_SIZE = 2, MAX_TEAM_SIZE = 5;
+
+    /** Spreads the authors of one title slot across the authors; any value works. */
+    private static final long AUTHOR_STRIDE = 7919;
+
+    /** A multiplier coprime with 10^9, making the ISBN numbering a permutation of the index. */
+    private static final long ISBN_MULTIPLIER = 387_420_489L;
+
+    private static final String[] ADJECTIVES = {
+            "Silent", "Broken", "Hidden", "Last", "Golden", "Distant", "Burning", "Frozen", "Crimson",
+            "Forgotten", "Endless", "Hollow", "Shattered", "Quiet", "Wandering", "Bitter", "Lost",
+            "Secret", "Restless", "Ancient", "Electric", "Paper", "Midnight", "Second", "Northern"
+    };
+
+    private static final String[] NOUNS = {
+            "River", "Empire", "Garden", "Winter", "Kingdom", "Machine", "Harbor", "Orchard", "Mirror",
+            "Signal", "Compass", "Lantern", "Archive", "Frontier", "Tide", "Covenant", "Station",
+            "Cathedral", "Meridian", "Labyrinth", "Horizon", "Atlas", "Ember", "Citadel", "Prophecy"
+    };
+
+    private static final String[] PATTERNS = {
+            "The %s %s", "%s %s", "A %s %s", "Tales of the %s %s", "The %s %s Affair",
+            "Beyond the %s %s", "Songs of a %s %s", "The %s %s Chronicles"
+    };
+
+    private static final String[] FIRST_NAMES = {
+            "Ada", "Ben", "Carmen", "Dmitri", "Elena", "Farah", "Gustav", "Hana", "Ines", "Jamal",
+            "Kofi", "Lena", "Mateo", "Nadia", "Omar", "Priya", "Quinn", "Rosa", "Sven", "Tomas",
+            "Uma", "Viktor", "Wen", "Ximena", "Yusuf", "Zara"
+    };
+
+    private static final String[] LAST_NAMES = {
+            "Abbott", "Brennan", "Castillo", "Dubois", "Eriksen", "Fischer", "Garcia", "Haddad",
+            "Ito", "Jensen", "Kowalski", "Lindqvist", "Moreau", "Nakamura", "Okafor", "Petrov",
+            "Quintero", "Rossi", "Sato", "Takahashi", "Ueda", "Varga", "Walsh", "Xu", "Yilmaz", "Zhou"
+    };
+
+    private static final String[] PUBLISHER_SUFFIXES = {"Press", "Books", "Publishing", "House", "Editions"};
+
+    /** The number of distinct titles the word lists can make before a volume number is added. */
+    private static final long TITLE_SPACE = (long) ADJECTIVES.length * NOUNS.length * PATTERNS.length;
+
+    /** The number of books, publishers and authoring entities generated. */
+    private final int books, publishers, authors;
+
+    /** The number of individual authors and writing groups; ad hoc teams make up the rest. */
+    private final int individualAuthors, writingGroups;
+
+    /** The seed that every generated value is derived from. */
+    private final long seed;
+
+    /**
+     * Generates a catalog with a thousand books per publisher and twenty per authoring entity.
+     * @param books The number of books.
+     * @param seed  The seed that every generated value is derived from.
+     */
+    public DatasetGenerator(int books, long seed) {
+        this(books, Math.max(1, books / 1000), Math.max(Math.max(1, books / 1000), books / 20), seed);
+    }
+
+    /**
+     * @param books         The number of books.
+     * @param publishers    The number of publishers.
+     * @param authors       The number of authoring entities; at least as many as the publishers.
+     * @param seed          The seed that every generated value is derived from.
+     */
+    public DatasetGenerator(int books, int publishers, int authors, long seed) {
+        if (books < 0 || publishers < 1 || authors < 1) {
+            throw new IllegalArgumentException("There must be at least one publisher and one author");
+        }
+        if (authors < publishers) {
+            // otherwise two publishers' books with the same title would need the same author
+            throw new IllegalArgumentException("There must be at least as many authors (" + authors +
+                    ") as publishers (" + publishers + ")");
+        }
+
+        this.books = books;
+        this.publishers = publishers;
+        this.authors = authors;
+        this.seed = seed;
+
+        // an ad hoc team needs individual authors to draw its members from
+        this.individualAuthors = Math.max(Math.min(authors, MAX_TEAM_SIZE),
+                (int) Math.round(authors * INDIVIDUAL_AUTHOR_SHARE));
+        this.writingGroups = Math.min(authors - individualAuthors, (int) Math.round(authors * WRITING_GROUP_SHARE));
+    }
+
+    /** Returns the number of books generated. */
+    public int getBookCount() {
+        return books;
+    } // End of getBookCount method
+
+    /** Returns the number of publishers generated. */
+    public int getPublisherCount() {
+        return publishers;
+    } // End of getPublisherCount method
+
+    /** Returns the number of authoring entities generated. */
+    public int getAuthorCount() {
+        return authors;
+    } // End of getAuthorCount method
+
+    /* Publishers */
+
+    /** Returns the name (primary key) of the publisher with the given index. */
+    public String publisherName(int publisher) {
+        long value = mix(1, publisher);
+        String name = LAST_NAMES[(int) (value % LAST_NAMES.length)] + " & " +
+                LAST_NAMES[(int) ((value >>> 8) % LAST_NAMES.length)] + " " +
+                PUBLISHER_SUFFIXES[(int) ((value >>> 16) % PUBLISHER_SUFFIXES.length)];
+        // the words alone repeat; the index keeps the name unique
+        return name + " " + publisher;
+    } // End of publisherName method
+
+    /** Returns the phone number (unique) of the publisher with the given index. */
+    public String publisherPhone(int publisher) {
+        long number = 2_000_000_000L + publisher;
+        return String.format("1-%03d-%03d-%04d", number / 10_000_000, number / 10_000 % 1000, number % 10_000);
+    } // End of publisherPhone method
+
+    /** Returns the email (unique) of the publisher with the given index. */
+    public String publisherEmail(int publisher) {
+        return "contact@publisher" + publisher + ".example";
+    } // End of publisherEmail method
+
+    /* Authoring entities */
+
+    /** Returns the email (primary key) of the authoring entity with the given index. */
+    public String authorEmail(int author) {
+        return "a" + author + "@authors.example";
+    } // End of authorEmail method
+
+    /** Returns the Authoring_Entity_Type of the authoring entity with the given index. */
+    public String authorType(int author) {
+        if (author < individualAuthors)
+            return "IndividualAuthors";
+        if (author < individualAuthors + writingGroups)
+            return "WritingGroups";
+        return "AdHocTeams";
+    } // End of authorType method
+
+    /** Returns the name of the authoring entity with the given index. */
+    public String authorName(int author) {
+        long value = mix(2, author);
+        String type = authorType(author);
+
+        if (type.equals("IndividualAuthors"))
+            return personName(value);
+        if (type.equals("WritingGroups"))
+            return "The " + NOUNS[(int) (value % NOUNS.length)] + " Collective";
+        return ADJECTIVES[(int) (value % ADJECTIVES.length)] + " " + NOUNS[(int) ((value >>> 8) % NOUNS.length)] + " Team";
+    } // End of authorName method
+
+    /* Books */
+
+    /** Returns the ISBN (primary key) of the book with the given index: a valid ISBN-13. */
+    public String isbn(int book) {
+        long body = (book * ISBN_MULTIPLIER + seedOffset()) % 1_000_000_000L;
+        String digits = String.format("978%09d", body);
+
+        // ISBN-13 check digit: weights alternate 1 and 3
+        int sum = 0;
+        for (int i = 0; i < 12; ++i) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    } // End of isbn method
+
+    /** Returns the title of the book with the given index. */
+    public String title(int book) {
+        long slot = (long) book / publishers;
+        // a seeded rotation of the title slots is still one-to-one
+        long combination = (slot + seedOffset()) % TITLE_SPACE;
+        long volume = slot / TITLE_SPACE;
+
+        String adjective = ADJECTIVES[(int) (combination % ADJECTIVES.length)];
+        combination /= ADJECTIVES.length;
+        String noun = NOUNS[(int) (combination % NOUNS.length)];
+        combination /= NOUNS.length;
+        String title = String.format(PATTERNS[(int) combination], adjective, noun);
+
+        return volume == 0 ? title : title + ", Volume " + (volume + 1);
+    } // End of title method
+
+    /** Returns the year the book with the given index was published. */
+    public int yearPublished(int book) {
+        return 1900 + (int) (mix(3, book) % 125);
+    } // End of yearPublished method
+
+    /** Returns the index of the publisher of the book with the given index. */
+    public int publisherOf(int book) {
+        return book % publishers;
+    } // End of publisherOf method
+
+    /** Returns the index of the author of the book with the given index. */
+    public int authorOf(int book) {
+        long slot = (long) book / publishers;
+        return (int) ((slot * AUTHOR_STRIDE + publisherOf(book)) % authors);
+    } // End of authorOf method
+
+    /* Ad hoc teams */
+
+    /** Returns the number of members of the ad hoc team with the given author index. */
+    public int teamSize(int team) {
+        int range = Math.min(MAX_TEAM_SIZE, individualAuthors) - MIN_TEAM_SIZE + 1;
+        return range < 1 ? individualAuthors : MIN_TEAM_SIZE + (int) (mix(4, team) % range);
+    } // End of teamSize method
+
+    /** Returns the author index of the given member of the ad hoc team with the given author index. */
+    public int teamMember(int team, int member) {
+        // consecutive individual authors are always distinct, so no one joins a team twice
+        return (int) ((mix(5, team) % individualAuthors + member) % individualAuthors);
+    } // End of teamMember method
+
+    /**
+     * Returns every record of the catalog, parents first, without holding any of them.
+     * @return  The records in the bulk import format.
+     */
+    public Iterator<String[]> records() {
+        return new Iterator<String[]>() {
+            private int publisher = 0, author = 0, book = 0;
+            private int team = individualAuthors + writingGroups, member = 0;
+
+            @Override
+            public boolean hasNext() {
+                skipEmptyTeams();
+                return publisher < publishers || author < authors || book < books || team < authors;
+            }
+
+            @Override
+            public String[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                if (publisher < publishers) {
+                    int p = publisher++;
+                    return new String[] {"publisher", publisherName(p), publisherPhone(p), publisherEmail(p)};
+                }
+
+                if (author < authors) {
+                    return authorRecord(author++);
+                }
+
+                if (book < books) {
+                    int b = book++;
+                    return new String[] {"book", isbn(b), title(b), Integer.toString(yearPublished(b)),
+                            authorEmail(authorOf(b)), publisherName(publisherOf(b))};
+                }
+
+                String[] record = {"team_member", authorEmail(teamMember(team, member)), authorEmail(team)};
+                ++member;
+                return record;
+            }
+
+            /** Moves on to the next team once every member of the current one is written. */
+            private void skipEmptyTeams() {
+                while (team < authors && member >= teamSize(team)) {
+                    ++team;
+                    member = 0;
+                }
+            } // End of skipEmptyTeams method
+        };
+    } // End of records method
+
+    /**
+     * Writes every record of the catalog as CSV in the bulk import format.
+     * @param out   Where the records are written; it is flushed but not closed.
+     * @return      The number of records written.
+     * @throws IOException if the records cannot be written.
+     */
+    public long write(Writer out) throws IOException {
+        BufferedWriter writer = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out);
+        long count = 0;
+
+        for (Iterator<String[]> records = records(); records.hasNext(); ++count) {
+            writer.write(CsvFormat.formatLine((Object[]) records.next()));
+            writer.newLine();
+        }
+
+        writer.flush();
+        return count;
+    } // End of write method
+
+    /** Returns the bulk import record of the authoring entity with the given index. */
+    private String[] authorRecord(int author) {
+        String type = authorType(author);
+
+        if (type.equals("IndividualAuthors"))
+            return new String[] {"individual_author", authorName(author), authorEmail(author)};
+        if (type.equals("WritingGroups"))
+            return new String[] {"writing_group", authorName(author), authorEmail(author),
+                    personName(mix(6, author)), Integer.toString(1950 + (int) (mix(7, author) % 70))};
+        return new String[] {"ad_hoc_team", authorName(author), authorEmail(author)};
+    } // End of authorRecord method
+
+    /** Returns a person's name picked by the given random value. */
+    private static String personName(long value) {
+        return FIRST_NAMES[(int) (value % FIRST_NAMES.length)] + " " +
+                LAST_NAMES[(int) ((value >>> 8) % LAST_NAMES.length)];
+    } // End of personName method
+
+    /** Returns a value derived from the seed, used to rotate the one-to-one numberings. */
+    private long seedOffset() {
+        return Math.floorMod(seed, 1_000_000_000L);
+    } // End of seedOffset method
+
+    /**
+     * Returns a well mixed, non negative random value for the given field of the given row.
+     * This is the finalizer of SplitMix64, so the same inputs always give the same value.
+     */
+    private long mix(int field, long index) {
+        long z = seed + field * 0x9E3779B97F4A7C15L + index * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31)) >>> 1;
+    } // End of mix method
+} // End of DatasetGenerator class
@@ -0,0 +1,168 @@
+package csulb.cecs323.app;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.apache.derby.drda.NetworkServerControl;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Lets several BookClub processes share one catalog through a Derby Network Server, rather than
+ * each opening the database files itself, which the lock that embedded Derby takes on them
+ * allows only one process at a time to do. Picked with {@code -Dbookclub.database=network} (see
+ * {@link Bootstrap.Database}); every process then reaches the database through the Derby client
+ * driver and a bounded pool of connections.
+ * <p>
+ * If no server is listening yet, the first process starts one inside itself, and the server stops
+ * when that process exits, cutting off the others. For a catalog that outlives any one client,
+ * run a server of its own with the {@code database-server} command instead.
+ * </p>
+ * <p>
+ * Read from system properties, as they are needed before the persistence unit is loaded:
+ * </p>
+ * <ul>
+ *     <li>{@value #HOST} - the host the server listens on (default {@value #DEFAULT_HOST})</li>
+ *     <li>{@value #PORT} - its port (default {@value #DEFAULT_PORT})</li>
+ *     <li>{@value #NAME} - the path of the database, relative to the directory the server was
+ *     started in (default {@value #DEFAULT_NAME}, the one the embedded driver opens)</li>
+ *     <li>{@value #POOL_SIZE} - the most connections this process holds open to the server
+ *     (default {@value #DEFAULT_POOL_SIZE})</li>
+ *     <li>{@value #START_SERVER} - false to fail, rather than start a server, if none is
+ *     listening</li>
+ * </ul>
+ */
+public final class DerbyNetworkServer {
+    /** The system property holding the host of the server. */
+    public static final String HOST = "bookclub.database.host";
+
+    /** The system property holding the port of the server. */
+    public static final String PORT = "bookclub.database.port";
+
+    /** The system property holding the path of the database on the server. */
+    public static final String NAME = "bookclub.database.name";
+
+    /** The system property holding the size of the connection pool. */
+    public static final String POOL_SIZE = "bookclub.database.pool-size";
+
+    /** The system property that, when false, keeps a client from starting a server. */
+    public static final String START_SERVER = "bookclub.database.start-server";
+
+    /** The host used when none is configured; the server accepts local connections only. */
+    public static final String DEFAULT_HOST = "localhost";
+
+    /** The port used when none is configured; Derby's own default. */
+    public static final int DEFAULT_PORT = NetworkServerControl.DEFAULT_PORTNUMBER;
+
+    /** The database used when none is configured. */
+    public static final String DEFAULT_NAME = "database/BookClub";
+
+    /** The number of pooled connections when none is configured. */
+    public static final int DEFAULT_POOL_SIZE = 8;
+
+    /** The number of prepared statements kept per pooled connection. */
+    private static final int STATEMENT_CACHE_SIZE = 100;
+
+    /** How long a server that was just started is given to answer. */
+    private static final long START_TIMEOUT_MILLIS = 10_000;
+
+    private static final Logger LOGGER = Logger.getLogger(DerbyNetworkServer.class.getName());
+
+    private DerbyNetworkServer() {
+    } // End of private constructor
+
+    /**
+     * Returns the persistence unit properties that reach the configured database through the
+     * network server, starting the server first if it is not running and that is allowed.
+     * @throws IllegalStateException if no server is running and none can be started.
+     */
+    public static Map<String, Object> clientProperties() {
+        String host = System.getProperty(HOST, DEFAULT_HOST);
+        int port = Integer.getInteger(PORT, DEFAULT_PORT);
+
+        if (!isRunning(host, port)) {
+            if (!Boolean.parseBoolean(System.getProperty(START_SERVER, "true"))) {
+                throw new IllegalStateException("No Derby Network Server is listening on " + host + ":" + port);
+            }
+            start(host, port);
+            LOGGER.info("Started a Derby Network Server on " + host + ":" + port +
+                    "; the other clients lose it when this process exits");
+        }
+        return clientProperties(host, port, System.getProperty(NAME, DEFAULT_NAME),
+                Integer.getInteger(POOL_SIZE, DEFAULT_POOL_SIZE));
+    } // End of clientProperties method
+
+    /**
+     * Returns the persistence unit properties that reach a database through a network server.
+     * @param host      The host of the server.
+     * @param port      The port of the server.
+     * @param name      The path of the database on the server; it is created if it is missing.
+     * @param poolSize  The most connections held open to the server.
+     */
+    public static Map<String, Object> clientProperties(String host, int port, String name, int poolSize) {
+        // the same bounds the socket server sizes its pool with, one connection per worker
+        Map<String, Object> properties = BookClubServer.connectionPoolProperties(poolSize);
+        properties.put(PersistenceUnitProperties.JDBC_DRIVER, "org.apache.derby.jdbc.ClientDriver");
+        properties.put(PersistenceUnitProperties.JDBC_URL, "jdbc:derby://" + host + ":" + port + "/" + name +
+                ";create=true");
+        // preparing a statement costs a round trip to the server; keep them prepared per connection
+        properties.put(PersistenceUnitProperties.CACHE_STATEMENTS, "true");
+        properties.put(PersistenceUnitProperties.CACHE_STATEMENTS_SIZE, Integer.toString(STATEMENT_CACHE_SIZE));
+        return properties;
+    } // End of clientProperties method
+
+    /** Returns true if a network server answers on a host and port. */
+    public static boolean isRunning(String host, int port) {
+        try {
+            new NetworkServerControl(InetAddress.getByName(host), port).ping();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    } // End of isRunning method
+
+    /**
+     * Starts a network server inside this process, and waits until it answers. It is shut down
+     * when the JVM exits.
+     * @param host      The host to listen on.
+     * @param port      The port to listen on.
+     * @return          The running server.
+     * @throws IllegalStateException if the server does not start.
+     */
+    public static NetworkServerControl start(String host, int port) {
+        NetworkServerControl server;
+        try {
+            server = new NetworkServerControl(InetAddress.getByName(host), port);
+            // the server reports its errors in derby.log, as the embedded engine does
+            server.start(null);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not start a Derby Network Server on " + host + ":" + port, e);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(START_TIMEOUT_MILLIS);
+        while (!isRunning(host, port)) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("The Derby Network Server on " + host + ":" + port +
+                        " did not answer within " + START_TIMEOUT_MILLIS + " ms");
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while starting the Derby Network Server", e);
+            }
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.shutdown();
+            } catch (Exception e) {
+                // the process is exiting anyway; Derby recovers the database on its next boot
+            }
+        }, "derby-network-server-shutdown"));
+        return server;
+    } // End of start method
+} // End of DerbyNetworkServer class
@@ -0,0 +1,39 @@
+package csulb.cecs323.app;
+
+import javax.persistence.TypedQuery;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * How a query reads the relationships of its results, so that showing a list of entities does
+ * not cost one SELECT per entity.
+ */
+public enum FetchPlan {
+    /** Each relationship is read for all the results at once, with a "WHERE key IN (...)" query. */
+    BATCH;
+
+    /** The most owners whose relationship is read by a single batch query. */
+    public static final int BATCH_SIZE = 500;
+
+    /**
+     * Applies this plan to a JPQL query.
+     * @param query The query to apply the plan to.
+     * @param paths The relationships to read, through the query's identification variable,
+     *              e.g. "b.author".
+     * @return      The query, for chaining.
+     */
+    public <T> TypedQuery<T> apply(TypedQuery<T> query, String... paths) {
+        for (String path : paths) {
+            query.setHint(QueryHints.BATCH, path);
+        }
+
+        if (paths.length > 0) {
+            query.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+            query.setHint(QueryHints.BATCH_SIZE, BATCH_SIZE);
+        }
+        return query;
+    } // End of apply method
+} // End of FetchPlan enum
@@ -10,6 +10,21 @@ import java.util.Scanner;
  * Performs various functions which are repeatable.
  */
 public class Functions {
+    /**
+     * The one Scanner of the console. A Scanner reads ahead into a buffer of its own, so a second
+     * Scanner of System.in would lose whatever the first had already buffered, e.g. the rest of a
+     * piped input.
+     */
+    private static final Scanner INPUT = new Scanner(System.in);
+
+    /**
+     * Returns the Scanner that every prompt of the console reads from.
+     * @return  The shared Scanner of System.in.
+     */
+    public static Scanner input() {
+        return INPUT;
+    } // End of input method
+
     /**
      * Prints the main menu options and returns the user's validated input.
      * @return  The validated integer indicating the user's choice.
@@ -25,10 +40,11 @@ public class Functions {
                 "\n  3) Delete a book"  +
                 "\n  4) Update a book" +
                 "\n  5) List the primary keys" +
+                "\n  6) Search by title or name" +
                 "\n  0) Quit the program" +
                 "\n >> ");
 
-        return checkIntRange(0, 5);
+        return checkIntRange(0, 6);
     } // End of checkMainMenuInput method
 
     /**
@@ -89,12 +105,11 @@ public class Functions {
      * @return the valid input.
      */
     public static int checkIntRange(int low, int high) {
-        Scanner in = new Scanner(System.in);
         boolean valid = false;
         int inputToInt = 0;
 
         while (!valid) {
-            String input = in.nextLine();
+            String input = INPUT.nextLine();
 
             try {
                 // if the input is not an int, it will trigger a NumberFormatException
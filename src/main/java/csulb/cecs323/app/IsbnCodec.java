@@ -0,0 +1,120 @@
+package csulb.cecs323.app;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Reads ISBNs as they are typed, in their ISBN-10 or ISBN-13 form, with or without hyphens or
+ * spaces between the groups, checks their check digits, and turns them into one canonical value:
+ * the 13 digits of the ISBN-13 as a long. "0-13-110362-8", "013110362-8" and "978-0131103627"
+ * are all 9780131103627. An ISBN-10 becomes the ISBN-13 with the 978 prefix that it was assigned.
+ * <p>
+ * Reading allocates nothing, so it can sit on the lookup path of every book. Anything that is not
+ * a valid ISBN, such as the shorter keys of the seed data, reads as {@link #INVALID}; it is left
+ * as it was typed, and is still a usable key of BOOKS.
+ * </p>
+ */
+public final class IsbnCodec {
+    /** The value of anything that is not a valid ISBN; no ISBN-13 is negative. */
+    public static final long INVALID = -1L;
+
+    /** The EAN prefix that every ISBN-10 is given in its ISBN-13 form. */
+    private static final long BOOKLAND_978 = 978L;
+
+    /** The other EAN prefix of ISBN-13s, which has no ISBN-10 form. */
+    private static final long BOOKLAND_979 = 979L;
+
+    /** The value of ten digits, to take the prefix off a 13 digit number. */
+    private static final long TEN_DIGITS = 10_000_000_000L;
+
+    private IsbnCodec() {
+    } // End of private constructor
+
+    /**
+     * Reads an ISBN-10 or ISBN-13.
+     * @param isbn  The ISBN, with or without hyphens or spaces between its groups.
+     * @return      The 13 digits of its ISBN-13 form; {@link #INVALID} if it is not an ISBN, or its
+     *              check digit is wrong.
+     */
+    public static long encode(CharSequence isbn) {
+        long digits = 0;
+        // the first nine digits, which an ISBN-10 keeps in its ISBN-13 form
+        long body = 0;
+        int count = 0;
+        // the weighted sums of both forms are kept as the digits are read, to check whichever it is
+        int sum10 = 0, sum13 = 0;
+        boolean checkIsTen = false;
+
+        for (int i = 0; i < isbn.length(); ++i) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            int digit;
+            if (checkIsTen) {
+                return INVALID;
+            } else if (c >= '0' && c <= '9' && count < 13) {
+                digit = c - '0';
+            } else if ((c == 'X' || c == 'x') && count == 9) {
+                // only the check digit of an ISBN-10 can be ten, so nothing may follow it
+                digit = 10;
+                checkIsTen = true;
+            } else {
+                return INVALID;
+            }
+
+            if (count == 9) {
+                body = digits;
+            }
+            sum10 += digit * (10 - count);
+            sum13 += digit * (count % 2 == 0 ? 1 : 3);
+            digits = digits * 10 + digit;
+            ++count;
+        }
+
+        if (count == 13) {
+            long prefix = digits / TEN_DIGITS;
+            return (prefix == BOOKLAND_978 || prefix == BOOKLAND_979) && sum13 % 10 == 0 ? digits : INVALID;
+        }
+        if (count == 10 && sum10 % 11 == 0) {
+            // the body keeps its nine digits; the check digit is worked out again for the new prefix
+            long twelve = BOOKLAND_978 * 1_000_000_000L + body;
+            return twelve * 10 + checkDigit13(twelve);
+        }
+        return INVALID;
+    } // End of encode method
+
+    /** Returns true if the text is a valid ISBN-10 or ISBN-13. */
+    public static boolean isValid(CharSequence isbn) {
+        return encode(isbn) != INVALID;
+    } // End of isValid method
+
+    /**
+     * Writes a value read by {@link #encode} as its 13 digits, without hyphens, as new books are
+     * stored.
+     */
+    public static String format(long isbn) {
+        if (isbn == INVALID)
+            throw new IllegalArgumentException("Not an ISBN");
+        return Long.toString(isbn);
+    } // End of format method
+
+    /**
+     * Returns the canonical form of an ISBN, the 13 digits of its ISBN-13; anything that is not a
+     * valid ISBN is returned as it is.
+     */
+    public static String normalize(String isbn) {
+        long value = encode(isbn);
+        return value == INVALID ? isbn : format(value);
+    } // End of normalize method
+
+    /** Returns the check digit of an ISBN-13 from its first twelve digits. */
+    private static int checkDigit13(long twelve) {
+        int sum = 0;
+        // from the last of the twelve digits, whose weight is 3, back to the first
+        for (int weight = 3; twelve > 0; twelve /= 10, weight = 4 - weight) {
+            sum += (int) (twelve % 10) * weight;
+        }
+        return (10 - sum % 10) % 10;
+    } // End of checkDigit13 method
+} // End of IsbnCodec class
@@ -0,0 +1,358 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Books;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Knows the ISBN of every book whose key is a valid ISBN, by its canonical value (see
+ * {@link IsbnCodec}), so that {@link BookClub#getBook} finds a book whichever form of its ISBN is
+ * typed, and answers for a book that does not exist without going to the database.
+ * <p>
+ * An ISBN-13 always starts with 978 or 979 and ends with a check digit that the other digits
+ * decide, which leaves fewer than two billion of them: each one is kept as an int, in an open
+ * addressing table of primitive ints that is never more than three quarters full, so a book takes
+ * between 5 and 11 bytes and a lookup makes no objects at all. The few books stored under some
+ * other form of their ISBN, e.g. "0-13-110362-8", have that key kept beside the table; so does
+ * every form of an ISBN stored under more than one, e.g. by two legacy rows, and the ISBN stays
+ * in the table until the last of them is deleted. Keys that are not ISBNs at all, like those of
+ * the seed data, are not indexed; they are looked up as typed.
+ * </p>
+ * <p>
+ * The index is built by {@link #install} from a scan of the ISBNs, and kept up to date like the
+ * {@link CatalogStatistics}: by the insert and delete events of the books, applied once their
+ * transaction commits, and by the writers that go around the entities, through {@link #putBook}
+ * and {@link #removeBook}. Only then can a book missing from it be taken not to exist, so with a
+ * database shared through a network server, whose other clients write books this process never
+ * hears about, a miss is checked in the database after all (see {@link #isExhaustive()}).
+ * </p>
+ */
+public final class IsbnIndex {
+    /** The session property that the index of a factory is kept in. */
+    private static final String PROPERTY = "bookclub.isbn-index";
+
+    /** The number of ISBNs read per round trip while the index is built. */
+    private static final int FETCH_SIZE = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(IsbnIndex.class.getName());
+
+    /**
+     * The ISBNs, as ints, in an open addressing table with linear probing.
+     */
+    private static final class Table {
+        /** The value of an empty slot; no ISBN packs to a negative int. */
+        private static final int EMPTY = -1;
+
+        /** The smallest number of slots, a power of two. */
+        private static final int MIN_CAPACITY = 1 << 10;
+
+        private int[] slots = newSlots(MIN_CAPACITY);
+        private int size;
+
+        /**
+         * The stored keys of each ISBN that is stored under any other form than its canonical
+         * one, the canonical form among them if it is stored too. An ISBN stored only in its
+         * canonical form has no entry.
+         */
+        private final Map<Integer, List<String>> aliases = new HashMap<>();
+
+        /** Returns true if the table holds an ISBN. */
+        private boolean contains(long isbn) {
+            int packed = pack(isbn);
+            return slots[find(packed)] == packed;
+        } // End of contains method
+
+        /** Returns a key that a book with an ISBN is stored under; null if there is none. */
+        private String keyOf(long isbn) {
+            return contains(isbn) ? keysOf(isbn).get(0) : null;
+        } // End of keyOf method
+
+        /** Returns the keys that the books with an ISBN the table holds are stored under. */
+        private List<String> keysOf(long isbn) {
+            List<String> keys = aliases.get(pack(isbn));
+            return keys != null ? keys : Collections.singletonList(IsbnCodec.format(isbn));
+        } // End of keysOf method
+
+        /** Adds a book, under the key it is stored with; adding the same key again changes nothing. */
+        private void put(long isbn, String key) {
+            int packed = pack(isbn);
+            int slot = find(packed);
+            if (slots[slot] != packed) {
+                slots[slot] = packed;
+                if (!isCanonical(key)) {
+                    aliases.put(packed, Collections.singletonList(key));
+                }
+                // grow at three quarters full, so a probe seldom runs long
+                if (++size > slots.length - (slots.length >>> 2)) {
+                    resize(slots.length << 1);
+                }
+                return;
+            }
+
+            List<String> keys = keysOf(isbn);
+            if (!keys.contains(key)) {
+                List<String> more = new ArrayList<>(keys);
+                more.add(key);
+                aliases.put(packed, more);
+            }
+        } // End of put method
+
+        /**
+         * Takes the book stored under a key out of the table. The ISBN stays in it while a book
+         * is stored under another form of it.
+         */
+        private void remove(long isbn, String key) {
+            int packed = pack(isbn);
+            int slot = find(packed);
+            if (slots[slot] != packed) {
+                return;
+            }
+            List<String> keys = keysOf(isbn);
+            if (!keys.contains(key)) {
+                return;
+            }
+            if (keys.size() > 1) {
+                List<String> rest = new ArrayList<>(keys);
+                rest.remove(key);
+                if (rest.size() == 1 && isCanonical(rest.get(0))) {
+                    aliases.remove(packed);
+                } else {
+                    aliases.put(packed, rest);
+                }
+                return;
+            }
+            aliases.remove(packed);
+            --size;
+
+            // move back any ISBN after the hole that would no longer be found past it
+            int mask = slots.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; slots[next] != EMPTY; next = (next + 1) & mask) {
+                int home = home(slots[next]);
+                boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+                if (!reachable) {
+                    slots[hole] = slots[next];
+                    hole = next;
+                }
+            }
+            slots[hole] = EMPTY;
+        } // End of remove method
+
+        /** Returns the slot that holds an ISBN, or the empty slot where it would go. */
+        private int find(int isbn) {
+            int mask = slots.length - 1;
+            int slot = home(isbn);
+            while (slots[slot] != EMPTY && slots[slot] != isbn) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        } // End of find method
+
+        /** Returns the slot that an ISBN is put in when it is free. */
+        private int home(int isbn) {
+            // the ISBNs of a catalog are often close together; spread them over the whole table
+            return (isbn * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(slots.length) + 1);
+        } // End of home method
+
+        private void resize(int capacity) {
+            int[] old = slots;
+            slots = newSlots(capacity);
+            for (int isbn : old) {
+                if (isbn != EMPTY) {
+                    slots[find(isbn)] = isbn;
+                }
+            }
+        } // End of resize method
+
+        private static int[] newSlots(int capacity) {
+            int[] slots = new int[capacity];
+            Arrays.fill(slots, EMPTY);
+            return slots;
+        } // End of newSlots method
+    } // End of Table class
+
+    /** The table; replaced as a whole by a rebuild. */
+    private final CommitListener.Rebuildable<Table> table = new CommitListener.Rebuildable<>("ISBN index", new Table());
+
+    /** False if other processes write to the database too, so a book the index lacks may exist. */
+    private final boolean exhaustive;
+
+    private IsbnIndex(boolean exhaustive) {
+        this.exhaustive = exhaustive;
+    }
+
+    /**
+     * Indexes the ISBNs of a factory's books and keeps the index up to date with the changes made
+     * through the factory from then on. A factory has one index; installing it again returns it.
+     * @param factory   The factory whose books are indexed.
+     * @return          The index.
+     * @throws PersistenceException if the books cannot be read.
+     */
+    public static IsbnIndex install(EntityManagerFactory factory) {
+        return CommitListener.install(factory, PROPERTY, IsbnIndex.class, session -> {
+            IsbnIndex index = new IsbnIndex(Bootstrap.Database.current() == Bootstrap.Database.EMBEDDED);
+            // listen first, so that nothing written during the scan is missed
+            CommitListener.listen(session, index::record, Books.class);
+            index.rebuild(factory);
+            return index;
+        });
+    } // End of install method
+
+    /**
+     * Returns the index of a factory.
+     * @param factory   The factory.
+     * @return          Its index, or null if none has been installed.
+     */
+    public static IsbnIndex of(EntityManagerFactory factory) {
+        return CommitListener.of(factory, PROPERTY, IsbnIndex.class);
+    } // End of of method
+
+    /**
+     * Returns the key that the book with an ISBN is stored under.
+     * @param isbn  The ISBN, as read by {@link IsbnCodec#encode}.
+     * @return      The key; null if no book has that ISBN, or the ISBN is {@link IsbnCodec#INVALID}.
+     */
+    public String keyOf(long isbn) {
+        if (isbn == IsbnCodec.INVALID) {
+            return null;
+        }
+        return table.read(table -> table.keyOf(isbn));
+    } // End of keyOf method
+
+    /** Returns true if a book has an ISBN, as read by {@link IsbnCodec#encode}. */
+    public boolean contains(long isbn) {
+        return isbn != IsbnCodec.INVALID && table.read(table -> table.contains(isbn));
+    } // End of contains method
+
+    /** Returns the number of books indexed. */
+    public int size() {
+        return table.read(table -> table.size);
+    } // End of size method
+
+    /**
+     * Returns true if every book with a valid ISBN written to the database is in the index, so
+     * that one it lacks does not exist; false if other processes share the database.
+     */
+    public boolean isExhaustive() {
+        return exhaustive;
+    } // End of isExhaustive method
+
+    /** Indexes a book that was inserted around the entities; keys that are not ISBNs are ignored. */
+    public void putBook(String key) {
+        long isbn = IsbnCodec.encode(key);
+        if (isbn != IsbnCodec.INVALID) {
+            table.apply(table -> table.put(isbn, key));
+        }
+    } // End of putBook method
+
+    /** Takes a book that was deleted around the entities out of the index. */
+    public void removeBook(String key) {
+        long isbn = IsbnCodec.encode(key);
+        if (isbn != IsbnCodec.INVALID) {
+            table.apply(table -> table.remove(isbn, key));
+        }
+    } // End of removeBook method
+
+    /**
+     * Indexes the books again from the database. The old index answers until the new one is
+     * ready.
+     * @param factory   The factory whose books are indexed.
+     * @throws PersistenceException if the books cannot be read; the old index is kept.
+     */
+    public void rebuild(EntityManagerFactory factory) {
+        table.rebuild(() -> scan(factory));
+    } // End of rebuild method
+
+    /**
+     * Reads the key of every book into a new table. Keys that are not ISBNs are left out.
+     */
+    private static Table scan(EntityManagerFactory factory) {
+        long start = System.nanoTime();
+        Table built = new Table();
+        int others = 0;
+        EntityManager manager = factory.createEntityManager();
+        EntityTransaction tx = manager.getTransaction();
+        tx.begin();
+        try (PreparedStatement statement = manager.unwrap(Connection.class).prepareStatement(
+                "SELECT ISBN FROM BOOKS")) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    String key = rows.getString(1);
+                    long isbn = IsbnCodec.encode(key);
+                    if (isbn == IsbnCodec.INVALID) {
+                        ++others;
+                    } else {
+                        built.put(isbn, key);
+                    }
+                }
+            }
+            LOGGER.info(String.format("Indexed %d ISBNs (%d under another form, %d other keys not indexed) " +
+                    "in %d ms; %d KB", built.size, built.aliases.size(), others, (System.nanoTime() - start) / 1_000_000,
+                    built.slots.length * Integer.BYTES / 1024));
+            return built;
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not read the ISBNs", e);
+        } finally {
+            tx.rollback();
+            manager.close();
+        }
+    } // End of scan method
+
+    /**
+     * Returns the change to the index that the insert or delete of a book makes, for when its unit
+     * of work commits. An ISBN is a primary key, so a book never changes its ISBN, and an update
+     * changes nothing.
+     */
+    private Runnable record(Session unitOfWork, Object entity, CommitListener.Write write) {
+        String key = ((Books) entity).getISBN();
+        long isbn = IsbnCodec.encode(key);
+        if (isbn == IsbnCodec.INVALID || write == CommitListener.Write.UPDATE) {
+            return null;
+        }
+        return write == CommitListener.Write.DELETE ? () -> table.apply(table -> table.remove(isbn, key))
+                : () -> table.apply(table -> table.put(isbn, key));
+    } // End of record method
+
+    /**
+     * Packs an ISBN-13 into an int: its nine digits after the prefix, plus a billion if the prefix
+     * is 979. The check digit follows from the rest, so it is dropped.
+     */
+    private static int pack(long isbn) {
+        return (int) (isbn / 10 - 978_000_000_000L);
+    } // End of pack method
+
+    /**
+     * Returns true if a key that is a valid ISBN is stored in its canonical form, which is 13
+     * digits and nothing else.
+     */
+    private static boolean isCanonical(String key) {
+        if (key.length() != 13) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); ++i) {
+            if (key.charAt(i) < '0' || key.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    } // End of isCanonical method
+} // End of IsbnIndex class
@@ -0,0 +1,55 @@
+package csulb.cecs323.app;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * The view of one filter of the {@link KeyFilters} published over JMX, under the name
+ * "csulb.cecs323.bookclub:type=KeyFilter,name=&lt;key&gt;", e.g. name=PUBLISHER_PHONE.
+ */
+public interface KeyFilterMXBean {
+    /** Returns the name of the key that the filter holds. */
+    String getName();
+
+    /** Returns the number of distinct keys added since the filter was last built. */
+    long getKeys();
+
+    /** Returns the number of keys deleted since the filter was last built, which it still holds. */
+    long getStaleKeys();
+
+    /** Returns the number of keys the filter was sized for; past it, the filter is built again. */
+    long getCapacity();
+
+    /** Returns the size of the filter's bits, in bytes. */
+    long getMemoryBytes();
+
+    /** Returns the number of bits that each key sets. */
+    int getHashFunctions();
+
+    /**
+     * Returns the chance that a key that was never added is taken for one that was, as the bits
+     * set so far make it.
+     */
+    double getExpectedFalsePositiveRate();
+
+    /** Returns the number of keys looked up. */
+    long getLookups();
+
+    /** Returns the number of lookups answered without going to the database. */
+    long getNegatives();
+
+    /** Returns the number of lookups that went to the database and found nothing there. */
+    long getFalsePositives();
+
+    /** Returns the share of the lookups of missing keys that went to the database all the same. */
+    double getObservedFalsePositiveRate();
+
+    /** Returns the number of times the filter has been built from the database. */
+    long getRebuilds();
+
+    /** Builds the filter again from the database, in the background. */
+    void rebuild();
+
+    /** Forgets the lookups counted so far. */
+    void reset();
+} // End of KeyFilterMXBean interface
@@ -0,0 +1,541 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.AuthoringEntities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Answers "is there a row with this key?" for the keys that are checked before every insert (the
+ * ISBN of a book, the email of an author, and the name, phone and email of a publisher) without
+ * going to the database when the answer is no, which it nearly always is. Each key has a Bloom
+ * filter: a key that was added is always reported as maybe there, and one that was not is
+ * reported as missing, except for the configured share of them, which go to the database as they
+ * did before the filter.
+ * <p>
+ * A Bloom filter cannot take a key out again, as its bits are shared with other keys, so a
+ * deleted key stays in as a stale entry; it only costs a query that finds nothing. The filter is
+ * built again from the database in the background once a quarter of its keys are stale, or more
+ * keys were added than it was sized for. Each filter is sized for twice the rows it was built
+ * from, at about 10 bits a key for the default 1% false positives.
+ * </p>
+ * <p>
+ * A key is added as soon as its row is written, before the transaction commits, so that no other
+ * thread is told it is missing once it is there; if the transaction rolls back, the key is only a
+ * false positive. It is added again when the transaction commits, so that a rebuild that read the
+ * table before then still gets it. The writers that go around the entities call {@link #add} and
+ * {@link #remove} themselves.
+ * </p>
+ * <p>
+ * The filters are only installed for the embedded database. With a database shared through a
+ * network server, the other processes write keys that this one never hears about, so a missing
+ * key means nothing. The false positive rate is read from {@value #FALSE_POSITIVE_RATE}, as a
+ * system property or a property of the persistence unit (default 0.01). The size and accuracy of
+ * each filter are published as a {@link KeyFilterMXBean}.
+ * </p>
+ */
+public final class KeyFilters {
+    /** The property holding the share of missing keys that a filter may take for present ones. */
+    public static final String FALSE_POSITIVE_RATE = "bookclub.key-filter.false-positive-rate";
+
+    /** The false positive rate used when none is configured. */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    /** The session property that the filters of a factory are kept in. */
+    private static final String PROPERTY = "bookclub.key-filters";
+
+    /** The fewest keys a filter is sized for, so that a small table is not rebuilt over and over. */
+    private static final int MIN_CAPACITY = 1 << 10;
+
+    /** The number of keys read per round trip while a filter is built. */
+    private static final int FETCH_SIZE = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(KeyFilters.class.getName());
+
+    /**
+     * The keys that are filtered, each a column that is looked up by its value alone.
+     */
+    public enum Key {
+        ISBN("ISBN", "BOOKS"),
+        AUTHOR_EMAIL("EMAIL", "AUTHORING_ENTITIES"),
+        PUBLISHER_NAME("NAME", "PUBLISHERS"),
+        PUBLISHER_PHONE("PHONE", "PUBLISHERS"),
+        PUBLISHER_EMAIL("EMAIL", "PUBLISHERS");
+
+        /** The query that reads every key, to build the filter from. */
+        private final String sql;
+
+        Key(String column, String table) {
+            this.sql = "SELECT " + column + " FROM " + table;
+        }
+    } // End of Key enum
+
+    /**
+     * The bits of a Bloom filter, sized for a number of keys. Each key sets the bits picked by two
+     * halves of one 64 bit hash, combined as h1 + i * h2 for the i-th bit.
+     */
+    private static final class Bits {
+        private final long[] words;
+        /** The number of bits, a multiple of 64. */
+        private final long size;
+        private final int hashes;
+        private final int capacity;
+        private long setBits;
+
+        private Bits(int capacity, double falsePositiveRate) {
+            double ln2 = Math.log(2);
+            long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+            this.words = new long[(int) ((bits + 63) >>> 6)];
+            this.size = words.length * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) size / capacity * ln2));
+            this.capacity = capacity;
+        }
+
+        private boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; ++i) {
+                long bit = Math.floorMod(h1 + (long) i * h2, size);
+                // a shift only uses the low 6 bits of its distance, the bit within the word
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Sets the bits of a key; returns false if they were all set already. */
+        private boolean put(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            boolean changed = false;
+            for (int i = 0; i < hashes; ++i) {
+                long bit = Math.floorMod(h1 + (long) i * h2, size);
+                int word = (int) (bit >>> 6);
+                if ((words[word] & (1L << bit)) == 0) {
+                    words[word] |= 1L << bit;
+                    ++setBits;
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        /** The chance that all the bits of a key that was never added are set. */
+        private double falsePositiveRate() {
+            return Math.pow((double) setBits / size, hashes);
+        }
+    } // End of Bits class
+
+    /**
+     * The filter of one key, and its counters.
+     */
+    private final class Filter implements KeyFilterMXBean {
+        private final Key key;
+        private Bits bits;
+        private long keys;
+        private long stale;
+        private long rebuilds;
+
+        /** The keys added while a rebuild scans, to add again to what it built; null otherwise. */
+        private List<Long> replay;
+
+        /** The keys deleted while a rebuild scans, which what it built may still hold. */
+        private long replayStale;
+
+        private final LongAdder lookups = new LongAdder();
+        private final LongAdder negatives = new LongAdder();
+        private final LongAdder falsePositives = new LongAdder();
+
+        private Filter(Key key) {
+            this.key = key;
+            this.bits = new Bits(MIN_CAPACITY, falsePositiveRate);
+        }
+
+        private boolean mightContain(String value) {
+            long hash = hash(value);
+            boolean maybe;
+            synchronized (this) {
+                maybe = bits.mightContain(hash);
+            }
+            lookups.increment();
+            if (!maybe) {
+                negatives.increment();
+            }
+            return maybe;
+        }
+
+        private synchronized void add(String value) {
+            long hash = hash(value);
+            if (bits.put(hash)) {
+                ++keys;
+            }
+            if (replay != null) {
+                replay.add(hash);
+            } else if (keys > bits.capacity) {
+                rebuildLater();
+            }
+        }
+
+        private synchronized void remove() {
+            ++stale;
+            if (replay != null) {
+                ++replayStale;
+            } else if (stale > Math.max(keys, MIN_CAPACITY) / 4) {
+                rebuildLater();
+            }
+        }
+
+        /** Claims the filter for a rebuild; returns false if one is already running. */
+        private synchronized boolean beginRebuild() {
+            if (replay != null) {
+                return false;
+            }
+            replay = new ArrayList<>();
+            replayStale = 0;
+            return true;
+        }
+
+        /** Reads the keys from the database into new bits, and puts those in place of the old. */
+        private void finishRebuild() {
+            long start = System.nanoTime();
+            long[] hashes;
+            try {
+                hashes = scan(key);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    replay = null;
+                }
+                throw e;
+            }
+
+            Bits built;
+            synchronized (this) {
+                int capacity = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(MIN_CAPACITY,
+                        2L * (hashes.length + replay.size())));
+                built = new Bits(capacity, falsePositiveRate);
+                long added = 0;
+                for (long hash : hashes) {
+                    added += built.put(hash) ? 1 : 0;
+                }
+                for (long hash : replay) {
+                    added += built.put(hash) ? 1 : 0;
+                }
+                bits = built;
+                keys = added;
+                stale = replayStale;
+                replay = null;
+                ++rebuilds;
+            }
+            LOGGER.fine(String.format("Built the %s filter from %d rows in %d ms; %d KB, %d hashes, %.4f%% " +
+                    "false positives expected", key, hashes.length, (System.nanoTime() - start) / 1_000_000,
+                    built.words.length * Long.BYTES / 1024, built.hashes, 100 * built.falsePositiveRate()));
+        }
+
+        /** Builds the filter again on a thread of its own, unless a rebuild is already running. */
+        private void rebuildLater() {
+            if (!beginRebuild()) {
+                return;
+            }
+            Thread thread = new Thread(() -> {
+                try {
+                    finishRebuild();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not rebuild the " + key + " filter; the old one is kept", e);
+                }
+            }, "key-filter-" + key);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public String getName() {
+            return key.name();
+        }
+
+        @Override
+        public synchronized long getKeys() {
+            return keys;
+        }
+
+        @Override
+        public synchronized long getStaleKeys() {
+            return stale;
+        }
+
+        @Override
+        public synchronized long getCapacity() {
+            return bits.capacity;
+        }
+
+        @Override
+        public synchronized long getMemoryBytes() {
+            return bits.words.length * (long) Long.BYTES;
+        }
+
+        @Override
+        public synchronized int getHashFunctions() {
+            return bits.hashes;
+        }
+
+        @Override
+        public synchronized double getExpectedFalsePositiveRate() {
+            return bits.falsePositiveRate();
+        }
+
+        @Override
+        public long getLookups() {
+            return lookups.sum();
+        }
+
+        @Override
+        public long getNegatives() {
+            return negatives.sum();
+        }
+
+        @Override
+        public long getFalsePositives() {
+            return falsePositives.sum();
+        }
+
+        @Override
+        public double getObservedFalsePositiveRate() {
+            long wrong = falsePositives.sum();
+            long missing = wrong + negatives.sum();
+            return missing == 0 ? 0 : (double) wrong / missing;
+        }
+
+        @Override
+        public synchronized long getRebuilds() {
+            return rebuilds;
+        }
+
+        @Override
+        public void rebuild() {
+            rebuildLater();
+        }
+
+        @Override
+        public void reset() {
+            lookups.reset();
+            negatives.reset();
+            falsePositives.reset();
+        }
+    } // End of Filter class
+
+    private final EntityManagerFactory factory;
+    private final double falsePositiveRate;
+    private final Map<Key, Filter> filters = new EnumMap<>(Key.class);
+
+    private KeyFilters(EntityManagerFactory factory, double falsePositiveRate) {
+        this.factory = factory;
+        this.falsePositiveRate = falsePositiveRate;
+        for (Key key : Key.values()) {
+            filters.put(key, new Filter(key));
+        }
+    }
+
+    /**
+     * Builds the filters of a factory's keys, keeps them up to date with the changes made through
+     * the factory from then on, and publishes them over JMX. A factory has one set of filters;
+     * installing them again returns it.
+     * @param factory   The factory whose keys are filtered.
+     * @return          The filters; null if the database is shared with other processes, which
+     *                  leaves every lookup to the database.
+     * @throws PersistenceException if the keys cannot be read.
+     * @throws IllegalArgumentException if the false positive rate is not between 0 and 1.
+     */
+    public static KeyFilters install(EntityManagerFactory factory) {
+        if (Bootstrap.Database.current() != Bootstrap.Database.EMBEDDED) {
+            return of(factory);
+        }
+        return CommitListener.install(factory, PROPERTY, KeyFilters.class, session -> {
+            Object configured = System.getProperty(FALSE_POSITIVE_RATE);
+            if (configured == null) {
+                configured = session.getProperty(FALSE_POSITIVE_RATE);
+            }
+            double rate = configured == null ? DEFAULT_FALSE_POSITIVE_RATE : Double.parseDouble(configured.toString());
+            if (!(rate > 0 && rate < 1))
+                throw new IllegalArgumentException(FALSE_POSITIVE_RATE + " must be between 0 and 1: " + rate);
+
+            long start = System.nanoTime();
+            KeyFilters filters = new KeyFilters(factory, rate);
+            // listen first, so that nothing written during the scans is missed
+            CommitListener.listen(session, filters::record, Books.class, AuthoringEntities.class, Publishers.class);
+            long bytes = 0;
+            for (Filter filter : filters.filters.values()) {
+                filter.beginRebuild();
+                filter.finishRebuild();
+                bytes += filter.getMemoryBytes();
+            }
+            filters.register();
+            LOGGER.info(String.format("Built %d key filters in %d ms; %d KB", filters.filters.size(),
+                    (System.nanoTime() - start) / 1_000_000, bytes / 1024));
+            return filters;
+        });
+    } // End of install method
+
+    /**
+     * Returns the filters of a factory.
+     * @param factory   The factory.
+     * @return          Its filters, or null if none have been installed.
+     */
+    public static KeyFilters of(EntityManagerFactory factory) {
+        return CommitListener.of(factory, PROPERTY, KeyFilters.class);
+    } // End of of method
+
+    /**
+     * Returns false if no row has a key, so there is no need to look for it; true if one may.
+     * Call {@link #recordFalsePositive} if the lookup that follows finds nothing.
+     * @param key       The key.
+     * @param value     Its value, as it would be bound to the query.
+     */
+    public boolean mightContain(Key key, String value) {
+        return filters.get(key).mightContain(value);
+    } // End of mightContain method
+
+    /** Counts a lookup that a filter let through, and that found nothing in the database. */
+    public void recordFalsePositive(Key key) {
+        filters.get(key).falsePositives.increment();
+    } // End of recordFalsePositive method
+
+    /**
+     * Adds a key that was written around the entities. It may be added before the row is
+     * committed, and should be added again after, as a rebuild might read the table in between;
+     * adding a key twice does no harm.
+     */
+    public void add(Key key, String value) {
+        filters.get(key).add(value);
+    } // End of add method
+
+    /** Counts a key that was deleted around the entities, which its filter keeps as stale. */
+    public void remove(Key key) {
+        filters.get(key).remove();
+    } // End of remove method
+
+    /** Returns the filter of a key, to read its size and accuracy. */
+    public KeyFilterMXBean filter(Key key) {
+        return filters.get(key);
+    } // End of filter method
+
+    /**
+     * Reads the hash of every value of a key from the database.
+     */
+    private long[] scan(Key key) {
+        long[] hashes = new long[MIN_CAPACITY];
+        int count = 0;
+        EntityManager manager = factory.createEntityManager();
+        EntityTransaction tx = manager.getTransaction();
+        tx.begin();
+        try (PreparedStatement statement = manager.unwrap(Connection.class).prepareStatement(key.sql)) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    if (count == hashes.length) {
+                        hashes = Arrays.copyOf(hashes, count * 2);
+                    }
+                    hashes[count++] = hash(rows.getString(1));
+                }
+            }
+            return Arrays.copyOf(hashes, count);
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not read the keys of " + key, e);
+        } finally {
+            tx.rollback();
+            manager.close();
+        }
+    } // End of scan method
+
+    /** Publishes each filter over JMX, in place of those of a factory installed before. */
+    private void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Filter filter : filters.values()) {
+            try {
+                ObjectName name = new ObjectName(QueryMetrics.DOMAIN + ":type=KeyFilter,name=" +
+                        ObjectName.quote(filter.getName()));
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(filter, name);
+            } catch (JMException e) {
+                LOGGER.warning("Could not publish the " + filter.getName() + " filter over JMX: " + e);
+            }
+        }
+    } // End of register method
+
+    /**
+     * Adds the keys of an entity that was written at once, so that no other thread is told they
+     * are missing once they are there, and returns the change that adds them again, or counts
+     * them as stale if the entity was deleted, when its unit of work commits. A publisher's phone
+     * and email may change; the new ones are added, and the old ones are left in.
+     */
+    private Runnable record(Session unitOfWork, Object entity, CommitListener.Write write) {
+        Map<Key, String> keys = new EnumMap<>(Key.class);
+        if (entity instanceof Books) {
+            keys.put(Key.ISBN, ((Books) entity).getISBN());
+        } else if (entity instanceof AuthoringEntities) {
+            keys.put(Key.AUTHOR_EMAIL, ((AuthoringEntities) entity).getEmail());
+        } else if (entity instanceof Publishers) {
+            Publishers publisher = (Publishers) entity;
+            keys.put(Key.PUBLISHER_NAME, publisher.getName());
+            keys.put(Key.PUBLISHER_PHONE, publisher.getPhone());
+            keys.put(Key.PUBLISHER_EMAIL, publisher.getEmail());
+        }
+
+        if (keys.isEmpty()) {
+            return null;
+        }
+        if (write == CommitListener.Write.DELETE) {
+            return () -> keys.keySet().forEach(this::remove);
+        }
+        keys.forEach(this::add);
+        return () -> keys.forEach(this::add);
+    } // End of record method
+
+    /**
+     * Hashes a value to 64 bits: FNV-1a over its characters, then the final mix of MurmurHash3 to
+     * spread FNV's weak high bits. Derby compares strings as if the shorter were padded with
+     * spaces, so "abc " finds "abc"; trailing spaces are left out of the hash to match.
+     */
+    private static long hash(String value) {
+        int length = value.length();
+        while (length > 0 && value.charAt(length - 1) == ' ') {
+            --length;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; ++i) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    } // End of hash method
+} // End of KeyFilters class
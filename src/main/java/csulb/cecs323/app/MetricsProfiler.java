@@ -0,0 +1,339 @@
+package csulb.cecs323.app;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.StringJoiner;
+import org.eclipse.persistence.internal.sessions.AbstractRecord;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.queries.ObjectLevelModifyQuery;
+import org.eclipse.persistence.queries.ReadObjectQuery;
+import org.eclipse.persistence.sessions.Record;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Times every query that EclipseLink runs, and every commit, into {@link QueryMetrics}. A named
+ * query is recorded under its name, e.g. "ReturnBook", and a JPQL query under its JPQL. The
+ * queries that EclipseLink makes for itself keep the names it gives them: finding, inserting or
+ * deleting an entity is recorded as e.g. "readBooks", "insertBooks" or "deleteBooks", and loading
+ * a lazy relationship under its kind, entity and attribute, e.g.
+ * "ReadObjectQuery AuthoringEntities (author)". Commits are recorded as "commit"; as writes are
+ * batched, their SQL runs when the batch is flushed and its time counts toward the commit rather
+ * than toward the write queries. A commit is recorded once the session reports its outcome, and
+ * one that rolls its transaction back is recorded as failed.
+ * <p>
+ * Within a query, the time of EclipseLink's SQL timers (prepare, execute and fetch) and of its
+ * object building timer is added to the query's metrics, which tells the time spent waiting on
+ * Derby apart from the time spent turning rows into entities. A query run while another one is
+ * building its objects, e.g. a batch fetch, is timed on its own and its time is not split
+ * out of the outer query's. The SQL statements that each query runs are counted as well.
+ * </p>
+ * <p>
+ * A query that takes longer than the threshold of the {@link SlowQueryLog} is also handed to it,
+ * with its SQL, the values bound to it and the number of rows. The log is closed when the session
+ * logs out, i.e. when its factory is closed.
+ * </p>
+ * <p>
+ * Registered in persistence.xml through the "eclipselink.profiler" property.
+ * </p>
+ */
+public class MetricsProfiler extends SessionProfilerAdapter {
+    /** The metrics that commits are recorded in. */
+    public static final String COMMIT = "commit";
+
+    /**
+     * The query being timed on a thread, and the SQL and object building time found in it.
+     */
+    private static final class Frame {
+        private final DatabaseQuery query;
+        private long sqlStart;
+        private int sqlDepth;
+        private long sqlNanos;
+        private long buildingStart;
+        private int buildingDepth;
+        private long buildingNanos;
+        private int statements;
+
+        private Frame(DatabaseQuery query) {
+            this.query = query;
+        }
+    } // End of Frame class
+
+    /**
+     * What is being timed on one thread.
+     */
+    private static final class ThreadState {
+        /** The queries being run, innermost first. */
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private long commitStart;
+        private int commitDepth;
+        /** The time of a commit whose outcome is not known yet; -1 if there is none. */
+        private long commitNanos = -1;
+    } // End of ThreadState class
+
+    private static final ThreadLocal<ThreadState> STATE = ThreadLocal.withInitial(ThreadState::new);
+
+    /** The session that the profiler was set on, whose properties configure the slow query log. */
+    private Session session;
+
+    /** Where slow queries are logged; null if the log is turned off. */
+    private volatile SlowQueryLog slowQueryLog;
+
+    /** Set once the slow query log has been opened, or found to be turned off. */
+    private volatile boolean slowQueryLogOpened;
+
+    @Override
+    public void setSession(Session session) {
+        this.session = session;
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                recordCommit(STATE.get(), false);
+            }
+
+            @Override
+            public void postRollbackTransaction(SessionEvent event) {
+                recordCommit(STATE.get(), true);
+            }
+
+            @Override
+            public void preLogout(SessionEvent event) {
+                closeSlowQueryLog();
+            }
+        });
+    } // End of setSession method
+
+    /** Records the commit timed on a thread, if its outcome was not known yet. */
+    private static void recordCommit(ThreadState state, boolean failed) {
+        if (state.commitNanos >= 0) {
+            QueryMetrics.of(COMMIT).record(state.commitNanos, failed);
+            state.commitNanos = -1;
+        }
+    } // End of recordCommit method
+
+    @Override
+    public Object profileExecutionOfQuery(DatabaseQuery query, Record row, AbstractSession session) {
+        ThreadState state = STATE.get();
+        Frame outer = state.frames.peek();
+        // a unit of work hands its reads on to its parent session, which comes back here
+        if (outer != null && outer.query == query) {
+            return session.internalExecuteQuery(query, (AbstractRecord) row);
+        }
+
+        Frame frame = new Frame(query);
+        state.frames.push(frame);
+        long start = System.nanoTime();
+        boolean failed = true;
+        Object result = null;
+        try {
+            result = session.internalExecuteQuery(query, (AbstractRecord) row);
+            failed = false;
+            return result;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            state.frames.pop();
+
+            String name = nameOf(query);
+            QueryMetrics metrics = QueryMetrics.of(name);
+            metrics.record(nanos, failed);
+            metrics.addSqlTime(frame.sqlNanos);
+            metrics.addObjectBuildingTime(frame.buildingNanos);
+            metrics.addStatements(frame.statements);
+
+            SlowQueryLog log = slowQueryLog();
+            if (log != null && log.isSlow(nanos)) {
+                log.log(new SlowQueryLog.Entry(nanos, failed ? 0 : rowCount(query, result),
+                        SlowQueryLog.getOperation(), name, sqlOf(query), parametersOf(query, row)));
+            }
+        }
+    } // End of profileExecutionOfQuery method
+
+    /** Returns the slow query log, opening it the first time a query finishes. */
+    private SlowQueryLog slowQueryLog() {
+        if (!slowQueryLogOpened) {
+            synchronized (this) {
+                // the persistence unit properties are only on the session once it has logged in
+                if (!slowQueryLogOpened && session != null) {
+                    slowQueryLog = SlowQueryLog.open(session);
+                    slowQueryLogOpened = true;
+                }
+            }
+        }
+        return slowQueryLog;
+    } // End of slowQueryLog method
+
+    /** Closes the slow query log, if it was opened, and keeps it from being opened again. */
+    private synchronized void closeSlowQueryLog() {
+        slowQueryLogOpened = true;
+        if (slowQueryLog != null) {
+            slowQueryLog.close();
+            slowQueryLog = null;
+        }
+    } // End of closeSlowQueryLog method
+
+    @Override
+    public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        startOperationProfile(operationName);
+    } // End of startOperationProfile method
+
+    @Override
+    public void startOperationProfile(String operationName) {
+        ThreadState state = STATE.get();
+        if (operationName.equals(SessionProfiler.UowCommit)) {
+            if (state.commitDepth++ == 0) {
+                // a commit that neither committed nor rolled back did not fail
+                recordCommit(state, false);
+                state.commitStart = System.nanoTime();
+            }
+            return;
+        }
+
+        Frame frame = state.frames.peek();
+        if (frame == null) {
+            return;
+        }
+        if (isSql(operationName)) {
+            // each statement is prepared once; the execute timer also covers closing it
+            if (operationName.equals(SessionProfiler.SqlPrepare)) {
+                ++frame.statements;
+            }
+            if (frame.sqlDepth++ == 0) {
+                frame.sqlStart = System.nanoTime();
+            }
+        } else if (operationName.equals(SessionProfiler.ObjectBuilding)) {
+            if (frame.buildingDepth++ == 0) {
+                frame.buildingStart = System.nanoTime();
+            }
+        }
+    } // End of startOperationProfile method
+
+    @Override
+    public void endOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        endOperationProfile(operationName);
+    } // End of endOperationProfile method
+
+    @Override
+    public void endOperationProfile(String operationName) {
+        ThreadState state = STATE.get();
+        if (operationName.equals(SessionProfiler.UowCommit)) {
+            if (state.commitDepth > 0 && --state.commitDepth == 0) {
+                // whether it failed is only told by the session event that follows
+                state.commitNanos = System.nanoTime() - state.commitStart;
+            }
+            return;
+        }
+
+        Frame frame = state.frames.peek();
+        if (frame == null) {
+            return;
+        }
+        if (isSql(operationName)) {
+            if (frame.sqlDepth > 0 && --frame.sqlDepth == 0) {
+                frame.sqlNanos += System.nanoTime() - frame.sqlStart;
+            }
+        } else if (operationName.equals(SessionProfiler.ObjectBuilding)) {
+            if (frame.buildingDepth > 0 && --frame.buildingDepth == 0) {
+                frame.buildingNanos += System.nanoTime() - frame.buildingStart;
+            }
+        }
+    } // End of endOperationProfile method
+
+    @Override
+    public int getProfileWeight() {
+        return SessionProfiler.ALL;
+    } // End of getProfileWeight method
+
+    /** Returns true for the timers that cover talking to the database. */
+    private static boolean isSql(String operationName) {
+        return operationName.equals(SessionProfiler.SqlPrepare) ||
+                operationName.equals(SessionProfiler.StatementExecute) ||
+                operationName.equals(SessionProfiler.RowFetch);
+    } // End of isSql method
+
+    /** Returns the number of rows that a query read or changed, from its result. */
+    private static long rowCount(DatabaseQuery query, Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        // a modify query returns the number of rows it changed
+        if (query.isModifyQuery() && result instanceof Number) {
+            return ((Number) result).longValue();
+        }
+        return 1;
+    } // End of rowCount method
+
+    /** Returns the SQL that a query ran, with '?' for its parameters; null if it has none. */
+    private static String sqlOf(DatabaseQuery query) {
+        if (query.getDatasourceCalls().isEmpty()) {
+            return null;
+        }
+        // EclipseLink declares the list raw; each element is a String
+        List<?> statements = query.getSQLStrings();
+        if (statements == null) {
+            return null;
+        }
+        StringJoiner sql = new StringJoiner("; ");
+        for (Object statement : statements) {
+            sql.add(String.valueOf(statement));
+        }
+        return sql.toString();
+    } // End of sqlOf method
+
+    /**
+     * Returns the values that a query was run with, by the names of its arguments. Finding or
+     * writing an entity is given its id, and loading a relationship the row it was loaded from.
+     */
+    private static String parametersOf(DatabaseQuery query, Record row) {
+        StringJoiner parameters = new StringJoiner(", ", "[", "]");
+        if (query instanceof ReadObjectQuery && ((ReadObjectQuery) query).getSelectionId() != null) {
+            parameters.add("id=" + ((ReadObjectQuery) query).getSelectionId());
+        } else if (query instanceof ObjectLevelModifyQuery && ((ObjectLevelModifyQuery) query).getPrimaryKey() != null) {
+            parameters.add("id=" + ((ObjectLevelModifyQuery) query).getPrimaryKey());
+        }
+        if (row == null) {
+            return parameters.toString();
+        }
+
+        List<String> arguments = query.getArguments();
+        if (!arguments.isEmpty()) {
+            for (String argument : arguments) {
+                parameters.add(argument + "=" + row.get(argument));
+            }
+        } else {
+            AbstractRecord fields = (AbstractRecord) row;
+            for (int i = 0; i < fields.size(); ++i) {
+                parameters.add(fields.getFields().get(i).getName() + "=" + fields.getValues().get(i));
+            }
+        }
+        return parameters.toString();
+    } // End of parametersOf method
+
+    /** Returns the name that a query's metrics are kept under. */
+    private static String nameOf(DatabaseQuery query) {
+        String name = query.getName();
+        boolean named = name != null && !name.isEmpty();
+        if (named && query.isUserDefined()) {
+            return name;
+        }
+        if (query.getJPQLString() != null) {
+            return query.getJPQLString();
+        }
+
+        // a relationship's query is named after the attribute, e.g. "author" for Books.author
+        Class<?> type = query.getReferenceClass();
+        return query.getClass().getSimpleName() + (type == null ? "" : " " + type.getSimpleName()) +
+                (named ? " (" + name + ")" : "");
+    } // End of nameOf method
+} // End of MetricsProfiler class
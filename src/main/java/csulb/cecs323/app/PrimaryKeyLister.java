@@ -0,0 +1,160 @@
+package csulb.cecs323.app;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Lists the primary keys of a table one page at a time. Each page is read with a keyset query
+ * (every key greater than the last one printed), so only a single page of keys is ever held in
+ * memory, and the output is buffered and flushed once per page rather than once per line.
+ */
+public class PrimaryKeyLister {
+    /** The number of keys read and printed at a time when none is given. */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * Reads the page of keys that follows the given key.
+     */
+    private interface PageReader {
+        List<?> read(String afterKey, int pageSize);
+    } // End of PageReader interface
+
+    /**
+     * Turns one row of a page into the lines that are printed for it.
+     */
+    private interface RowFormatter {
+        String format(Object row);
+    } // End of RowFormatter interface
+
+    /** The BookClub used to read the pages. */
+    private final BookClub bookClub;
+
+    /** Where the keys are printed. */
+    private final PrintWriter out;
+
+    /** The number of keys read and printed at a time. */
+    private final int pageSize;
+
+    /** Asks the user before each further page; null to print every page without asking. */
+    private final Scanner in;
+
+    /**
+     * Creates a lister that prints to the console and asks the user before each further page.
+     * @param bookClub  The BookClub used to read the pages.
+     * @param in        The Scanner used to ask for more pages.
+     */
+    public PrimaryKeyLister(BookClub bookClub, Scanner in) {
+        this(bookClub, new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out))),
+                DEFAULT_PAGE_SIZE, in);
+    }
+
+    /**
+     * @param bookClub  The BookClub used to read the pages.
+     * @param out       Where the keys are printed.
+     * @param pageSize  The number of keys read and printed at a time.
+     * @param in        The Scanner used to ask for more pages; null to print every page.
+     */
+    public PrimaryKeyLister(BookClub bookClub, PrintWriter out, int pageSize, Scanner in) {
+        this.bookClub = bookClub;
+        this.out = out;
+        this.pageSize = pageSize;
+        this.in = in;
+    }
+
+    /**
+     * Lists the names of the publishers.
+     * @return  The number of names printed.
+     */
+    public long listPublishers() {
+        return list("Publishers", "publishers", bookClub::getPublisherNames,
+                row -> "  - Name: " + row);
+    } // End of listPublishers method
+
+    /**
+     * Lists the ISBN and title of the books.
+     * @return  The number of books printed.
+     */
+    public long listBooks() {
+        return list("Books", "books", bookClub::getBookKeys, row -> {
+            Object[] key = (Object[]) row;
+            return "  - Title: " + key[1] + "\n    ISBN: " + key[0];
+        });
+    } // End of listBooks method
+
+    /**
+     * Lists the email and type of the authoring entities.
+     * @return  The number of authoring entities printed.
+     */
+    public long listAuthors() {
+        return list("Authoring Entities", "authors", bookClub::getAuthorKeys, row -> {
+            Object[] key = (Object[]) row;
+            return "  - Email: " + key[0] + "\n    Type: " + key[1];
+        });
+    } // End of listAuthors method
+
+    /**
+     * Reads and prints pages of keys until the table runs out or the user stops.
+     * @param heading   The name of the table, shown above the keys.
+     * @param plural    The name of the rows, shown if the table is empty.
+     * @param reader    Reads one page of keys.
+     * @param formatter Formats one row of a page.
+     * @return          The number of rows printed.
+     */
+    private long list(String heading, String plural, PageReader reader, RowFormatter formatter) {
+        String lastKey = "";
+        long printed = 0;
+
+        while (true) {
+            List<?> page = reader.read(lastKey, pageSize);
+
+            if (page.isEmpty()) {
+                if (printed == 0) {
+                    out.println("Cannot show primary keys; there are no " + plural + ".\n");
+                }
+                break;
+            }
+
+            if (printed == 0) {
+                out.println("\nPrimary Keys of " + heading + ": ");
+            }
+
+            for (Object row : page) {
+                out.println(formatter.format(row));
+            }
+            printed += page.size();
+
+            // the first column of every projection is the key that the next page starts after
+            Object last = page.get(page.size() - 1);
+            lastKey = (String) (last instanceof Object[] ? ((Object[]) last)[0] : last);
+
+            // a short page is the last one, so there is no need to ask for more
+            if (page.size() < pageSize || !morePages()) {
+                break;
+            }
+        }
+
+        out.flush();
+        return printed;
+    } // End of list method
+
+    /**
+     * Asks the user whether to show another page; always true when there is no one to ask.
+     * @return  True if another page should be printed.
+     */
+    private boolean morePages() {
+        if (in == null) {
+            out.flush();
+            return true;
+        }
+
+        out.print("-- Press Enter for more, or q to stop -- ");
+        out.flush();
+        return !in.nextLine().trim().equalsIgnoreCase("q");
+    } // End of morePages method
+} // End of PrimaryKeyLister class
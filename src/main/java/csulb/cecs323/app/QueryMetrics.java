@@ -0,0 +1,255 @@
+package csulb.cecs323.app;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Counts the executions of one query (or of an operation such as a commit), the ones that failed,
+ * and how long they took, and publishes them as an MXBean. The times go into a histogram whose
+ * buckets grow with the time, each one about 6% wider than the last, so the percentiles are
+ * within 6% of the truth in a fixed amount of memory. Of the time, the part spent on the SQL and
+ * the part spent building objects from its rows are also added up, as is the number of SQL
+ * statements run, as reported by the {@link MetricsProfiler}.
+ * <p>
+ * One instance is kept per name and shared by every thread; the recording methods never block.
+ * </p>
+ */
+public final class QueryMetrics implements QueryMetricsMXBean {
+    /** The JMX domain that the metrics are published under. */
+    public static final String DOMAIN = "csulb.cecs323.bookclub";
+
+    /** The metrics of every query and operation recorded so far, by name. */
+    private static final Map<String, QueryMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private static final Logger LOGGER = Logger.getLogger(QueryMetrics.class.getName());
+
+    /**
+     * Counts values, in microseconds, in buckets of about 6% each.
+     */
+    private static final class Histogram {
+        /** The number of buckets that each power of two is split into. */
+        private static final int SUB_BUCKETS = 16;
+
+        /** Enough buckets for any positive long. */
+        private static final int BUCKETS = SUB_BUCKETS * 60;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        private void record(long micros) {
+            counts.incrementAndGet(index(Math.max(0, micros)));
+        }
+
+        /** Values below SUB_BUCKETS have a bucket each; above, each power of two has SUB_BUCKETS. */
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+            return (exponent - 3) * SUB_BUCKETS + sub;
+        }
+
+        /** Returns the largest value that falls in a bucket. */
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKETS + 3;
+            long width = 1L << (exponent - 4);
+            return (SUB_BUCKETS + index % SUB_BUCKETS) * width + width - 1;
+        }
+
+        /** Returns the value that the given fraction of the recorded values are no larger than. */
+        private long percentile(double fraction) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKETS; ++i) {
+                counts.set(i, 0);
+            }
+        }
+    } // End of Histogram class
+
+    /** The name of the query or operation. */
+    private final String name;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder sqlNanos = new LongAdder();
+    private final LongAdder objectBuildingNanos = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final Histogram histogram = new Histogram();
+
+    private QueryMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the metrics of the given query or operation, creating and publishing them on
+     * first use.
+     * @param name  The name of the query, e.g. "ReturnBook", or of the operation, e.g. "commit".
+     * @return      The metrics shared by every execution with that name.
+     */
+    public static QueryMetrics of(String name) {
+        QueryMetrics metrics = METRICS.get(name);
+        return metrics != null ? metrics : METRICS.computeIfAbsent(name, QueryMetrics::register);
+    } // End of of method
+
+    /** Returns the metrics of every query and operation recorded so far. */
+    public static Collection<QueryMetrics> all() {
+        return new ArrayList<>(METRICS.values());
+    } // End of all method
+
+    /** Creates the metrics of a name and publishes them on the platform MBean server. */
+    private static QueryMetrics register(String name) {
+        QueryMetrics metrics = new QueryMetrics(name);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                    new ObjectName(DOMAIN + ":type=QueryMetrics,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            // the metrics are still recorded, and logged, without JMX
+            LOGGER.warning("Could not publish the metrics of " + name + ": " + e);
+        }
+        return metrics;
+    } // End of register method
+
+    /**
+     * Records one execution.
+     * @param nanos     How long it took.
+     * @param failed    True if it threw an exception.
+     */
+    public void record(long nanos, boolean failed) {
+        count.increment();
+        if (failed) {
+            errors.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram.record(nanos / 1000);
+    } // End of record method
+
+    /** Adds time that an execution spent preparing, executing and fetching its SQL. */
+    public void addSqlTime(long nanos) {
+        sqlNanos.add(nanos);
+    } // End of addSqlTime method
+
+    /** Adds time that an execution spent building objects from its rows. */
+    public void addObjectBuildingTime(long nanos) {
+        objectBuildingNanos.add(nanos);
+    } // End of addObjectBuildingTime method
+
+    /** Adds SQL statements that an execution ran. */
+    public void addStatements(long count) {
+        statements.add(count);
+    } // End of addStatements method
+
+    @Override
+    public String getName() {
+        return name;
+    } // End of getName method
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    } // End of getCount method
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    } // End of getErrorCount method
+
+    @Override
+    public double getMeanMillis() {
+        return mean(totalNanos);
+    } // End of getMeanMillis method
+
+    @Override
+    public double getP50Millis() {
+        return histogram.percentile(0.50) / 1e3;
+    } // End of getP50Millis method
+
+    @Override
+    public double getP99Millis() {
+        return histogram.percentile(0.99) / 1e3;
+    } // End of getP99Millis method
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    } // End of getMaxMillis method
+
+    @Override
+    public double getMeanSqlMillis() {
+        return mean(sqlNanos);
+    } // End of getMeanSqlMillis method
+
+    @Override
+    public double getMeanObjectBuildingMillis() {
+        return mean(objectBuildingNanos);
+    } // End of getMeanObjectBuildingMillis method
+
+    @Override
+    public long getStatementCount() {
+        return statements.sum();
+    } // End of getStatementCount method
+
+    /** Returns a total divided by the number of executions, in milliseconds. */
+    private double mean(LongAdder nanos) {
+        long executions = getCount();
+        return executions == 0 ? 0 : nanos.sum() / 1e6 / executions;
+    } // End of mean method
+
+    @Override
+    public void reset() {
+        count.reset();
+        errors.reset();
+        totalNanos.reset();
+        sqlNanos.reset();
+        objectBuildingNanos.reset();
+        statements.reset();
+        maxNanos.reset();
+        histogram.reset();
+    } // End of reset method
+
+    /** Returns a one line summary of the metrics. */
+    @Override
+    public String toString() {
+        return String.format("%s: %d executions, %d errors, %d statements; mean %.3f ms (SQL %.3f ms, " +
+                        "objects %.3f ms), p50 %.3f ms, p99 %.3f ms, max %.3f ms", name, getCount(), getErrorCount(),
+                getStatementCount(), getMeanMillis(), getMeanSqlMillis(), getMeanObjectBuildingMillis(), getP50Millis(),
+                getP99Millis(), getMaxMillis());
+    } // End of toString method
+} // End of QueryMetrics class
@@ -0,0 +1,43 @@
+package csulb.cecs323.app;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * The view of a {@link QueryMetrics} published over JMX, under the name
+ * "csulb.cecs323.bookclub:type=QueryMetrics,name=&lt;query&gt;". The times are in milliseconds.
+ */
+public interface QueryMetricsMXBean {
+    /** Returns the name of the query or operation. */
+    String getName();
+
+    /** Returns the number of executions. */
+    long getCount();
+
+    /** Returns the number of executions that threw an exception. */
+    long getErrorCount();
+
+    /** Returns the mean time of an execution. */
+    double getMeanMillis();
+
+    /** Returns the median time of an execution. */
+    double getP50Millis();
+
+    /** Returns the time that 99% of the executions took no longer than. */
+    double getP99Millis();
+
+    /** Returns the time of the slowest execution. */
+    double getMaxMillis();
+
+    /** Returns the mean time spent preparing, executing and fetching the SQL of an execution. */
+    double getMeanSqlMillis();
+
+    /** Returns the mean time spent building objects from the rows of an execution. */
+    double getMeanObjectBuildingMillis();
+
+    /** Returns the number of SQL statements run by every execution together. */
+    long getStatementCount();
+
+    /** Forgets every execution recorded so far. */
+    void reset();
+} // End of QueryMetricsMXBean interface
@@ -0,0 +1,102 @@
+package csulb.cecs323.app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.logging.Logger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Runs a stream of BookClub commands (see {@link CommandProcessor}) back to back, without any
+ * prompts, so that a script can drive the same operations as the menus. Each line is one
+ * command; blank lines and lines starting with '#' are skipped. The output of every command,
+ * ending with its "OK" or "ERROR" line, is written in order.
+ * <p>
+ * All the commands share one EntityManager, which is cleared after each command so that the
+ * persistence context does not grow with the length of the script. Given a {@link BatchSession},
+ * the changes are queued in it and written in batches.
+ * </p>
+ */
+public class ScriptRunner {
+    /** The start of a line that is skipped. */
+    public static final String COMMENT = "#";
+
+    private static final Logger LOGGER = Logger.getLogger(ScriptRunner.class.getName());
+
+    /** The factory that the EntityManager of the commands comes from. */
+    private final EntityManagerFactory factory;
+
+    /** The session that the changes are queued in; null to write each one straight away. */
+    private final BatchSession batch;
+
+    /** True to stop at the first command that fails; false to run every command regardless. */
+    private final boolean stopOnError;
+
+    /**
+     * @param factory       The factory that the EntityManager of the commands comes from.
+     * @param batch         The session that the changes are queued in; null to write each one
+     *                      when its command runs.
+     * @param stopOnError   True to stop at the first command that fails.
+     */
+    public ScriptRunner(EntityManagerFactory factory, BatchSession batch, boolean stopOnError) {
+        this.factory = factory;
+        this.batch = batch;
+        this.stopOnError = stopOnError;
+    }
+
+    /**
+     * Runs every command of a script, then flushes the batch, if there is one. The batch is
+     * flushed after a script stopped at a failed command too: without a batch, the commands
+     * before it would have been written already, and its output reports what was written.
+     * @param script    The commands, one per line.
+     * @param out       Where the output of the commands is written.
+     * @return          The number of commands that failed.
+     * @throws IOException if the script cannot be read.
+     */
+    public int run(BufferedReader script, PrintWriter out) throws IOException {
+        EntityManager manager = factory.createEntityManager();
+        CommandProcessor processor = new CommandProcessor(manager, batch);
+        int commands = 0;
+        int failures = 0;
+        long start = System.nanoTime();
+
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = script.readLine()) != null) {
+                ++lineNumber;
+                String command = line.trim();
+                if (command.isEmpty() || command.startsWith(COMMENT)) {
+                    continue;
+                }
+
+                ++commands;
+                if (!processor.execute(command, out)) {
+                    ++failures;
+                    if (stopOnError) {
+                        LOGGER.warning("Stopped at line " + lineNumber + ": " + command);
+                        break;
+                    }
+                }
+                manager.clear();
+            }
+
+            // the script is not done until its last changes are written, even when it stopped early
+            if (batch != null && !processor.execute("flush", out)) {
+                ++failures;
+            }
+        } finally {
+            manager.close();
+            out.flush();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        LOGGER.info(String.format("Ran %d commands (%d failed) in %.1f s, %.0f per second", commands, failures,
+                seconds, commands / Math.max(seconds, 1e-9)));
+        return failures;
+    } // End of run method
+} // End of ScriptRunner class
@@ -0,0 +1,511 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.AuthoringEntities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Finds books, authoring entities and publishers by the words of their title or name, in memory,
+ * without a query to the database. Every word searched for must begin a word of the title or
+ * name, so "nam wind" finds "The Name of the Wind"; case and accents are ignored.
+ * <p>
+ * Each word is a key of a sorted map whose value is the set of titles and names containing it,
+ * so the words that begin with a prefix are one range of the map, and each set is kept in the
+ * order that ranks equal matches, so a search can stop early. The index is built by
+ * {@link #install} from a forward only scan of the three tables, and is then kept up to date by
+ * the insert, update and delete events of the entities: the changes of a transaction are applied
+ * once it commits, and dropped if it rolls back. Rows written by plain JDBC, e.g. by a
+ * {@link BatchSession}, must be added by their writer through {@link #put} and {@link #remove}.
+ * </p>
+ */
+public final class SearchIndex {
+    /** The number of results returned when no limit is given. */
+    public static final int DEFAULT_LIMIT = 10;
+
+    /** The session property that the index of a factory is kept in. */
+    private static final String PROPERTY = "bookclub.search-index";
+
+    /** The number of rows read at a time by the scan that builds the index. */
+    private static final int FETCH_SIZE = 1000;
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Logger LOGGER = Logger.getLogger(SearchIndex.class.getName());
+
+    /**
+     * The kinds of row that are indexed.
+     */
+    public enum Kind {
+        BOOK("Book"),
+        AUTHOR("Author"),
+        PUBLISHER("Publisher");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    } // End of Kind enum
+
+    /**
+     * One result of a search: the row, its title or name, and how well it matched.
+     */
+    public static final class Hit {
+        /** Orders the hits best first: highest score, then as {@link Entry#ORDER}. */
+        private static final Comparator<Hit> RANK = Comparator.comparingInt((Hit hit) -> -hit.score)
+                .thenComparing(hit -> hit.entry, Entry.ORDER);
+
+        private final Entry entry;
+        private final int score;
+
+        private Hit(Entry entry, int score) {
+            this.entry = entry;
+            this.score = score;
+        }
+
+        /** Returns whether the hit is a book, an authoring entity or a publisher. */
+        public Kind getKind() {
+            return entry.kind;
+        }
+
+        /** Returns the primary key of the row: the ISBN, the email, or the publisher's name. */
+        public String getKey() {
+            return entry.key;
+        }
+
+        /** Returns the title or name that matched. */
+        public String getText() {
+            return entry.text;
+        }
+
+        /** Returns how well the hit matched; higher is better. */
+        public int getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return entry.kind.label + ": " + entry.text + (entry.kind == Kind.PUBLISHER ? "" : " (" + entry.key + ")");
+        }
+    } // End of Hit class
+
+    /**
+     * One indexed title or name.
+     */
+    private static final class Entry {
+        /** Orders entries that score the same: fewest words first, then by text, then by key. */
+        private static final Comparator<Entry> ORDER = Comparator.comparingInt((Entry entry) -> entry.words.length)
+                .thenComparing(entry -> entry.sortText)
+                .thenComparing(entry -> entry.kind)
+                .thenComparing(entry -> entry.key);
+
+        private final Kind kind;
+        private final String key;
+        private final String text;
+        /** The text in lower case, which the entries are sorted by. */
+        private final String sortText;
+        /** The distinct words of the text, in order, each the same instance as its key in the word map. */
+        private final String[] words;
+
+        private Entry(Kind kind, String key, String text, String[] words) {
+            this.kind = kind;
+            this.key = key;
+            this.text = text;
+            this.sortText = text.toLowerCase(Locale.ROOT);
+            this.words = words;
+        }
+    } // End of Entry class
+
+    /**
+     * Merges sets of entries, each sorted by {@link Entry#ORDER}, into one sequence in that order,
+     * without repeating an entry that more than one of the sets holds.
+     */
+    private static final class Merge implements Iterator<Entry> {
+        /** The next entry of each set that is not used up, with the rest of that set. */
+        private final PriorityQueue<Map.Entry<Entry, Iterator<Entry>>> heads =
+                new PriorityQueue<>(Map.Entry.comparingByKey(Entry.ORDER));
+
+        /** The entry returned last. */
+        private Entry last;
+
+        private Merge(Collection<? extends Set<Entry>> sets) {
+            for (Set<Entry> set : sets) {
+                advance(set.iterator());
+            }
+        }
+
+        private void advance(Iterator<Entry> rest) {
+            if (rest.hasNext()) {
+                heads.add(new AbstractMap.SimpleImmutableEntry<>(rest.next(), rest));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            // a repeated entry sorts next to itself, so it is at the head right after its first time
+            while (!heads.isEmpty() && heads.peek().getKey() == last) {
+                advance(heads.poll().getValue());
+            }
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Entry, Iterator<Entry>> head = heads.poll();
+            advance(head.getValue());
+            last = head.getKey();
+            return last;
+        }
+    } // End of Merge class
+
+    /** Guards the maps; searches share it, and changes take it alone. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The entries of each kind, by primary key. */
+    private final Map<Kind, Map<String, Entry>> entries = new EnumMap<>(Kind.class);
+
+    /** The entries that contain each word, sorted by {@link Entry#ORDER}. */
+    private final NavigableMap<String, NavigableSet<Entry>> words = new TreeMap<>();
+
+    /** The number of entries whose text begins with each word. */
+    private final NavigableMap<String, Integer> firstWords = new TreeMap<>();
+
+    private SearchIndex() {
+        for (Kind kind : Kind.values()) {
+            entries.put(kind, new HashMap<>());
+        }
+    }
+
+    /**
+     * Builds the index of a factory's database and keeps it up to date with the changes made
+     * through the factory from then on. A factory has one index; installing it again returns it.
+     * @param factory   The factory whose rows are indexed.
+     * @return          The index.
+     * @throws PersistenceException if the tables cannot be read.
+     */
+    public static SearchIndex install(EntityManagerFactory factory) {
+        return CommitListener.install(factory, PROPERTY, SearchIndex.class, session -> {
+            long start = System.nanoTime();
+            SearchIndex index = new SearchIndex();
+
+            // listen first, so that nothing written during the scan is missed
+            CommitListener.listen(session, index::record, Books.class, AuthoringEntities.class, Publishers.class);
+            index.load(factory);
+
+            LOGGER.info(String.format("Indexed %d titles and names (%d words) in %d ms", index.getSize(),
+                    index.getWordCount(), (System.nanoTime() - start) / 1_000_000));
+            return index;
+        });
+    } // End of install method
+
+    /**
+     * Returns the index of a factory.
+     * @param factory   The factory.
+     * @return          Its index, or null if none has been installed.
+     */
+    public static SearchIndex of(EntityManagerFactory factory) {
+        return CommitListener.of(factory, PROPERTY, SearchIndex.class);
+    } // End of of method
+
+    /**
+     * Finds the titles and names that contain every word of a search, best matches first.
+     * A word of the title or name that equals a searched word scores more than one that only
+     * begins with it, and a match of the first word more again.
+     * <p>
+     * Only the entries with a word that begins with the longest searched word, which is usually
+     * the rarest, are scored. They are read in the order that breaks ties between equal scores,
+     * so the search stops as soon as it holds enough hits with the best score possible.
+     * </p>
+     * @param query The words to search for.
+     * @param limit The most results to return.
+     * @return      The results, best first; empty if the search has no words.
+     */
+    public List<Hit> search(String query, int limit) {
+        String[] terms = words(query);
+        if (terms.length == 0 || limit < 1) {
+            return Collections.emptyList();
+        }
+
+        String longest = terms[0];
+        for (String term : terms) {
+            if (term.length() > longest.length()) {
+                longest = term;
+            }
+        }
+
+        // the worst hit kept is at the head
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Hit.RANK.reversed());
+        lock.readLock().lock();
+        try {
+            int maxScore = maxScore(terms);
+            Collection<NavigableSet<Entry>> matches = prefixRange(words, longest).values();
+            Iterator<Entry> candidates = matches.size() == 1 ? matches.iterator().next().iterator()
+                    : new Merge(matches);
+
+            while (candidates.hasNext()) {
+                Entry entry = candidates.next();
+                int score = score(entry, terms);
+                // a later entry that only ties the worst hit ranks below it
+                if (score == 0 || best.size() == limit && score <= best.peek().score) {
+                    continue;
+                }
+
+                best.add(new Hit(entry, score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+                if (best.size() == limit && best.peek().score == maxScore) {
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(Hit.RANK);
+        return hits;
+    } // End of search method
+
+    /**
+     * Returns the most that any entry could score against the words of a search: a word can only
+     * be matched exactly if it is indexed, and the first word only if some text begins with it.
+     */
+    private int maxScore(String[] terms) {
+        int max = 0;
+        for (String term : terms) {
+            max += words.containsKey(term) ? 3 : 2;
+        }
+        return prefixRange(firstWords, terms[0]).isEmpty() ? max : max + 1;
+    } // End of maxScore method
+
+    /** Returns the part of a map whose keys begin with the prefix. */
+    private static <V> NavigableMap<String, V> prefixRange(NavigableMap<String, V> map, String prefix) {
+        return map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    } // End of prefixRange method
+
+    /**
+     * Scores an entry against the words of a search.
+     * @return  The score; 0 if a word of the search begins none of the entry's words.
+     */
+    private static int score(Entry entry, String[] terms) {
+        int total = 0;
+        for (String term : terms) {
+            int best = 0;
+            for (String word : entry.words) {
+                if (word.equals(term)) {
+                    best = 3;
+                    break;
+                }
+                if (word.startsWith(term)) {
+                    best = 2;
+                }
+            }
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+
+        if (entry.words[0].startsWith(terms[0])) {
+            ++total;
+        }
+        return total;
+    } // End of score method
+
+    /**
+     * Adds a title or name to the index, or replaces the one indexed for the same row.
+     * @param kind  What the row is.
+     * @param key   The primary key of the row.
+     * @param text  The title or name of the row.
+     */
+    public void put(Kind kind, String key, String text) {
+        String[] textWords = words(text);
+
+        lock.writeLock().lock();
+        try {
+            unlink(entries.get(kind).remove(key));
+            if (textWords.length == 0) {
+                return;
+            }
+
+            Entry entry = new Entry(kind, key, text, textWords);
+            for (int i = 0; i < textWords.length; ++i) {
+                // share one instance of each word between the map and every entry that has it
+                Map.Entry<String, NavigableSet<Entry>> existing = words.ceilingEntry(textWords[i]);
+                if (existing != null && existing.getKey().equals(textWords[i])) {
+                    textWords[i] = existing.getKey();
+                    existing.getValue().add(entry);
+                } else {
+                    NavigableSet<Entry> matches = new TreeSet<>(Entry.ORDER);
+                    matches.add(entry);
+                    words.put(textWords[i], matches);
+                }
+            }
+            firstWords.merge(textWords[0], 1, Integer::sum);
+            entries.get(kind).put(key, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    } // End of put method
+
+    /**
+     * Takes a row out of the index; a row that is not indexed is ignored.
+     * @param kind  What the row is.
+     * @param key   The primary key of the row.
+     */
+    public void remove(Kind kind, String key) {
+        lock.writeLock().lock();
+        try {
+            unlink(entries.get(kind).remove(key));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    } // End of remove method
+
+    /** Takes an entry out of the sets of its words, and drops the words left with none. */
+    private void unlink(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        firstWords.computeIfPresent(entry.words[0], (word, count) -> count == 1 ? null : count - 1);
+        for (String word : entry.words) {
+            Set<Entry> matches = words.get(word);
+            matches.remove(entry);
+            if (matches.isEmpty()) {
+                words.remove(word);
+            }
+        }
+    } // End of unlink method
+
+    /** Returns the number of titles and names indexed. */
+    public int getSize() {
+        lock.readLock().lock();
+        try {
+            return entries.values().stream().mapToInt(Map::size).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End of getSize method
+
+    /** Returns the number of distinct words indexed. */
+    public int getWordCount() {
+        lock.readLock().lock();
+        try {
+            return words.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    } // End of getWordCount method
+
+    /**
+     * Splits a text into its distinct words, in lower case and without accents.
+     */
+    private static String[] words(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String folded = ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(folded)).filter(word -> !word.isEmpty()).distinct()
+                .toArray(String[]::new);
+    } // End of words method
+
+    /**
+     * Reads every title and name in the database, a page of rows at a time.
+     */
+    private void load(EntityManagerFactory factory) {
+        EntityManager manager = factory.createEntityManager();
+        // the connection is only handed out within a transaction
+        EntityTransaction tx = manager.getTransaction();
+        tx.begin();
+        try (Statement statement = manager.unwrap(Connection.class).createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(FETCH_SIZE);
+            scan(statement, "SELECT ISBN, TITLE FROM BOOKS", Kind.BOOK);
+            scan(statement, "SELECT EMAIL, NAME FROM AUTHORING_ENTITIES", Kind.AUTHOR);
+            scan(statement, "SELECT NAME, NAME FROM PUBLISHERS", Kind.PUBLISHER);
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not build the search index", e);
+        } finally {
+            tx.rollback();
+            manager.close();
+        }
+    } // End of load method
+
+    /** Indexes the rows of a query whose columns are the key and the text. */
+    private void scan(Statement statement, String sql, Kind kind) throws SQLException {
+        try (ResultSet rows = statement.executeQuery(sql)) {
+            while (rows.next()) {
+                put(kind, rows.getString(1), rows.getString(2));
+            }
+        }
+    } // End of scan method
+
+    /**
+     * Returns the change to the index that a write of an entity makes, for when its unit of
+     * work commits. The title or name is read now, as it was written.
+     */
+    private Runnable record(Session unitOfWork, Object entity, CommitListener.Write write) {
+        Kind kind;
+        String key;
+        String text;
+        if (entity instanceof Books) {
+            kind = Kind.BOOK;
+            key = ((Books) entity).getISBN();
+            text = ((Books) entity).getTitle();
+        } else if (entity instanceof AuthoringEntities) {
+            kind = Kind.AUTHOR;
+            key = ((AuthoringEntities) entity).getEmail();
+            text = ((AuthoringEntities) entity).getName();
+        } else if (entity instanceof Publishers) {
+            kind = Kind.PUBLISHER;
+            key = ((Publishers) entity).getName();
+            text = key;
+        } else {
+            return null;
+        }
+        return write == CommitListener.Write.DELETE ? () -> remove(kind, key) : () -> put(kind, key, text);
+    } // End of record method
+} // End of SearchIndex class
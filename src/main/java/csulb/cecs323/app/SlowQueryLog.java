@@ -0,0 +1,280 @@
+package csulb.cecs323.app;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Writes every query that takes longer than a threshold to a rolling file, one line each, with its
+ * SQL, its parameters, the number of rows it returned or changed, how long it took, and the menu
+ * operation or command that ran it. The {@link MetricsProfiler} hands the slow queries over; the
+ * thread that ran the query only puts them on a queue, and a thread of the log's own writes them,
+ * so a slow disk never slows a query down. If the queue is full the entry is dropped rather than
+ * waited for, and the number dropped is written once there is room again.
+ * <p>
+ * Configured like the cache, from the persistence unit properties, and a system property of the
+ * same name overrides them:
+ * </p>
+ * <ul>
+ *     <li>{@value #THRESHOLD_MILLIS} - the time a query must take to be logged; 0 logs every
+ *     query and a negative value turns the log off</li>
+ *     <li>{@value #FILE} - the file name, as a {@link FileHandler} pattern; "%g" is replaced with
+ *     the generation of the file</li>
+ *     <li>{@value #FILE_LIMIT} - the size in bytes that a file may reach before the next one is
+ *     started</li>
+ *     <li>{@value #FILE_COUNT} - the number of files kept; the oldest is deleted</li>
+ * </ul>
+ */
+public class SlowQueryLog {
+    /** The property holding the time, in milliseconds, that a query must take to be logged. */
+    public static final String THRESHOLD_MILLIS = "bookclub.slow-query.threshold-ms";
+
+    /** The property holding the pattern of the file names. */
+    public static final String FILE = "bookclub.slow-query.file";
+
+    /** The property holding the size, in bytes, of a file before the next is started. */
+    public static final String FILE_LIMIT = "bookclub.slow-query.file-limit";
+
+    /** The property holding the number of files kept. */
+    public static final String FILE_COUNT = "bookclub.slow-query.file-count";
+
+    /** The threshold used when none is configured. */
+    public static final int DEFAULT_THRESHOLD_MILLIS = 100;
+
+    /** The file name pattern used when none is configured. */
+    public static final String DEFAULT_FILE = "slow-queries.%g.log";
+
+    /** The file size used when none is configured. */
+    public static final int DEFAULT_FILE_LIMIT = 10_000_000;
+
+    /** The number of files used when none is configured. */
+    public static final int DEFAULT_FILE_COUNT = 5;
+
+    /** The most slow queries waiting to be written. */
+    public static final int QUEUE_CAPACITY = 4096;
+
+    /** The menu operation or command running on each thread. */
+    private static final ThreadLocal<String> OPERATION = new ThreadLocal<>();
+
+    private static final Logger LOGGER = Logger.getLogger(SlowQueryLog.class.getName());
+
+    /**
+     * One slow query.
+     */
+    public static final class Entry {
+        private final long timestamp;
+        private final long nanos;
+        private final long rows;
+        private final String operation;
+        private final String query;
+        private final String sql;
+        private final String parameters;
+
+        /**
+         * @param nanos         How long the query took.
+         * @param rows          The number of rows that the query returned or changed.
+         * @param operation     The menu operation or command that ran it; null if not known.
+         * @param query         The name of the query, as in its {@link QueryMetrics}.
+         * @param sql           The SQL that it ran; null if it ran none.
+         * @param parameters    The values bound to the SQL.
+         */
+        public Entry(long nanos, long rows, String operation, String query, String sql, String parameters) {
+            this.timestamp = System.currentTimeMillis();
+            this.nanos = nanos;
+            this.rows = rows;
+            this.operation = operation;
+            this.query = query;
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+
+        /** Returns the entry as it is written to the file. */
+        @Override
+        public String toString() {
+            return String.format("%s %.3f ms rows=%d operation=\"%s\" query=\"%s\" sql=\"%s\" parameters=%s",
+                    Instant.ofEpochMilli(timestamp), nanos / 1e6, rows, operation == null ? "" : operation,
+                    query, sql == null ? "" : sql, parameters);
+        }
+    } // End of Entry class
+
+    /**
+     * Writes each record as a line of its message alone.
+     */
+    private static class LineFormatter extends Formatter {
+        @Override
+        public String format(LogRecord record) {
+            return record.getMessage() + System.lineSeparator();
+        }
+    } // End of LineFormatter class
+
+    /** Queries that take longer than this, in nanoseconds, are logged. */
+    private final long thresholdNanos;
+
+    /** Where the entries are written; rolls the files over. */
+    private final Handler handler;
+
+    /** The entries waiting to be written. */
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /** The number of entries dropped because the queue was full, since the last was written. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Writes the entries on the queue. */
+    private final Thread writer;
+
+    /** Set once the log is closed; no more entries are taken. */
+    private volatile boolean closed;
+
+    /**
+     * Starts a log that writes to a handler.
+     * @param thresholdMillis   The time a query must take to be logged.
+     * @param handler           Where the entries are written.
+     */
+    public SlowQueryLog(long thresholdMillis, Handler handler) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.handler = handler;
+        handler.setFormatter(new LineFormatter());
+
+        writer = new Thread(this::write, "slow-query-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the log configured in a session's persistence unit, or in the system properties.
+     * @param session   The session holding the persistence unit properties.
+     * @return          The log; null if it is turned off or its file cannot be opened.
+     */
+    public static SlowQueryLog open(Session session) {
+        int threshold = intProperty(session, THRESHOLD_MILLIS, DEFAULT_THRESHOLD_MILLIS);
+        if (threshold < 0) {
+            return null;
+        }
+
+        String file = stringProperty(session, FILE, DEFAULT_FILE);
+        try {
+            Handler handler = new FileHandler(file, intProperty(session, FILE_LIMIT, DEFAULT_FILE_LIMIT),
+                    intProperty(session, FILE_COUNT, DEFAULT_FILE_COUNT), true);
+            LOGGER.fine("Logging queries slower than " + threshold + " ms to " + file);
+            return new SlowQueryLog(threshold, handler);
+        } catch (IOException e) {
+            // the application still runs, without the log
+            LOGGER.warning("Could not open the slow query log " + file + ": " + e);
+            return null;
+        }
+    } // End of open method
+
+    /**
+     * Sets the menu operation or command that the queries run next by this thread belong to.
+     * @param operation     The operation, e.g. "menu 2.2" or "delete-book"; null once it is done.
+     */
+    public static void setOperation(String operation) {
+        if (operation == null) {
+            OPERATION.remove();
+        } else {
+            OPERATION.set(operation);
+        }
+    } // End of setOperation method
+
+    /** Returns the menu operation or command that this thread is running; null if none. */
+    public static String getOperation() {
+        return OPERATION.get();
+    } // End of getOperation method
+
+    /** Returns true if a query that took this long should be logged. */
+    public boolean isSlow(long nanos) {
+        return nanos >= thresholdNanos;
+    } // End of isSlow method
+
+    /**
+     * Queues a slow query to be written, without waiting; drops it if the queue is full.
+     * @param entry     The slow query.
+     */
+    public void log(Entry entry) {
+        if (closed || !queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    } // End of log method
+
+    /** Returns the number of entries waiting to be written. */
+    public int getPending() {
+        return queue.size();
+    } // End of getPending method
+
+    /**
+     * Writes the entries still queued, closes the file and stops the writer thread. The
+     * {@link MetricsProfiler} that opened the log calls this when its session logs out.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        handler.close();
+    } // End of close method
+
+    /** Takes the entries off the queue and writes them, until the log is closed. */
+    private void write() {
+        while (!closed) {
+            try {
+                publish(queue.take());
+            } catch (InterruptedException e) {
+                // closed; whatever is left is written below
+            }
+        }
+
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            publish(entry);
+        }
+        handler.flush();
+    } // End of write method
+
+    /** Writes one entry, after a line for any that were dropped before it. */
+    private void publish(Entry entry) {
+        long missed = dropped.getAndSet(0);
+        if (missed > 0) {
+            handler.publish(new LogRecord(Level.WARNING, Instant.now() + " " + missed +
+                    " slow queries were not logged; the queue was full"));
+        }
+        handler.publish(new LogRecord(Level.INFO, entry.toString()));
+
+        // the handler flushes only when told to; wait for a lull so bursts are written together
+        if (queue.isEmpty()) {
+            handler.flush();
+        }
+    } // End of publish method
+
+    /** Returns a property, preferring a system property over the persistence unit. */
+    private static String stringProperty(Session session, String name, String defaultValue) {
+        Object value = System.getProperty(name);
+        if (value == null) {
+            value = session.getProperty(name);
+        }
+        return value == null ? defaultValue : value.toString().trim();
+    } // End of stringProperty method
+
+    /** Returns an integer property, preferring a system property over the persistence unit. */
+    private static int intProperty(Session session, String name, int defaultValue) {
+        return Integer.parseInt(stringProperty(session, name, String.valueOf(defaultValue)));
+    } // End of intProperty method
+} // End of SlowQueryLog class
@@ -0,0 +1,124 @@
+package csulb.cecs323.app;
+
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.OptimisticLockException;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Runs the changes of one EntityManager in transactions that last only as long as the change
+ * itself, never while waiting for a person to type. Reads need no transaction and go straight
+ * through the EntityManager (or a {@link BookClub}); only the writes come here.
+ * <p>
+ * The entities are versioned (@Version), so a write that was made from an out of date copy of a
+ * row fails at commit instead of overwriting the newer row or waiting on a lock. Such a write is
+ * run again from the start, up to {@link #DEFAULT_ATTEMPTS} times, with the stale copy forgotten.
+ * A write must therefore look up what it changes by key, inside the write, rather than change an
+ * entity that it was handed: on a retry that entity is detached and out of date.
+ * </p>
+ */
+public class UnitOfWork {
+    /** The number of times a write is tried before its conflict is given up on. */
+    public static final int DEFAULT_ATTEMPTS = 3;
+
+    private static final Logger LOGGER = Logger.getLogger(UnitOfWork.class.getName());
+
+    /** The EntityManager that the writes run in. */
+    private final EntityManager entityManager;
+
+    /** The number of times a write is tried. */
+    private final int maxAttempts;
+
+    /**
+     * @param manager   The EntityManager that the writes run in.
+     */
+    public UnitOfWork(EntityManager manager) {
+        this(manager, DEFAULT_ATTEMPTS);
+    }
+
+    /**
+     * @param manager       The EntityManager that the writes run in.
+     * @param maxAttempts   The number of times a write is tried; at least 1.
+     */
+    public UnitOfWork(EntityManager manager, int maxAttempts) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("A write must be tried at least once");
+        this.entityManager = manager;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Runs a change in a transaction of its own, and commits it.
+     * @param change    The change; it may run more than once, so it should have no effects
+     *                  outside the EntityManager it is given.
+     * @throws javax.persistence.PersistenceException if the change fails, or still conflicts with
+     *                                                other writes after the last attempt.
+     */
+    public void write(Consumer<EntityManager> change) {
+        EntityTransaction tx = entityManager.getTransaction();
+
+        for (int attempt = 1; ; ++attempt) {
+            tx.begin();
+            try {
+                change.accept(entityManager);
+                tx.commit();
+                return;
+            } catch (RuntimeException e) {
+                Object stale = conflictingEntity(e);
+                if (stale == null || attempt == maxAttempts) {
+                    throw e;
+                }
+                LOGGER.fine("Write attempt " + attempt + " lost an optimistic lock; trying again");
+                forget(stale);
+            } finally {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+            }
+        }
+    } // End of write method
+
+    /**
+     * Finds the entity whose version was out of date, if the exception is an optimistic lock
+     * failure. The failure surfaces as a JPA exception when it happens at a flush, but wrapped in
+     * a RollbackException, as EclipseLink's own exception, when it happens at a commit.
+     * @return  The stale entity, this class if the failure does not name one, or null if the
+     *          exception is not an optimistic lock failure.
+     */
+    private static Object conflictingEntity(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            Object entity = null;
+            if (cause instanceof OptimisticLockException) {
+                entity = ((OptimisticLockException) cause).getEntity();
+            } else if (cause instanceof org.eclipse.persistence.exceptions.OptimisticLockException) {
+                entity = ((org.eclipse.persistence.exceptions.OptimisticLockException) cause).getObject();
+            } else {
+                continue;
+            }
+            return entity != null ? entity : UnitOfWork.class;
+        }
+        return null;
+    } // End of conflictingEntity method
+
+    /**
+     * Drops the stale copy of an entity from the persistence context and the shared cache, so
+     * the next attempt reads the row as it is now.
+     */
+    private void forget(Object stale) {
+        entityManager.clear();
+
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        Object id = stale == UnitOfWork.class ? null
+                : entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(stale);
+        if (id != null) {
+            cache.evict(stale.getClass(), id);
+        } else {
+            cache.evictAll();
+        }
+    } // End of forget method
+} // End of UnitOfWork class
@@ -10,9 +10,16 @@ import java.util.List;
  *
  * Authoring entities consist of the person or people who helped to create the book.
  * They can consist of a Writing group, an Individual Author, or an Ad Hoc Team.
+ *
+ * All three are stored in the one table, told apart by the Authoring_Entity_Type column. That
+ * column is indexed so that the queries for a single type of author read only its rows.
  */
 @Entity
-@Table(name = "Authoring_Entities")
+@Cacheable
+@Table(
+        name = "Authoring_Entities",
+        indexes = @Index(name = "authoring_entities_ix_01", columnList = "Authoring_Entity_Type")
+)
 @DiscriminatorColumn(name = "Authoring_Entity_Type")
 @NamedNativeQueries({
         @NamedNativeQuery(
@@ -27,6 +34,24 @@ import java.util.List;
                 query = "SELECT * " +
                         "FROM AUTHORING_ENTITIES ",
                 resultClass = AuthoringEntities.class
+        ),
+        @NamedNativeQuery(
+                name = "ReturnAuthorKeyPage",
+                query = "SELECT EMAIL, AUTHORING_ENTITY_TYPE " +
+                        "FROM AUTHORING_ENTITIES " +
+                        "WHERE EMAIL > ? " +
+                        "ORDER BY EMAIL"
+        ),
+        @NamedNativeQuery(
+                name = "CountAuthors",
+                query = "SELECT COUNT(*) " +
+                        "FROM AUTHORING_ENTITIES"
+        ),
+        @NamedNativeQuery(
+                name = "AnyAuthor",
+                query = "SELECT 1 " +
+                        "FROM AUTHORING_ENTITIES " +
+                        "FETCH FIRST 1 ROWS ONLY"
         )
 })
 public abstract class AuthoringEntities {
@@ -40,6 +65,11 @@ public abstract class AuthoringEntities {
     @Column(nullable = false, length = 30)
     private String email;
 
+    /** The version of the row, for optimistic locking; shared by all three types of author */
+    @Version
+    @Column(nullable = false, columnDefinition = "INTEGER DEFAULT 1")
+    private int version;
+
     /** The list of books for the Many-to-Many relationship */
     @OneToMany(mappedBy = "author")
     private List<Books> booksList;
@@ -68,6 +98,11 @@ public abstract class AuthoringEntities {
             return name;
     } // end of getName()
 
+    /** Returns the version of the authoring entity, as last read from the database */
+    public int getVersion() {
+        return version;
+    } // end of getVersion()
+
     /** Returns the list of books associated with the authoring entity */
     public List<Books> getBooksList() {
         return booksList;
@@ -85,6 +120,25 @@ public abstract class AuthoringEntities {
         this.name = name;
     } // end of setName()
 
+    /**
+     * Adds to the list of books, reading the whole list first if it has not been read yet; a list
+     * that is null, as on a new object, is left alone. BookClub.updateBooksList only calls this
+     * once the list has been read.
+     */
+    public void addToBooksList(Books newBook) {
+        if (booksList != null)
+            booksList.add(newBook);
+    } // end of addToBooksList()
+
+    /**
+     * Removes from the list of books, reading the whole list first if it has not been read yet;
+     * a list that is null is left alone.
+     */
+    public void removeFromBooksList(Books book) {
+        if (booksList != null)
+            booksList.remove(book);
+    } // end of removeFromBooksList()
+
 
     /** Override toString */
     @Override
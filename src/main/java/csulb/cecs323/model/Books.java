@@ -10,8 +10,14 @@ import java.util.Locale;
 *
 * Books are literary works of art which consist of various genres and authors.
 * Books are publicized by publishers, and are validated by their corresponding Authoring Entity.
+*
+* The two unique constraints double as the composite indexes of the title lookups: schema
+* generation creates a (title, publisher_name) and a (title, authoring_entities_email) index to
+* back them, and ReturnBookByPublisher and ReturnBookByAuthor filter on exactly those columns of
+* BOOKS so that Derby can answer them with an index probe instead of a join.
  */
 @Entity
+@Cacheable
 @Table(
      name = "BOOKS",
      uniqueConstraints = {
@@ -31,16 +37,14 @@ import java.util.Locale;
                 name = "ReturnBookByAuthor",
                 query = "SELECT * " +
                         "FROM BOOKS " +
-                        "INNER JOIN AUTHORING_ENTITIES A on BOOKS.AUTHORING_ENTITIES_EMAIL = A.EMAIL " +
-                        "WHERE BOOKS.title = ? AND A.EMAIL = ?",
+                        "WHERE TITLE = ? AND AUTHORING_ENTITIES_EMAIL = ?",
                 resultClass = Books.class
         ),
         @NamedNativeQuery(
                 name = "ReturnBookByPublisher",
                 query = "SELECT * " +
                         "FROM BOOKS " +
-                        "INNER JOIN PUBLISHERS P on P.NAME = BOOKS.PUBLISHER_NAME " +
-                        "WHERE BOOKS.title = ? AND P.NAME = ?",
+                        "WHERE TITLE = ? AND PUBLISHER_NAME = ?",
                 resultClass = Books.class
         ),
         @NamedNativeQuery(
@@ -48,6 +52,24 @@ import java.util.Locale;
                 query = "SELECT *" +
                         "FROM BOOKS",
                 resultClass = Books.class
+        ),
+        @NamedNativeQuery(
+                name = "ReturnBookKeyPage",
+                query = "SELECT ISBN, TITLE " +
+                        "FROM BOOKS " +
+                        "WHERE ISBN > ? " +
+                        "ORDER BY ISBN"
+        ),
+        @NamedNativeQuery(
+                name = "CountBooks",
+                query = "SELECT COUNT(*) " +
+                        "FROM BOOKS"
+        ),
+        @NamedNativeQuery(
+                name = "AnyBook",
+                query = "SELECT 1 " +
+                        "FROM BOOKS " +
+                        "FETCH FIRST 1 ROWS ONLY"
         )
 })
 public class Books {
@@ -65,6 +87,12 @@ public class Books {
     @Column(name = "year_published", nullable = false)
     private int yearPublished;
 
+    /** The version of the row, checked and incremented by every update (optimistic locking).
+     *  Rows inserted without one, e.g. by the seed script, start at 1 */
+    @Version
+    @Column(nullable = false, columnDefinition = "INTEGER DEFAULT 1")
+    private int version;
+
     /** The publisher for the Many-to-One relationship */
     @ManyToOne
     @JoinColumn (name = "publisher_name", referencedColumnName = "name", nullable = false)
@@ -103,6 +131,11 @@ public class Books {
             return title;
     } // end of getTitle()
 
+    /** Returns the version of the book, as last read from the database */
+    public int getVersion() {
+        return version;
+    } // end of getVersion()
+
     /** Returns the publishing year of the book */
     public int getYearPublished(){
         return yearPublished;
@@ -138,11 +171,13 @@ public class Books {
         yearPublished = year;
     } // end of setYearPublished()
 
-    // TODO: method for changing author of the book (requirement #4)
-   /** Sets the author of the book */
-   public void setAuthor(AuthoringEntities newAuthor) {
-       author = newAuthor;
-   } // end of setAuthor()
+    /**
+     * Sets the author of the book. The lists of books of the old and new author are not changed
+     * here, as that would read both lists in full; BookClub.reassignBook keeps them in step.
+     */
+    public void setAuthor(AuthoringEntities newAuthor) {
+        author = newAuthor;
+    } // end of setAuthor()
 
 
     /** Overloaded to_string */
@@ -51,18 +51,18 @@ public class IndividualAuthors extends AuthoringEntities {
     /** Returns a description of the individual author. */
     @Override
     public String toString() {
-        String description = "Authoring Entity: IndividualAuthor\n" +
+        StringBuilder description = new StringBuilder("Authoring Entity: IndividualAuthor\n" +
                 super.toString() +
-                "\n  Teams: { ";
+                "\n  Teams: { ");
 
         for (int i = 0; i < adHocTeamsList.size(); ++i)
             if (i < adHocTeamsList.size() - 1)
-                description += adHocTeamsList.get(i).getName() + ", ";
+                description.append(adHocTeamsList.get(i).getName()).append(", ");
             else
-                description += adHocTeamsList.get(i).getName();
+                description.append(adHocTeamsList.get(i).getName());
 
-        description += " }";
+        description.append(" }");
 
-        return description;
+        return description.toString();
     } // end of toString()
 } // end of IndividualAuthors class
@@ -12,6 +12,7 @@ import java.util.List;
  * from Authors to publish the books and give them the appropriate credit.
  */
 @Entity
+@Cacheable
 @Table(
         uniqueConstraints = {
                 @UniqueConstraint(name = "publishers_uk_01", columnNames = {"phone"}),
@@ -46,6 +47,24 @@ import java.util.List;
                 query = "SELECT * " +
                         "FROM PUBLISHERS",
                 resultClass = Publishers.class
+        ),
+        @NamedNativeQuery(
+                name = "ReturnPublisherKeyPage",
+                query = "SELECT NAME " +
+                        "FROM PUBLISHERS " +
+                        "WHERE NAME > ? " +
+                        "ORDER BY NAME"
+        ),
+        @NamedNativeQuery(
+                name = "CountPublishers",
+                query = "SELECT COUNT(*) " +
+                        "FROM PUBLISHERS"
+        ),
+        @NamedNativeQuery(
+                name = "AnyPublisher",
+                query = "SELECT 1 " +
+                        "FROM PUBLISHERS " +
+                        "FETCH FIRST 1 ROWS ONLY"
         )
 })
 public class Publishers {
@@ -63,6 +82,11 @@ public class Publishers {
     @Column(nullable = false, length = 80)
     private String email;
 
+    /** The version of the row, for optimistic locking */
+    @Version
+    @Column(nullable = false, columnDefinition = "INTEGER DEFAULT 1")
+    private int version;
+
     /** The list of books for the One-To-Many relationship */
     @OneToMany(mappedBy = "publisher")
     private List<Books> books;
@@ -98,6 +122,11 @@ public class Publishers {
         return email;
     } // end of getEmail()
 
+    /** Returns the version of the publisher, as last read from the database */
+    public int getVersion() {
+        return version;
+    } // end of getVersion()
+
 
     /* Mutator methods */
 
@@ -117,11 +146,25 @@ public class Publishers {
         email = newEmail;
     } // end of setEmail()
 
-    /** Adds to the list of books. */
+    /**
+     * Adds to the list of books, reading the whole list first if it has not been read yet; a list
+     * that is null, as on a new object, is left alone. BookClub.updateBooksList only calls this
+     * once the list has been read.
+     */
     public void addToBookList(Books newBook) {
-        books.add(newBook);
+        if (books != null)
+            books.add(newBook);
     } // end of addToBookList
 
+    /**
+     * Removes from the list of books, reading the whole list first if it has not been read yet;
+     * a list that is null is left alone.
+     */
+    public void removeFromBookList(Books book) {
+        if (books != null)
+            books.remove(book);
+    } // end of removeFromBookList
+
     /** Returns a description of the publisher. */
     @Override
     public String toString() {
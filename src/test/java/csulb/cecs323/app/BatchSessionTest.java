@@ -0,0 +1,95 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.AuthoringEntities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks that a batched insert that breaks a constraint fails only itself, whether the flush was
+ * asked for or started by a full queue, and that the inserts queued with it are still written.
+ */
+class BatchSessionTest {
+    /** ISBNs that the seeded catalog does not have. */
+    private static final String K_AND_R = "9780131103627";
+    private static final String DRAGON_BOOK = "9780201100884";
+
+    private static TestCatalog catalog;
+
+    @BeforeAll
+    static void seed() {
+        catalog = new TestCatalog("batch-session", 100);
+    }
+
+    @AfterAll
+    static void drop() {
+        catalog.close();
+    }
+
+    @Test
+    void aDuplicateFailsOnlyItselfInAFlushThatWasAskedFor() {
+        DatasetGenerator dataset = catalog.getDataset();
+        try (BatchSession batch = new BatchSession(catalog.getFactory(), 100, 0)) {
+            batch.insert(book(dataset.isbn(0), "A Duplicate"));
+            batch.insert(book(K_AND_R, "A New Book"));
+
+            BatchSession.Flush flush = batch.flush();
+            assertEquals(1, flush.getOperationCount());
+            assertEquals(1, flush.getFailures().size());
+            assertTrue(flush.getFailures().get(0).contains(dataset.isbn(0)), flush.getFailures().toString());
+        }
+
+        assertEquals("A New Book", title(K_AND_R));
+        assertEquals(dataset.title(0), title(dataset.isbn(0)));
+    }
+
+    @Test
+    void aDuplicateInAFullQueueIsNotThrownAtTheCaller() {
+        DatasetGenerator dataset = catalog.getDataset();
+        try (BatchSession batch = new BatchSession(catalog.getFactory(), 2, 0)) {
+            batch.insert(book(dataset.isbn(1), "Another Duplicate"));
+            // fills the queue, which flushes it here
+            batch.insert(book(DRAGON_BOOK, "Another New Book"));
+
+            assertEquals(0, batch.getPending());
+            assertTrue(batch.getSummary().contains("(1 failed)"), batch.getSummary());
+        }
+
+        assertEquals("Another New Book", title(DRAGON_BOOK));
+        assertEquals(dataset.title(1), title(dataset.isbn(1)));
+    }
+
+    /** Returns a new book of the first author and publisher of the catalog. */
+    private static Books book(String isbn, String title) {
+        DatasetGenerator dataset = catalog.getDataset();
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        try {
+            return new Books(manager.find(AuthoringEntities.class, dataset.authorEmail(0)),
+                    manager.find(Publishers.class, dataset.publisherName(0)), isbn, title, 2001);
+        } finally {
+            manager.close();
+        }
+    }
+
+    /** Returns the title of a book, as it is in the database. */
+    private static String title(String isbn) {
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        try {
+            Books book = manager.find(Books.class, isbn);
+            assertNotNull(book, isbn);
+            return book.getTitle();
+        } finally {
+            manager.close();
+        }
+    }
+} // End of BatchSessionTest class
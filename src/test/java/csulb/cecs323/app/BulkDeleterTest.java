@@ -0,0 +1,127 @@
+package csulb.cecs323.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks that a bulk delete takes the books it removed, and only those, out of the catalog
+ * statistics, the ISBN index and the search index, and counts them as stale in the key filters,
+ * even when its filter also matches books that are already gone.
+ */
+class BulkDeleterTest {
+    private static TestCatalog catalog;
+    private static CatalogStatistics statistics;
+    private static IsbnIndex isbns;
+    private static SearchIndex search;
+    private static KeyFilters filters;
+
+    @BeforeAll
+    static void seed() {
+        catalog = new TestCatalog("bulk-deleter", 200);
+        statistics = CatalogStatistics.install(catalog.getFactory());
+        isbns = IsbnIndex.install(catalog.getFactory());
+        search = SearchIndex.install(catalog.getFactory());
+        filters = KeyFilters.install(catalog.getFactory());
+    }
+
+    @AfterAll
+    static void drop() {
+        catalog.close();
+    }
+
+    @Test
+    void forgetsTheBooksItDeleted() {
+        DatasetGenerator dataset = catalog.getDataset();
+        String author = dataset.authorEmail(0);
+        List<Integer> deleted = booksOfAuthor(0);
+        int before = statistics.getBookCount();
+        long stale = filters.filter(KeyFilters.Key.ISBN).getStaleKeys();
+        for (int book : deleted) {
+            assertTrue(isbns.contains(IsbnCodec.encode(dataset.isbn(book))));
+            assertTrue(found(book), dataset.title(book));
+        }
+
+        assertEquals(deleted.size(), delete(BookFilter.byAuthor(author)));
+
+        assertEquals(before - deleted.size(), statistics.getBookCount());
+        assertEquals(stale + deleted.size(), filters.filter(KeyFilters.Key.ISBN).getStaleKeys());
+        for (int book : deleted) {
+            assertFalse(isbns.contains(IsbnCodec.encode(dataset.isbn(book))));
+            assertFalse(found(book), dataset.title(book));
+        }
+        assertEquals(countInDatabase(), statistics.getBookCount());
+    }
+
+    @Test
+    void changesNothingForTheBooksThatWereAlreadyGone() {
+        DatasetGenerator dataset = catalog.getDataset();
+        // the books of an author are deleted, and then those of the year of one of them
+        int year = dataset.yearPublished(booksOfAuthor(1).get(0));
+        delete(BookFilter.byAuthor(dataset.authorEmail(1)));
+        int before = statistics.getBookCount();
+        int ofYear = statistics.getBookCountOfYear(year);
+        long stale = filters.filter(KeyFilters.Key.ISBN).getStaleKeys();
+
+        assertEquals(0, delete(BookFilter.byAuthor(dataset.authorEmail(1))));
+        assertEquals(before, statistics.getBookCount());
+        assertEquals(stale, filters.filter(KeyFilters.Key.ISBN).getStaleKeys());
+
+        long deleted = delete(BookFilter.byYears(year, year));
+        assertEquals(ofYear, deleted);
+        assertEquals(before - deleted, statistics.getBookCount());
+        assertEquals(0, statistics.getBookCountOfYear(year));
+        assertEquals(stale + deleted, filters.filter(KeyFilters.Key.ISBN).getStaleKeys());
+        assertEquals(countInDatabase(), statistics.getBookCount());
+        assertEquals(countInDatabase(), isbns.size());
+    }
+
+    /** Deletes the books that match a filter, and returns how many were deleted. */
+    private static long delete(BookFilter filter) {
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        try {
+            return new BulkDeleter(manager, 4).delete(filter).getDeleted();
+        } finally {
+            manager.close();
+        }
+    }
+
+    /** Returns the indexes of the books of an author that have not been deleted yet. */
+    private static List<Integer> booksOfAuthor(int author) {
+        DatasetGenerator dataset = catalog.getDataset();
+        List<Integer> books = new ArrayList<>();
+        for (int book = 0; book < dataset.getBookCount(); ++book) {
+            if (dataset.authorOf(book) == author && isbns.contains(IsbnCodec.encode(dataset.isbn(book)))) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    /** Returns true if a search for the title of a book finds it. */
+    private static boolean found(int book) {
+        DatasetGenerator dataset = catalog.getDataset();
+        return search.search(dataset.title(book), search.getSize()).stream()
+                .anyMatch(hit -> hit.getKey().equals(dataset.isbn(book)));
+    }
+
+    /** Returns the number of books in the database. */
+    private static int countInDatabase() {
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        try {
+            return manager.createQuery("SELECT COUNT(b) FROM Books b", Long.class).getSingleResult().intValue();
+        } finally {
+            manager.close();
+        }
+    }
+} // End of BulkDeleterTest class
@@ -0,0 +1,109 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks that a bulk reassignment counts the books it moved, and only those, under the type of
+ * their new author in the catalog statistics, when it moves all of an author's books, none, or
+ * the ones a filter picks.
+ */
+class BulkReassignerTest {
+    private static TestCatalog catalog;
+    private static CatalogStatistics statistics;
+
+    /** Two authors of different types, so that a move shows in the counts per type. */
+    private static int from;
+    private static int to;
+
+    @BeforeAll
+    static void seed() {
+        catalog = new TestCatalog("bulk-reassigner", 200);
+        statistics = CatalogStatistics.install(catalog.getFactory());
+
+        DatasetGenerator dataset = catalog.getDataset();
+        from = 0;
+        to = 1;
+        while (dataset.authorType(to).equals(dataset.authorType(from))) {
+            ++to;
+        }
+    }
+
+    @AfterAll
+    static void drop() {
+        catalog.close();
+    }
+
+    @Test
+    void countsTheMovedBooksUnderTheirNewAuthorsType() {
+        DatasetGenerator dataset = catalog.getDataset();
+        String fromType = dataset.authorType(from);
+        String toType = dataset.authorType(to);
+        int fromCount = statistics.getBookCountOfAuthorType(fromType);
+        int toCount = statistics.getBookCountOfAuthorType(toType);
+        long books = countInDatabase(dataset.authorEmail(from), null);
+        assertTrue(books > 0);
+
+        assertEquals(books, reassign(dataset.authorEmail(from), dataset.authorEmail(to), null));
+        assertEquals(fromCount - books, statistics.getBookCountOfAuthorType(fromType));
+        assertEquals(toCount + books, statistics.getBookCountOfAuthorType(toType));
+
+        // the author has no books left to move
+        assertEquals(0, reassign(dataset.authorEmail(from), dataset.authorEmail(to), null));
+        assertEquals(fromCount - books, statistics.getBookCountOfAuthorType(fromType));
+        assertEquals(toCount + books, statistics.getBookCountOfAuthorType(toType));
+
+        // only the books of one year go back, with those of the new author's own from that year
+        int year = dataset.yearPublished(0);
+        long ofYear = countInDatabase(dataset.authorEmail(to), year);
+        assertNotEquals(0, ofYear);
+        assertEquals(ofYear, reassign(dataset.authorEmail(to), dataset.authorEmail(from),
+                BookFilter.byYears(year, year)));
+        assertEquals(fromCount - books + ofYear, statistics.getBookCountOfAuthorType(fromType));
+        assertEquals(toCount + books - ofYear, statistics.getBookCountOfAuthorType(toType));
+        assertEquals(statistics.getBookCount(), countInDatabase(null, null));
+    }
+
+    /** Moves the books of one author to another, and returns how many were moved. */
+    private static long reassign(String fromEmail, String toEmail, BookFilter only) {
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        try {
+            return new BulkReassigner(manager, 4).reassign(fromEmail, toEmail, only).getMoved();
+        } finally {
+            manager.close();
+        }
+    }
+
+    /**
+     * Returns the number of books in the database.
+     * @param email The email of their author; null for every author.
+     * @param year  The year they were published; null for every year.
+     */
+    private static long countInDatabase(String email, Integer year) {
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        try {
+            TypedQuery<Long> count = manager.createQuery("SELECT COUNT(b) FROM Books b WHERE b.author.email = " +
+                    (email == null ? "b.author.email" : ":email") + " AND b.yearPublished = " +
+                    (year == null ? "b.yearPublished" : ":year"), Long.class);
+            if (email != null) {
+                count.setParameter("email", email);
+            }
+            if (year != null) {
+                count.setParameter("year", year);
+            }
+            return count.getSingleResult();
+        } finally {
+            manager.close();
+        }
+    }
+} // End of BulkReassignerTest class
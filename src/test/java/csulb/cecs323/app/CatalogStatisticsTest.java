@@ -0,0 +1,117 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.AuthoringEntities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks that the catalog statistics, kept up to date as books are written through the entities,
+ * through a batch session and in bulk, hold the same counts as the statistics counted again from
+ * the database; and that a write that is rolled back is not counted.
+ */
+class CatalogStatisticsTest {
+    /** ISBNs that the seeded catalog does not have. */
+    private static final String K_AND_R = "9780131103627";
+    private static final String DRAGON_BOOK = "9780201100884";
+    private static final String SICP = "9780262510875";
+
+    private static TestCatalog catalog;
+    private static CatalogStatistics statistics;
+
+    @BeforeAll
+    static void seed() {
+        catalog = new TestCatalog("catalog-statistics", 200);
+        statistics = CatalogStatistics.install(catalog.getFactory());
+    }
+
+    @AfterAll
+    static void drop() {
+        catalog.close();
+    }
+
+    @Test
+    void matchesACountFromTheDatabaseAfterEveryKindOfWrite() {
+        DatasetGenerator dataset = catalog.getDataset();
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        try {
+            BookClub bookClub = new BookClub(manager);
+            UnitOfWork unitOfWork = new UnitOfWork(manager);
+            unitOfWork.write(em -> bookClub.addBook(new Books(em.find(AuthoringEntities.class, dataset.authorEmail(1)),
+                    em.find(Publishers.class, dataset.publisherName(0)), K_AND_R, "A New Book", 1978)));
+            unitOfWork.write(em -> bookClub.deleteBook(em.find(Books.class, dataset.isbn(0))));
+            unitOfWork.write(em -> bookClub.reassignBook(em.find(Books.class, dataset.isbn(1)),
+                    em.find(AuthoringEntities.class, dataset.authorEmail(dataset.authorOf(2)))));
+        } finally {
+            manager.close();
+        }
+
+        try (BatchSession batch = new BatchSession(catalog.getFactory(), 100, 0)) {
+            EntityManager reader = catalog.getFactory().createEntityManager();
+            try {
+                batch.insert(new Books(reader.find(AuthoringEntities.class, dataset.authorEmail(2)),
+                        reader.find(Publishers.class, dataset.publisherName(0)), DRAGON_BOOK, "Another New Book",
+                        1986));
+            } finally {
+                reader.close();
+            }
+            batch.deleteBook(dataset.isbn(3));
+            batch.reassignAuthor(dataset.isbn(4), dataset.authorEmail(dataset.authorOf(5)));
+            // neither book exists, so neither changes a count
+            batch.deleteBook(SICP);
+            batch.reassignAuthor(SICP, dataset.authorEmail(2));
+            batch.flush();
+        }
+
+        EntityManager deleter = catalog.getFactory().createEntityManager();
+        try {
+            new BulkDeleter(deleter).delete(BookFilter.byYears(dataset.yearPublished(6), dataset.yearPublished(6)));
+        } finally {
+            deleter.close();
+        }
+
+        assertMatchesTheDatabase();
+    }
+
+    @Test
+    void leavesOutAWriteThatIsRolledBack() {
+        int books = statistics.getBookCount();
+
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            Books book = manager.createQuery("SELECT b FROM Books b", Books.class).setMaxResults(1).getSingleResult();
+            manager.remove(book);
+            manager.flush();
+            manager.getTransaction().rollback();
+        } finally {
+            manager.close();
+        }
+
+        assertEquals(books, statistics.getBookCount());
+        assertMatchesTheDatabase();
+    }
+
+    /** Counts the books again from the database, and checks that the counts kept so far match. */
+    private static void assertMatchesTheDatabase() {
+        int books = statistics.getBookCount();
+        Map<String, Integer> perPublisher = statistics.getBookCountsPerPublisher();
+        Map<String, Integer> perAuthorType = statistics.getBookCountsPerAuthorType();
+        Map<Integer, Integer> perYear = statistics.getBookCountsPerYear();
+
+        statistics.rebuild(catalog.getFactory());
+        assertEquals(statistics.getBookCount(), books);
+        assertEquals(statistics.getBookCountsPerPublisher(), perPublisher);
+        assertEquals(statistics.getBookCountsPerAuthorType(), perAuthorType);
+        assertEquals(statistics.getBookCountsPerYear(), perYear);
+    }
+} // End of CatalogStatisticsTest class
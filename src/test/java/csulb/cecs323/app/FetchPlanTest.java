@@ -0,0 +1,70 @@
+package csulb.cecs323.app;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks that listing every author with its teams or members (the list-authors command) runs the
+ * same few SQL statements however many authors there are, rather than one per author.
+ */
+class FetchPlanTest {
+    /** The statements of a listing: the teams, their members, the individual authors, their
+     * teams and the writing groups. */
+    private static final int LISTING_STATEMENTS = 5;
+
+    @Test
+    void listingAuthorsTakesAConstantNumberOfStatements() {
+        long small = statementsToList("fetch-plan-small", 200);
+        long large = statementsToList("fetch-plan-large", 4000);
+
+        assertEquals(small, large);
+        assertTrue(large <= LISTING_STATEMENTS, large + " statements");
+    }
+
+    /**
+     * Lists the authors of a new catalog, none of them cached yet, and returns the number of SQL
+     * statements that were run.
+     */
+    private static long statementsToList(String name, int books) {
+        try (TestCatalog catalog = new TestCatalog(name, books)) {
+            catalog.getFactory().getCache().evictAll();
+            long before = statements();
+
+            StringWriter output = new StringWriter();
+            EntityManager manager = catalog.getFactory().createEntityManager();
+            try (PrintWriter out = new PrintWriter(output)) {
+                assertTrue(new CommandProcessor(manager).execute("list-authors", out));
+            } finally {
+                manager.close();
+            }
+
+            // every author is printed, each individual author with its teams
+            String listing = output.toString();
+            int authors = catalog.getDataset().getAuthorCount();
+            assertEquals(authors, count(listing, "Authoring Entity: "), listing);
+            assertTrue(listing.contains("Teams: { "), listing);
+            return statements() - before;
+        }
+    }
+
+    /** Returns the number of SQL statements run so far, as counted by the {@link MetricsProfiler}. */
+    private static long statements() {
+        return QueryMetrics.all().stream().mapToLong(QueryMetrics::getStatementCount).sum();
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + 1)) {
+            ++count;
+        }
+        return count;
+    }
+} // End of FetchPlanTest class
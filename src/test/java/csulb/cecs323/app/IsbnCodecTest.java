@@ -0,0 +1,96 @@
+package csulb.cecs323.app;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks that ISBNs are read in every form they are typed in, and that a wrong check digit, a
+ * misplaced X, or an EAN prefix that is not an ISBN's is rejected.
+ */
+class IsbnCodecTest {
+    /** The ISBN-13 of "The C Programming Language", whose ISBN-10 is 0-13-110362-8. */
+    private static final long K_AND_R = 9780131103627L;
+
+    @Test
+    void readsEveryFormOfTheSameIsbn() {
+        assertEquals(K_AND_R, IsbnCodec.encode("0-13-110362-8"));
+        assertEquals(K_AND_R, IsbnCodec.encode("0131103628"));
+        assertEquals(K_AND_R, IsbnCodec.encode("978-0-13-110362-7"));
+        assertEquals(K_AND_R, IsbnCodec.encode("9780131103627"));
+        assertEquals(K_AND_R, IsbnCodec.encode("978 0 13 110362 7"));
+    }
+
+    @Test
+    void rejectsAWrongCheckDigit() {
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("0-13-110362-7"));
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("9780131103628"));
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("979-10-90636-07-2"));
+    }
+
+    @Test
+    void readsCheckDigitsOfEveryValue() {
+        // the check digit of each twelve digits is the one digit that makes them valid
+        for (long twelve = 978_013_110_360L; twelve < 978_013_110_400L; ++twelve) {
+            int valid = 0;
+            for (int check = 0; check <= 9; ++check) {
+                long isbn = twelve * 10 + check;
+                if (IsbnCodec.encode(Long.toString(isbn)) == isbn) {
+                    ++valid;
+                }
+            }
+            assertEquals(1, valid, "check digits of " + twelve);
+        }
+    }
+
+    @Test
+    void readsAnIsbn10WhoseCheckDigitIsX() {
+        assertEquals(9780804429573L, IsbnCodec.encode("0-8044-2957-X"));
+        assertEquals(9780804429573L, IsbnCodec.encode("080442957x"));
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("0-8044-2957-0"));
+    }
+
+    @Test
+    void acceptsXOnlyAsTheLastDigitOfAnIsbn10() {
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("08044X2957"));
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("080442957X1"));
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("978080442957X"));
+    }
+
+    @Test
+    void keepsThe979Prefix() {
+        assertEquals(9791090636071L, IsbnCodec.encode("979-10-90636-07-1"));
+        assertEquals("9791090636071", IsbnCodec.normalize("979-10-90636-07-1"));
+    }
+
+    @Test
+    void rejectsOtherPrefixes() {
+        // each has a valid EAN-13 check digit, but 977 and 980 are not ISBN prefixes
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("9770131103628"));
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("9800131103622"));
+    }
+
+    @Test
+    void rejectsWhatIsNotAnIsbn() {
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode(""));
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("874213982"));
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("97801311036270"));
+        assertEquals(IsbnCodec.INVALID, IsbnCodec.encode("S-1"));
+        assertFalse(IsbnCodec.isValid("0-13-110362"));
+        assertTrue(IsbnCodec.isValid("0-13-110362-8"));
+    }
+
+    @Test
+    void normalizesToTheIsbn13() {
+        assertEquals("9780131103627", IsbnCodec.normalize("0-13-110362-8"));
+        assertEquals("S-1", IsbnCodec.normalize("S-1"));
+        assertEquals("9780131103627", IsbnCodec.format(K_AND_R));
+        assertThrows(IllegalArgumentException.class, () -> IsbnCodec.format(IsbnCodec.INVALID));
+    }
+} // End of IsbnCodecTest class
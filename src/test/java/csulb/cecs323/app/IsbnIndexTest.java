@@ -0,0 +1,129 @@
+package csulb.cecs323.app;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks that the ISBN index of a seeded catalog holds what a HashSet of the same ISBNs would,
+ * through random adds and deletes that crowd its open addressing table, and that a book stored
+ * under several forms of its ISBN stays findable until the last of them is deleted.
+ */
+class IsbnIndexTest {
+    /** "The C Programming Language", in the forms a legacy row might store it under. */
+    private static final String HYPHENATED = "0-13-110362-8";
+    private static final String ISBN_10 = "0131103628";
+    private static final String ISBN_13 = "9780131103627";
+
+    private static TestCatalog catalog;
+    private static IsbnIndex index;
+
+    @BeforeAll
+    static void seed() {
+        catalog = new TestCatalog("isbn-index", 200);
+        index = IsbnIndex.install(catalog.getFactory());
+    }
+
+    @AfterAll
+    static void drop() {
+        catalog.close();
+    }
+
+    @Test
+    void matchesAHashSetThroughRandomAddsAndDeletes() {
+        Set<Long> expected = new HashSet<>();
+        DatasetGenerator dataset = catalog.getDataset();
+        for (int book = 0; book < dataset.getBookCount(); ++book) {
+            expected.add(IsbnCodec.encode(dataset.isbn(book)));
+        }
+        assertEquals(expected.size(), index.size());
+
+        // few enough ISBNs that deletes keep shifting back the runs of the ones that collide
+        Random random = new Random(7);
+        List<Long> pool = new ArrayList<>();
+        for (int i = 0; i < 20_000; ++i) {
+            pool.add(isbn13(random.nextBoolean() ? 978 : 979, random.nextInt(1_000_000_000)));
+        }
+        for (int i = 0; i < 200_000; ++i) {
+            long isbn = pool.get(random.nextInt(pool.size()));
+            if (random.nextBoolean()) {
+                index.putBook(IsbnCodec.format(isbn));
+                expected.add(isbn);
+            } else {
+                index.removeBook(IsbnCodec.format(isbn));
+                expected.remove(isbn);
+            }
+        }
+
+        for (long isbn : pool) {
+            assertEquals(expected.contains(isbn), index.contains(isbn), IsbnCodec.format(isbn));
+        }
+        for (long isbn : expected) {
+            assertEquals(IsbnCodec.format(isbn), index.keyOf(isbn));
+        }
+        assertEquals(expected.size(), index.size());
+
+        for (long isbn : pool) {
+            index.removeBook(IsbnCodec.format(isbn));
+        }
+    }
+
+    @Test
+    void keepsAnIsbnWhileAnotherFormOfItIsStored() {
+        long isbn = IsbnCodec.encode(ISBN_13);
+        int size = index.size();
+
+        index.putBook(HYPHENATED);
+        index.putBook(ISBN_10);
+        index.putBook(ISBN_10);
+        assertEquals(size + 1, index.size());
+
+        index.removeBook(HYPHENATED);
+        assertTrue(index.contains(isbn));
+        assertEquals(ISBN_10, index.keyOf(isbn));
+
+        index.putBook(ISBN_13);
+        index.removeBook(ISBN_10);
+        assertEquals(ISBN_13, index.keyOf(isbn));
+
+        index.removeBook(ISBN_13);
+        assertFalse(index.contains(isbn));
+        assertNull(index.keyOf(isbn));
+        assertEquals(size, index.size());
+    }
+
+    @Test
+    void ignoresTheDeleteOfAFormThatIsNotStored() {
+        long isbn = IsbnCodec.encode(ISBN_13);
+
+        index.putBook(HYPHENATED);
+        index.removeBook(ISBN_13);
+        assertEquals(HYPHENATED, index.keyOf(isbn));
+
+        index.removeBook(HYPHENATED);
+        assertFalse(index.contains(isbn));
+    }
+
+    /** Returns the ISBN-13 with a prefix and nine digits after it. */
+    private static long isbn13(int prefix, int body) {
+        long twelve = prefix * 1_000_000_000L + body;
+        int sum = 0;
+        for (long rest = twelve, weight = 3; rest > 0; rest /= 10, weight = 4 - weight) {
+            sum += (int) (rest % 10 * weight);
+        }
+        return twelve * 10 + (10 - sum % 10) % 10;
+    }
+} // End of IsbnIndexTest class
@@ -0,0 +1,135 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.AuthoringEntities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.IndividualAuthors;
+import csulb.cecs323.model.Publishers;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks that the key filters never answer that a key is missing when its row is there: not for
+ * the rows they were built from, nor for those persisted through the entities (committed or only
+ * flushed), batch inserted, or read again by a rebuild.
+ */
+class KeyFiltersTest {
+    /** How long a rebuild in the background is waited for. */
+    private static final long REBUILD_TIMEOUT_MILLIS = 10_000;
+
+    private static TestCatalog catalog;
+    private static KeyFilters filters;
+
+    @BeforeAll
+    static void seed() {
+        catalog = new TestCatalog("key-filters", 2000);
+        filters = KeyFilters.install(catalog.getFactory());
+    }
+
+    @AfterAll
+    static void drop() {
+        catalog.close();
+    }
+
+    @Test
+    void holdsEveryKeyTheyWereBuiltFrom() {
+        assertHoldsTheCatalog();
+    }
+
+    @Test
+    void holdsTheKeysPersistedThroughTheEntities() {
+        DatasetGenerator dataset = catalog.getDataset();
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        try {
+            BookClub bookClub = new BookClub(manager);
+            new UnitOfWork(manager).write(em -> {
+                Publishers publisher = new Publishers("Persisted Press", "555-0101", "persisted@press.example");
+                em.persist(publisher);
+                bookClub.addBook(new Books(em.find(AuthoringEntities.class, dataset.authorEmail(0)), publisher,
+                        "9780131103627", "A Persisted Book", 1978));
+            });
+            assertHoldsPublisher("Persisted Press", "555-0101", "persisted@press.example");
+            assertHolds(KeyFilters.Key.ISBN, "9780131103627");
+
+            // a row that is flushed but not yet committed can already be seen by another lookup
+            manager.getTransaction().begin();
+            try {
+                manager.persist(new IndividualAuthors("Flushed Author", "flushed@authors.example"));
+                manager.flush();
+                assertHolds(KeyFilters.Key.AUTHOR_EMAIL, "flushed@authors.example");
+            } finally {
+                manager.getTransaction().rollback();
+            }
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    void holdsTheKeysInsertedByABatch() {
+        DatasetGenerator dataset = catalog.getDataset();
+        try (BatchSession batch = new BatchSession(catalog.getFactory(), 100, 0)) {
+            Publishers publisher = new Publishers("Batched Press", "555-0102", "batched@press.example");
+            AuthoringEntities author = new IndividualAuthors("Batched Author", "batched@authors.example");
+            batch.insert(publisher);
+            batch.insert(author);
+            batch.insert(new Books(author, publisher, "9780201100884", "A Batched Book", 1986));
+            batch.flush();
+        }
+
+        assertHoldsPublisher("Batched Press", "555-0102", "batched@press.example");
+        assertHolds(KeyFilters.Key.AUTHOR_EMAIL, "batched@authors.example");
+        assertHolds(KeyFilters.Key.ISBN, "9780201100884");
+        assertHolds(KeyFilters.Key.ISBN, dataset.isbn(0));
+    }
+
+    @Test
+    void holdsEveryKeyAfterARebuild() throws InterruptedException {
+        for (KeyFilters.Key key : KeyFilters.Key.values()) {
+            KeyFilterMXBean filter = filters.filter(key);
+            long rebuilds = filter.getRebuilds();
+            filter.rebuild();
+            long deadline = System.currentTimeMillis() + REBUILD_TIMEOUT_MILLIS;
+            while (filter.getRebuilds() == rebuilds) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("The " + key + " filter was not rebuilt in " + REBUILD_TIMEOUT_MILLIS + " ms");
+                }
+                Thread.sleep(10);
+            }
+        }
+
+        assertHoldsTheCatalog();
+    }
+
+    /** Checks that the filters hold every key of the generated catalog. */
+    private static void assertHoldsTheCatalog() {
+        DatasetGenerator dataset = catalog.getDataset();
+        for (int book = 0; book < dataset.getBookCount(); ++book) {
+            assertHolds(KeyFilters.Key.ISBN, dataset.isbn(book));
+        }
+        for (int author = 0; author < dataset.getAuthorCount(); ++author) {
+            assertHolds(KeyFilters.Key.AUTHOR_EMAIL, dataset.authorEmail(author));
+        }
+        for (int publisher = 0; publisher < dataset.getPublisherCount(); ++publisher) {
+            assertHoldsPublisher(dataset.publisherName(publisher), dataset.publisherPhone(publisher),
+                    dataset.publisherEmail(publisher));
+        }
+    }
+
+    private static void assertHoldsPublisher(String name, String phone, String email) {
+        assertHolds(KeyFilters.Key.PUBLISHER_NAME, name);
+        assertHolds(KeyFilters.Key.PUBLISHER_PHONE, phone);
+        assertHolds(KeyFilters.Key.PUBLISHER_EMAIL, email);
+    }
+
+    private static void assertHolds(KeyFilters.Key key, String value) {
+        assertTrue(filters.mightContain(key, value), key + " " + value);
+    }
+} // End of KeyFiltersTest class
@@ -0,0 +1,75 @@
+package csulb.cecs323.app;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Creates an in-memory Derby database for a test, with the schema the entities declare, seeded
+ * by the {@link DatasetGenerator} with a given number of books. Nothing is written to disk, and
+ * the database of the app is never touched.
+ */
+public final class TestCatalog implements AutoCloseable {
+    /** The seed of the generated catalog, so every run tests the same data. */
+    private static final long SEED = 42L;
+
+    /** The number of books written and committed at a time while seeding. */
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private final String name;
+    private final EntityManagerFactory factory;
+    private final DatasetGenerator dataset;
+
+    /**
+     * @param name      The name of the in-memory database, unique among the open catalogs.
+     * @param books     The number of books to seed.
+     */
+    public TestCatalog(String name, int books) {
+        this.name = name;
+        this.dataset = new DatasetGenerator(books, SEED);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(PersistenceUnitProperties.JDBC_URL, "jdbc:derby:memory:" + name + ";create=true");
+        properties.put(PersistenceUnitProperties.BATCH_WRITING_SIZE, Integer.toString(SEED_BATCH_SIZE));
+        properties.put(PersistenceUnitProperties.LOGGING_LEVEL, "SEVERE");
+        // no slow query files from the tests
+        properties.put(SlowQueryLog.THRESHOLD_MILLIS, "-1");
+        this.factory = Persistence.createEntityManagerFactory("BookClub", properties);
+
+        EntityManager manager = factory.createEntityManager();
+        try {
+            new BulkImporter(manager, SEED_BATCH_SIZE).load(dataset.records());
+        } finally {
+            manager.close();
+        }
+    }
+
+    /** Returns the factory of the seeded database. */
+    public EntityManagerFactory getFactory() {
+        return factory;
+    }
+
+    /** Returns the generator of the seeded catalog, which works out the keys of its rows. */
+    public DatasetGenerator getDataset() {
+        return dataset;
+    }
+
+    /** Closes the factory and drops the database. */
+    @Override
+    public void close() {
+        factory.close();
+        try {
+            DriverManager.getConnection("jdbc:derby:memory:" + name + ";drop=true").close();
+        } catch (SQLException e) {
+            // a dropped database always reports itself with an exception
+        }
+    }
+} // End of TestCatalog class
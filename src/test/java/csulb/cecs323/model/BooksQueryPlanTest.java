@@ -0,0 +1,95 @@
+package csulb.cecs323.model;
+
+import csulb.cecs323.app.DatasetGenerator;
+import csulb.cecs323.app.TestCatalog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.persistence.EntityManager;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Daniel Tha, John Teano, Steven Dao
+ * @version 1.0
+ *
+ * Checks that Derby looks a book up by its title and author, or title and publisher, through the
+ * index behind books_uk_02 or books_uk_01, rather than by scanning BOOKS, as read from the
+ * runtime statistics of the query.
+ */
+class BooksQueryPlanTest {
+    /** The seeded book that is looked up. */
+    private static final int BOOK = 1234;
+
+    private static TestCatalog catalog;
+
+    @BeforeAll
+    static void seed() {
+        catalog = new TestCatalog("books-query-plan", 2000);
+    }
+
+    @AfterAll
+    static void drop() {
+        catalog.close();
+    }
+
+    @Test
+    void titleAndAuthorUsesBooksUk02() throws SQLException {
+        DatasetGenerator dataset = catalog.getDataset();
+        String plan = planOf("ReturnBookByAuthor", dataset.title(BOOK),
+                dataset.authorEmail(dataset.authorOf(BOOK)));
+
+        assertTrue(plan.contains("using constraint BOOKS_UK_02"), plan);
+        assertFalse(plan.contains("Table Scan"), plan);
+    }
+
+    @Test
+    void titleAndPublisherUsesBooksUk01() throws SQLException {
+        DatasetGenerator dataset = catalog.getDataset();
+        String plan = planOf("ReturnBookByPublisher", dataset.title(BOOK),
+                dataset.publisherName(dataset.publisherOf(BOOK)));
+
+        assertTrue(plan.contains("using constraint BOOKS_UK_01"), plan);
+        assertFalse(plan.contains("Table Scan"), plan);
+    }
+
+    /**
+     * Runs the SQL of a named query with runtime statistics on, checks that it finds the book,
+     * and returns the plan Derby ran. The SQL is run on its own, as reading the book through the
+     * EntityManager runs more statements after it, for the book's author and publisher.
+     */
+    private static String planOf(String queryName, String title, String key) throws SQLException {
+        String sql = JpaHelper.getServerSession(catalog.getFactory()).getQuery(queryName).getSQLString();
+        EntityManager manager = catalog.getFactory().createEntityManager();
+        manager.getTransaction().begin();
+        try (Statement statement = manager.unwrap(Connection.class).createStatement()) {
+            statement.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+
+            try (PreparedStatement query = statement.getConnection().prepareStatement(sql)) {
+                query.setString(1, title);
+                query.setString(2, key);
+                try (ResultSet rows = query.executeQuery()) {
+                    assertTrue(rows.next());
+                    assertEquals(catalog.getDataset().isbn(BOOK), rows.getString("ISBN"));
+                }
+            }
+
+            try (ResultSet rows = statement.executeQuery("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+                rows.next();
+                return rows.getString(1);
+            }
+        } finally {
+            manager.getTransaction().rollback();
+            manager.close();
+        }
+    }
+} // End of BooksQueryPlanTest class